@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * The record shapes used by the serialization benchmarks: a <i>flat</i> record of primitives and short strings and a
+ * <i>nested</i> record with a list of flat records. Every shape comes with a {@link Writable} variant.
+ *
+ * @author Alex Savov
+ */
+public abstract class BenchmarkRecords {
+
+	public static final String FLAT = "flat";
+
+	public static final String NESTED = "nested";
+
+	/**
+	 * @return The class of the records of passed shape.
+	 */
+	public static Class<?> recordClass(String shape, boolean writable) {
+		if (FLAT.equals(shape)) {
+			return writable ? WritableFlatRecord.class : FlatRecord.class;
+		}
+		if (NESTED.equals(shape)) {
+			return writable ? WritableNestedRecord.class : NestedRecord.class;
+		}
+
+		throw new IllegalArgumentException("Unknown record shape: " + shape);
+	}
+
+	/**
+	 * Creates records of passed shape populated with pseudo-random (but repeatable) values.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<T> createRecords(Class<T> recordClass, int count) throws Exception {
+		Random random = new Random(42);
+
+		List<T> records = new ArrayList<T>(count);
+
+		for (int i = 0; i < count; i++) {
+			Object record = recordClass.newInstance();
+
+			if (record instanceof FlatRecord) {
+				((FlatRecord) record).populate(random, i);
+			} else {
+				((NestedRecord) record).populate(random, i);
+			}
+
+			records.add((T) record);
+		}
+
+		return records;
+	}
+
+	public static class FlatRecord implements Serializable {
+
+		private static final long serialVersionUID = 3264598412368795012L;
+
+		protected long id;
+
+		protected int count;
+
+		protected double score;
+
+		protected boolean active;
+
+		protected String name;
+
+		protected String category;
+
+		void populate(Random random, int index) {
+			id = index;
+			count = random.nextInt(1000);
+			score = random.nextDouble();
+			active = random.nextBoolean();
+			name = "record-" + index;
+			category = "category-" + random.nextInt(16);
+		}
+	}
+
+	public static class WritableFlatRecord extends FlatRecord implements Writable {
+
+		private static final long serialVersionUID = -2037467453620186387L;
+
+		public void write(DataOutput out) throws IOException {
+			out.writeLong(id);
+			out.writeInt(count);
+			out.writeDouble(score);
+			out.writeBoolean(active);
+			out.writeUTF(name);
+			out.writeUTF(category);
+		}
+
+		public void readFields(DataInput in) throws IOException {
+			id = in.readLong();
+			count = in.readInt();
+			score = in.readDouble();
+			active = in.readBoolean();
+			name = in.readUTF();
+			category = in.readUTF();
+		}
+	}
+
+	public static class NestedRecord implements Serializable {
+
+		private static final long serialVersionUID = -6503816471734937432L;
+
+		protected long id;
+
+		protected String description;
+
+		protected List<FlatRecord> children = new ArrayList<FlatRecord>();
+
+		void populate(Random random, int index) {
+			id = index;
+			description = "nested record #" + index + " with a somewhat longer textual description";
+
+			for (int i = 0; i < 8; i++) {
+				FlatRecord child = new FlatRecord();
+				child.populate(random, index * 8 + i);
+				children.add(child);
+			}
+		}
+	}
+
+	public static class WritableNestedRecord extends NestedRecord implements Writable {
+
+		private static final long serialVersionUID = 8316416547183465917L;
+
+		public void write(DataOutput out) throws IOException {
+			out.writeLong(id);
+			out.writeUTF(description);
+			out.writeInt(children.size());
+
+			for (FlatRecord child : children) {
+				out.writeLong(child.id);
+				out.writeInt(child.count);
+				out.writeDouble(child.score);
+				out.writeBoolean(child.active);
+				out.writeUTF(child.name);
+				out.writeUTF(child.category);
+			}
+		}
+
+		public void readFields(DataInput in) throws IOException {
+			id = in.readLong();
+			description = in.readUTF();
+
+			int size = in.readInt();
+
+			children = new ArrayList<FlatRecord>(size);
+
+			for (int i = 0; i < size; i++) {
+				FlatRecord child = new FlatRecord();
+				child.id = in.readLong();
+				child.count = in.readInt();
+				child.score = in.readDouble();
+				child.active = in.readBoolean();
+				child.name = in.readUTF();
+				child.category = in.readUTF();
+				children.add(child);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+
+/**
+ * Write and read throughput (resources per second) of the resource serialization formats across resource sizes and
+ * compression aliases, against the local file system. The <code>bytes</code> counter of the write benchmark is the
+ * number of bytes written per second, so <code>bytes / score</code> is the number of bytes per resource.
+ *
+ * @author Alex Savov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceSerializationFormatBenchmark {
+
+	static final int RESOURCES = 16;
+
+	@Param({ "resource", "multi-resource" })
+	String format;
+
+	@Param({ "none", "deflate", "snappy", "bzip2" })
+	String compression;
+
+	@Param({ "4096", "1048576" })
+	int resourceSize;
+
+	File directory;
+
+	HdfsResourceLoader hdfsResourceLoader;
+
+	SerializationFormatSupport<Resource> serializationFormat;
+
+	List<Resource> resources;
+
+	byte[] buffer = new byte[64 * 1024];
+
+	/* The file written by write benchmark (overwritten on every invocation). */
+	String writeLocation;
+
+	/* The file read by read benchmark. */
+	String readLocation;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		directory = File.createTempFile("serialization-benchmark", "");
+		directory.delete();
+		directory.mkdirs();
+
+		Configuration configuration = new Configuration();
+
+		hdfsResourceLoader = new HdfsResourceLoader(configuration);
+
+		if ("resource".equals(format)) {
+			ResourceSerializationFormat resourceFormat = new ResourceSerializationFormat();
+			resourceFormat.setConfiguration(configuration);
+			resourceFormat.afterPropertiesSet();
+
+			serializationFormat = resourceFormat;
+		} else if ("multi-resource".equals(format)) {
+			serializationFormat = new MultiResourceSerializationFormat();
+		} else {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+
+		serializationFormat.setHdfsResourceLoader(hdfsResourceLoader);
+		serializationFormat.setCompressionAlias(SerializationFormatBenchmark.compressionAlias(serializationFormat,
+				compression));
+
+		// Text-like (compressible) content.
+		Random random = new Random(42);
+
+		resources = new ArrayList<Resource>(RESOURCES);
+
+		for (int i = 0; i < RESOURCES; i++) {
+			byte[] content = new byte[resourceSize];
+
+			for (int j = 0; j < content.length; j++) {
+				content[j] = (byte) ('a' + random.nextInt(16));
+			}
+
+			resources.add(new ByteArrayResource(content, "resource-" + i));
+		}
+
+		writeLocation = SerializationWriterObjectFactory.canonicalSerializationDestination(serializationFormat,
+				new File(directory, "write").getAbsolutePath());
+
+		readLocation = SerializationWriterObjectFactory.canonicalSerializationDestination(serializationFormat,
+				new File(directory, "read").getAbsolutePath());
+
+		write(readLocation);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		hdfsResourceLoader.close();
+
+		FileUtil.fullyDelete(directory);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RESOURCES)
+	public void write(OutputCounters counters) throws IOException {
+		write(writeLocation);
+
+		counters.bytes += new File(writeLocation).length();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RESOURCES)
+	public void read(Blackhole blackhole) throws IOException {
+		SerializationReader<Resource> reader = serializationFormat.getReader(readLocation);
+
+		try {
+			for (Resource resource = reader.read(); resource != null; resource = reader.read()) {
+				InputStream input = resource.getInputStream();
+				try {
+					for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+						blackhole.consume(read);
+					}
+				} finally {
+					input.close();
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	protected void write(String location) throws IOException {
+		SerializationWriterObjectFactory writerFactory = new SerializationWriterObjectFactory(hdfsResourceLoader);
+		writerFactory.setSerializationFormat(serializationFormat);
+		writerFactory.setDestination(location);
+
+		@SuppressWarnings("unchecked")
+		SerializationWriter<Resource> writer = (SerializationWriter<Resource>) writerFactory.getObject();
+
+		try {
+			for (Resource resource : resources) {
+				writer.write(resource);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * The number of bytes written, reported per second.
+	 */
+	@AuxCounters
+	@State(Scope.Thread)
+	public static class OutputCounters {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+
+/**
+ * Write and read throughput (records per second) of the object serialization formats across record shapes and
+ * compression aliases, against the local file system. The <code>bytes</code> counter of the write benchmark is the
+ * number of bytes written per second, so <code>bytes / score</code> is the number of bytes per record. Run with the
+ * GC profiler (<code>-prof gc</code>) for the allocation rate.
+ *
+ * <p>
+ * Compression aliases not available in the environment (such as <code>snappy</code> without the native libraries or
+ * <code>bzip2</code> with Avro formats) fail the respective benchmarks only.
+ *
+ * @author Alex Savov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationFormatBenchmark {
+
+	static final int RECORDS = 10000;
+
+	@Param({ "avro", "seqfile-writable", "seqfile-java", "seqfile-avro", "seqfile-fast" })
+	String format;
+
+	@Param({ "none", "deflate", "snappy", "bzip2" })
+	String compression;
+
+	@Param({ BenchmarkRecords.FLAT, BenchmarkRecords.NESTED })
+	String shape;
+
+	File directory;
+
+	HdfsResourceLoader hdfsResourceLoader;
+
+	SerializationFormatSupport<Object> serializationFormat;
+
+	List<Object> records;
+
+	/* The file written by write benchmark (overwritten on every invocation). */
+	String writeLocation;
+
+	/* The file read by read benchmark. */
+	String readLocation;
+
+	@SuppressWarnings("unchecked")
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		directory = File.createTempFile("serialization-benchmark", "");
+		directory.delete();
+		directory.mkdirs();
+
+		// Every format gets a Configuration of its own, so the registered Hadoop serializations do not interfere.
+		Configuration configuration = new Configuration();
+
+		hdfsResourceLoader = new HdfsResourceLoader(configuration);
+
+		serializationFormat = createSerializationFormat(configuration);
+		serializationFormat.setHdfsResourceLoader(hdfsResourceLoader);
+		serializationFormat.setCompressionAlias(compressionAlias(serializationFormat, compression));
+
+		records = BenchmarkRecords.createRecords(
+				(Class<Object>) BenchmarkRecords.recordClass(shape, "seqfile-writable".equals(format)), RECORDS);
+
+		writeLocation = SerializationWriterObjectFactory.canonicalSerializationDestination(serializationFormat,
+				new File(directory, "write").getAbsolutePath());
+
+		readLocation = SerializationWriterObjectFactory.canonicalSerializationDestination(serializationFormat,
+				new File(directory, "read").getAbsolutePath());
+
+		write(readLocation);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected SerializationFormatSupport<Object> createSerializationFormat(Configuration configuration)
+			throws Exception {
+
+		Class recordClass = BenchmarkRecords.recordClass(shape, "seqfile-writable".equals(format));
+
+		if ("avro".equals(format)) {
+			return new AvroFormat<Object>(recordClass);
+		}
+
+		AbstractSequenceFileFormat<Object> seqFileFormat;
+
+		if ("seqfile-writable".equals(format) || "seqfile-java".equals(format)) {
+			seqFileFormat = new SequenceFileFormat<Object>(recordClass);
+		} else if ("seqfile-avro".equals(format)) {
+			seqFileFormat = new AvroSequenceFileFormat<Object>(recordClass);
+		} else if ("seqfile-fast".equals(format)) {
+			seqFileFormat = new FastSequenceFileFormat<Object>(recordClass);
+		} else {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+
+		seqFileFormat.setConfiguration(configuration);
+		seqFileFormat.afterPropertiesSet();
+
+		return seqFileFormat;
+	}
+
+	/**
+	 * Hadoop 1.x knows the deflate codec as <code>default</code> ({@link org.apache.hadoop.io.compress.DefaultCodec}),
+	 * while Avro knows it as <code>deflate</code>.
+	 */
+	static String compressionAlias(SerializationFormatSupport<?> serializationFormat, String compression) {
+		boolean avro = serializationFormat instanceof AvroFormat
+				|| serializationFormat instanceof MultiResourceSerializationFormat;
+
+		return !avro && "deflate".equals(compression) ? "default" : compression;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		hdfsResourceLoader.close();
+
+		FileUtil.fullyDelete(directory);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public void write(OutputCounters counters) throws IOException {
+		write(writeLocation);
+
+		counters.bytes += new File(writeLocation).length();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public void read(Blackhole blackhole) throws IOException {
+		SerializationReader<Object> reader = serializationFormat.getReader(readLocation);
+
+		try {
+			for (Object record = reader.read(); record != null; record = reader.read()) {
+				blackhole.consume(record);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	protected void write(String location) throws IOException {
+		SerializationWriterObjectFactory writerFactory = new SerializationWriterObjectFactory(hdfsResourceLoader);
+		writerFactory.setSerializationFormat(serializationFormat);
+		writerFactory.setDestination(location);
+
+		@SuppressWarnings("unchecked")
+		SerializationWriter<Object> writer = (SerializationWriter<Object>) writerFactory.getObject();
+
+		try {
+			for (Object record : records) {
+				writer.write(record);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * The number of bytes written, reported per second.
+	 */
+	@AuxCounters
+	@State(Scope.Thread)
+	public static class OutputCounters {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+}
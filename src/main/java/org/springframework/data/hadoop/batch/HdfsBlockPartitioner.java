@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.batch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.ContextResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.hadoop.HadoopException;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+import org.springframework.util.Assert;
+
+/**
+ * Spring Batch {@link Partitioner} splitting the HDFS files matching a location pattern into byte ranges aligned to
+ * their blocks, the same way MapReduce computes its input splits. Every partition covers
+ * {@link #setBlocksPerPartition(int) one or more} consecutive blocks of a file, so a large file is read by several
+ * steps in parallel (preferably each of them reading local blocks). Compressed files are not splittable and get a
+ * single partition each; empty files get none.
+ *
+ * <p>
+ * The execution context of a partition holds the {@link #LOCATION_KEY location} of the file along with the
+ * {@link #START_KEY start} and the {@link #END_KEY end} of the range, which are meant to be late-bound to the
+ * properties of a step scoped {@link HdfsItemReader} or {@link HdfsSerializationFormatItemReader} (such as
+ * <code>#{stepExecutionContext['start']}</code>). The number of partitions is driven by the blocks of the files; the
+ * grid size is ignored.
+ *
+ * @author Alex Savov
+ */
+public class HdfsBlockPartitioner implements Partitioner, InitializingBean {
+
+	public static final String LOCATION_KEY = "location";
+
+	public static final String START_KEY = "start";
+
+	public static final String END_KEY = "end";
+
+	private static final String PARTITION_PREFIX = "partition";
+
+	/* This property is publicly configurable. */
+	private HdfsResourceLoader hdfsResourceLoader;
+
+	/* This property is publicly configurable. */
+	private String locationPattern;
+
+	/* This property is publicly configurable. */
+	private int blocksPerPartition = 1;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(hdfsResourceLoader, "A non-null HdfsResourceLoader is required.");
+		Assert.hasText(locationPattern, "A non-empty location pattern is required.");
+		Assert.isTrue(blocksPerPartition > 0, "The number of blocks per partition must be positive.");
+	}
+
+	/**
+	 * @return The execution context of every partition keyed by its name (<code>partition&lt;index&gt;</code>) in the
+	 * order of the files and the ranges within them.
+	 */
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<String, ExecutionContext>();
+
+		try {
+			FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+			CompressionCodecFactory codecs = new CompressionCodecFactory(fs.getConf());
+
+			for (FileStatus status : listFiles(fs)) {
+
+				String location = status.getPath().toUri().getPath();
+
+				long length = status.getLen();
+
+				if (length == 0) {
+					continue;
+				}
+
+				if (codecs.getCodec(status.getPath()) != null) {
+					addPartition(partitions, location, 0, length);
+					continue;
+				}
+
+				BlockLocation[] blocks = fs.getFileBlockLocations(status, 0, length);
+
+				if (blocks == null || blocks.length == 0) {
+					addPartition(partitions, location, 0, length);
+					continue;
+				}
+
+				Arrays.sort(blocks, new Comparator<BlockLocation>() {
+					@Override
+					public int compare(BlockLocation b1, BlockLocation b2) {
+						return b1.getOffset() < b2.getOffset() ? -1 : (b1.getOffset() == b2.getOffset() ? 0 : 1);
+					}
+				});
+
+				for (int i = 0; i < blocks.length; i += blocksPerPartition) {
+					long start = i == 0 ? 0 : blocks[i].getOffset();
+
+					int last = i + blocksPerPartition;
+
+					// The last range extends to the end of the file, whatever its blocks report.
+					long end = last < blocks.length ? blocks[last].getOffset() : length;
+
+					addPartition(partitions, location, start, end);
+				}
+			}
+		} catch (IOException exc) {
+			throw new HadoopException("Cannot partition the files matching '" + locationPattern + "'.", exc);
+		}
+
+		return partitions;
+	}
+
+	protected FileStatus[] listFiles(FileSystem fs) throws IOException {
+
+		Resource[] resources = hdfsResourceLoader.getResources(locationPattern);
+
+		FileStatus[] files = new FileStatus[resources.length];
+
+		int count = 0;
+
+		for (Resource resource : resources) {
+			FileStatus status = fs.getFileStatus(new Path(((ContextResource) resource).getPathWithinContext()));
+
+			if (!status.isDir()) {
+				files[count++] = status;
+			}
+		}
+
+		return Arrays.copyOf(files, count);
+	}
+
+	private static void addPartition(Map<String, ExecutionContext> partitions, String location, long start, long end) {
+
+		ExecutionContext context = new ExecutionContext();
+
+		context.putString(LOCATION_KEY, location);
+		context.putLong(START_KEY, start);
+		context.putLong(END_KEY, end);
+
+		partitions.put(PARTITION_PREFIX + partitions.size(), context);
+	}
+
+	/**
+	 * @param hdfsResourceLoader The {@link HdfsResourceLoader} used to resolve the location pattern.
+	 */
+	public void setHdfsResourceLoader(HdfsResourceLoader hdfsResourceLoader) {
+		this.hdfsResourceLoader = hdfsResourceLoader;
+	}
+
+	/**
+	 * @param locationPattern The (Ant-style) pattern of the HDFS files to partition.
+	 */
+	public void setLocationPattern(String locationPattern) {
+		this.locationPattern = locationPattern;
+	}
+
+	/**
+	 * @param blocksPerPartition The number of consecutive blocks covered by a partition. Defaults to <code>1</code>.
+	 */
+	public void setBlocksPerPartition(int blocksPerPartition) {
+		this.blocksPerPartition = blocksPerPartition;
+	}
+
+}
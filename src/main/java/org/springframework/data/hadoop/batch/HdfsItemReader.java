@@ -15,10 +15,24 @@
  */
 package org.springframework.data.hadoop.batch;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.BufferedReaderFactory;
+import org.springframework.batch.item.file.DefaultBufferedReaderFactory;
 import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.core.io.ContextResource;
 import org.springframework.core.io.Resource;
 import org.springframework.data.hadoop.fs.HdfsResourceLoader;
 import org.springframework.util.Assert;
@@ -30,14 +44,34 @@ import org.springframework.util.ClassUtils;
  * <p>This class exists as it has to do the conversion manually since there's no pluggable
  * way to add another resource loader.
  *
+ * <p>If a byte range is specified (such as by a {@link HdfsBlockPartitioner}) only the lines of that range are read:
+ * the reader skips to the line following <code>start</code> and stops after the line crossing <code>end</code>,
+ * the same way Hadoop <code>LineRecordReader</code> does. Thus the ranges of a file could be read by several
+ * partitioned steps without losing or duplicating lines. The encoding should be ASCII compatible (such as UTF-8).
+ * Compressed files are not splittable and are read by the range starting at <code>0</code> only.
+ *
+ * <p>The byte offset following the last line read is stored in the execution context along with the read count, so
+ * a restart seeks straight to it rather than re-reading the lines read by the failed execution. Compressed files,
+ * encodings which are not ASCII compatible and custom {@link #setBufferedReaderFactory(BufferedReaderFactory) buffered
+ * reader factories} fall back to skipping the lines read (line numbers reported after a seek are relative to it).
+ *
  * @param <T> the generic type
  * @author Costin Leau
  */
 public class HdfsItemReader<T> extends FlatFileItemReader<T> {
 
+	private static final String READ_OFFSET = "read.offset";
+
 	private Resource resource;
 	private HdfsResourceLoader loader;
 	private String location;
+	private long start = 0;
+	private long end = Long.MAX_VALUE;
+	private int linesToSkip = 0;
+	private BufferedReaderFactory bufferedReaderFactory;
+
+	private HdfsLineReader lineReader;
+	private long restartOffset = -1;
 
 	/**
 	 * Instantiates a new hdfs item reader.
@@ -67,6 +101,7 @@ public class HdfsItemReader<T> extends FlatFileItemReader<T> {
 		Assert.notNull(hdfsLoader, "a valid resource loader is required");
 		this.loader = hdfsLoader;
 		setName(ClassUtils.getShortName(getClass()));
+		super.setBufferedReaderFactory(new HdfsBufferedReaderFactory());
 	}
 
 
@@ -81,6 +116,8 @@ public class HdfsItemReader<T> extends FlatFileItemReader<T> {
 		}
 
 		setResource(resource);
+		// the lines to skip (such as a header) belong to the range at the start of the file only
+		super.setLinesToSkip(start == 0 ? linesToSkip : 0);
 		super.doOpen();
 		
 		/* @Costin: how about that version ?
@@ -91,6 +128,38 @@ public class HdfsItemReader<T> extends FlatFileItemReader<T> {
 		*/
 	}
 
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		String key = getExecutionContextUserSupport().getKey(READ_OFFSET);
+		restartOffset = (isSaveState() && executionContext.containsKey(key) ? executionContext.getLong(key) : -1);
+		super.open(executionContext);
+	}
+
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		if (lineReader != null && restartOffset >= 0) {
+			lineReader.seek(restartOffset);
+		}
+		else {
+			super.jumpToItem(itemIndex);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+
+		if (isSaveState() && lineReader != null) {
+			executionContext.putLong(getExecutionContextUserSupport().getKey(READ_OFFSET), lineReader.getPosition());
+		}
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		lineReader = null;
+		super.doClose();
+	}
+
 	/**
 	 * Sets the location.
 	 *
@@ -100,4 +169,322 @@ public class HdfsItemReader<T> extends FlatFileItemReader<T> {
 		this.location = location;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Sets the start (inclusive) of the byte range to read. Defaults to <code>0</code>.
+	 *
+	 * @param start the start of the range
+	 */
+	public void setStart(long start) {
+		this.start = start;
+	}
+
+	/**
+	 * Sets the end (exclusive) of the byte range to read. Defaults to the end of the file.
+	 *
+	 * @param end the end of the range
+	 */
+	public void setEnd(long end) {
+		this.end = end;
+	}
+
+	/**
+	 * Sets the number of lines to skip at the start of the file. Only the byte range starting at <code>0</code>
+	 * skips them.
+	 *
+	 * @param linesToSkip the number of lines to skip
+	 */
+	@Override
+	public void setLinesToSkip(int linesToSkip) {
+		this.linesToSkip = linesToSkip;
+	}
+
+	/**
+	 * Sets a custom factory used to read the whole file. Byte ranges and offset based restarts are not supported
+	 * through it.
+	 *
+	 * @param bufferedReaderFactory the buffered reader factory
+	 */
+	@Override
+	public void setBufferedReaderFactory(BufferedReaderFactory bufferedReaderFactory) {
+		Assert.notNull(bufferedReaderFactory, "a valid buffered reader factory is required");
+		this.bufferedReaderFactory = bufferedReaderFactory;
+	}
+
+	private class HdfsBufferedReaderFactory implements BufferedReaderFactory {
+
+		public BufferedReader create(Resource resource, String encoding) throws IOException {
+			boolean range = (start != 0 || end != Long.MAX_VALUE);
+
+			Assert.isTrue(start >= 0 && start <= end, "invalid byte range [" + start + ", " + end + ")");
+
+			FileSystem fs = loader.getFileSystem();
+			Path path = (resource instanceof ContextResource ? new Path(
+					((ContextResource) resource).getPathWithinContext()) : null);
+
+			// only the range at the start of the file reads the (non-splittable) compressed file
+			if (path != null && new CompressionCodecFactory(fs.getConf()).getCodec(path) != null) {
+				return (start == 0 ? wholeFileFactory().create(resource, encoding) : emptyReader());
+			}
+
+			Charset charset = Charset.forName(encoding);
+
+			if (path == null || bufferedReaderFactory != null || !isAsciiCompatible(charset)) {
+				Assert.isTrue(!range, "a byte range requires a Hadoop resource, an ASCII compatible encoding "
+						+ "and the default buffered reader factory");
+				return wholeFileFactory().create(resource, encoding);
+			}
+
+			if (start > 0 && start >= fs.getFileStatus(path).getLen()) {
+				return emptyReader();
+			}
+
+			lineReader = new HdfsLineReader(fs.open(path), charset, start, end);
+			return lineReader;
+		}
+
+		private BufferedReaderFactory wholeFileFactory() {
+			return (bufferedReaderFactory != null ? bufferedReaderFactory : new DefaultBufferedReaderFactory());
+		}
+
+		private BufferedReader emptyReader() {
+			return new BufferedReader(new StringReader(""));
+		}
+
+		private boolean isAsciiCompatible(Charset charset) {
+			return Arrays.equals("\r\n".getBytes(charset), new byte[] { '\r', '\n' });
+		}
+	}
+
+	/**
+	 * Reader of the lines starting within the (start, end] byte range which keeps track of its byte position. The
+	 * first (partial or not) line belongs to the previous range. Lines are decoded one at a time, so the characters
+	 * read through {@link #read(char[], int, int)} are the ones of the same lines returned by {@link #readLine()},
+	 * terminators included. Marking is not supported.
+	 */
+	static class HdfsLineReader extends BufferedReader {
+
+		private static final int BUFFER_SIZE = 64 * 1024;
+
+		private final FSDataInputStream in;
+		private final Charset charset;
+		private final long end;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int bufferOffset;
+		private int bufferLength;
+		private byte[] line = new byte[256];
+		private boolean terminated;
+		private long position;
+		private char[] chars = new char[0];
+		private int charsOffset;
+		private boolean closed;
+
+		HdfsLineReader(FSDataInputStream in, Charset charset, long start, long end) throws IOException {
+			super(new StringReader(""), 1);
+			this.in = in;
+			this.charset = charset;
+			this.end = end;
+
+			try {
+				seek(start);
+				if (start > 0) {
+					readLineBytes();
+				}
+			} catch (IOException ex) {
+				in.close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Returns the byte offset following the last line read. The characters of a line read partially through
+		 * {@link #read(char[], int, int)} count as read.
+		 *
+		 * @return the position within the file
+		 */
+		long getPosition() {
+			return position;
+		}
+
+		void seek(long offset) throws IOException {
+			in.seek(offset);
+			bufferOffset = bufferLength = 0;
+			position = offset;
+			charsOffset = chars.length;
+		}
+
+		@Override
+		public String readLine() throws IOException {
+			ensureOpen();
+
+			// the rest of a line read partially by characters
+			if (charsOffset < chars.length) {
+				int length = chars.length - charsOffset;
+				if (terminated) {
+					length--;
+				}
+				if (length > 0 && chars[charsOffset + length - 1] == '\r') {
+					length--;
+				}
+				String rest = new String(chars, charsOffset, length);
+				charsOffset = chars.length;
+				return rest;
+			}
+
+			if (position > end) {
+				return null;
+			}
+
+			int length = readLineBytes();
+			if (length < 0) {
+				return null;
+			}
+			if (length > 0 && line[length - 1] == '\r') {
+				length--;
+			}
+			return new String(line, 0, length, charset);
+		}
+
+		/**
+		 * Reads the bytes of the next line (without its terminator) and records whether it is terminated.
+		 *
+		 * @return the length of the line or -1 at the end of the input
+		 */
+		private int readLineBytes() throws IOException {
+			int length = 0;
+			boolean eol = false;
+			boolean read = false;
+			terminated = false;
+
+			while (!eol) {
+				if (bufferOffset == bufferLength) {
+					bufferOffset = 0;
+					bufferLength = Math.max(0, in.read(buffer, 0, buffer.length));
+					if (bufferLength == 0) {
+						return (read ? length : -1);
+					}
+				}
+				read = true;
+
+				int i = bufferOffset;
+				while (i < bufferLength && buffer[i] != '\n') {
+					i++;
+				}
+
+				int count = i - bufferOffset;
+				if (length + count > line.length) {
+					line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+				}
+				System.arraycopy(buffer, bufferOffset, line, length, count);
+				length += count;
+				position += count;
+
+				eol = (i < bufferLength);
+				if (eol) {
+					// skip the line terminator
+					i++;
+					position++;
+					terminated = true;
+				}
+				bufferOffset = i;
+			}
+
+			return length;
+		}
+
+		/**
+		 * Decodes the next line of the range (along with its terminator) unless the current one has characters left.
+		 *
+		 * @return false at the end of the range
+		 */
+		private boolean fill() throws IOException {
+			if (charsOffset < chars.length) {
+				return true;
+			}
+			if (position > end) {
+				return false;
+			}
+
+			int length = readLineBytes();
+			if (length < 0) {
+				return false;
+			}
+			String decoded = new String(line, 0, length, charset);
+			chars = (terminated ? decoded + "\n" : decoded).toCharArray();
+			charsOffset = 0;
+			return chars.length > 0 || fill();
+		}
+
+		private void ensureOpen() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			ensureOpen();
+			return (fill() ? chars[charsOffset++] : -1);
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			ensureOpen();
+			if (off < 0 || len < 0 || off + len > cbuf.length || off + len < 0) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+
+			int count = Math.min(len, chars.length - charsOffset);
+			System.arraycopy(chars, charsOffset, cbuf, off, count);
+			charsOffset += count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			Assert.isTrue(n >= 0, "skip value is negative");
+			ensureOpen();
+
+			long skipped = 0;
+			while (skipped < n && fill()) {
+				int count = (int) Math.min(n - skipped, chars.length - charsOffset);
+				charsOffset += count;
+				skipped += count;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean ready() throws IOException {
+			ensureOpen();
+			return (charsOffset < chars.length || bufferOffset < bufferLength);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void mark(int readAheadLimit) throws IOException {
+			throw new IOException("mark() not supported");
+		}
+
+		@Override
+		public void reset() throws IOException {
+			throw new IOException("reset() not supported");
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			in.close();
+		}
+	}
+
+}
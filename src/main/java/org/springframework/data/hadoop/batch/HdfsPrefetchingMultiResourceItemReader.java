@@ -0,0 +1,618 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.batch;
+
+import static org.springframework.util.StringUtils.hasText;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.MultiResourceItemReader;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Spring Batch {@link ItemReader} implementation for reading data from multiple HDFS resources, which opens and reads
+ * the next {@link #setPrefetchResources(int) few resources} in the background while the items of the current one are
+ * consumed. It's meant for many small resources, whose open latency (NameNode lookup, DataNode connect, codec init)
+ * dominates their read.
+ *
+ * <p>
+ * Every resource is read by its own delegate, created by the {@link #setDelegateFactory(ObjectFactory) delegate
+ * factory} (such as a prototype {@link HdfsSerializationFormatItemReader} bean), through the
+ * {@link #setTaskExecutor(TaskExecutor) task executor}. Up to {@link #setBufferSize(int) buffer size} items per
+ * resource are read ahead.
+ *
+ * <p>
+ * In {@link #setOrdered(boolean) ordered} mode (the default) the items are returned in the order of the resources,
+ * the same way {@link MultiResourceItemReader} does, and the index of the current resource along with the number of
+ * its items read are stored in the execution context, so a restart skips the resources already read. In unordered
+ * mode the items of the resources read ahead are interleaved as soon as they are read; such read is not restartable
+ * (no state is stored).
+ *
+ * <p>
+ * The exception thrown by a delegate while reading an item is re-thrown by {@link #read()}, after which the delegate
+ * carries on with the next item of its resource, the same way {@link MultiResourceItemReader} does. A delegate which
+ * cannot be opened fails the read with an {@link ItemStreamException} instead, which is re-thrown by every following
+ * {@link #read()} without moving past its resource, so a restart opens the resource again.
+ *
+ * <p>
+ * The reads rejected by the task executor are submitted again upon the next {@link #read()}; the rejection is re-thrown
+ * only if no other read is in flight, so there is nothing to return meanwhile. The task executor must run the reads in
+ * other threads: synchronous executors (such as {@link SyncTaskExecutor} or a thread pool whose
+ * rejection policy runs the task in the calling thread) are not supported, as a read blocked on a full buffer would
+ * never be consumed.
+ *
+ * @see {@link HdfsMultiResourceItemReader}
+ *
+ * @author Alex Savov
+ */
+public class HdfsPrefetchingMultiResourceItemReader<T> extends ExecutionContextUserSupport implements
+		ItemStreamReader<T>, InitializingBean {
+
+	private final static String RESOURCE_INDEX_KEY = "resourceIndex";
+
+	private final static String ITEM_INDEX_KEY = "itemIndex";
+
+	/* Marks the end of the items of a resource in a queue. Preceded by a Failure if the read of the resource failed. */
+	private final static Object END_OF_RESOURCE = new Object();
+
+	/* How often a reader blocked on a full queue checks whether the read has been cancelled. */
+	private final static long OFFER_TIMEOUT_MILLIS = 100;
+
+	/* The resources to read in the order to read them. */
+	private Resource[] sortedResources;
+
+	/* The index of the next resource to read ahead. */
+	private int nextResource;
+
+	/* The queues of the resources read ahead in the order of the resources (ordered mode). */
+	private final LinkedList<BlockingQueue<Object>> resourceQueues = new LinkedList<BlockingQueue<Object>>();
+
+	/* The queue shared by the resources read ahead (unordered mode). */
+	private BlockingQueue<Object> sharedQueue;
+
+	/* The number of resources read ahead whose end has not been consumed yet. */
+	private int resourcesInFlight;
+
+	/* The index of the current resource and the number of its items read (ordered mode). */
+	private int currentResource;
+	private long currentItem;
+
+	/* Cancels the background reads of the current open-close session. */
+	private AtomicBoolean cancelled;
+
+	/* The failure to open the current resource, re-thrown by every read. */
+	private ItemStreamException openFailure;
+
+	// The properties are publicly configurable.
+
+	/* Used to resolve location pattern to resources. */
+	private HdfsResourceLoader loader;
+
+	/* HDFS location pattern to read from. */
+	private String locationPattern;
+
+	/* The resources to read from if no location pattern is set. */
+	private Resource[] resources;
+
+	private ObjectFactory<? extends ResourceAwareItemReaderItemStream<? extends T>> delegateFactory;
+
+	private TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor(ClassUtils.getShortName(getClass()) + "-");
+
+	private int prefetchResources = 4;
+
+	private int bufferSize = 1000;
+
+	private boolean ordered = true;
+
+	private boolean saveState = true;
+
+	private Comparator<Resource> comparator = new Comparator<Resource>() {
+		/* Compares resource filenames, the same way MultiResourceItemReader does. */
+		@Override
+		public int compare(Resource r1, Resource r2) {
+			return r1.getFilename().compareTo(r2.getFilename());
+		}
+	};
+
+	{
+		/* Initialize the name for the key in the execution context. */
+		setName(ClassUtils.getShortName(HdfsPrefetchingMultiResourceItemReader.class));
+	}
+
+	//
+	// Spring Batch Item Reader contract {{
+	//
+
+	/**
+	 * Resolve the resources and start reading the first of them (skipping the ones read upon restart).
+	 */
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+
+		Resource[] toRead = resources;
+
+		if (hasText(locationPattern)) {
+			try {
+				toRead = loader.getResources(locationPattern);
+			} catch (IOException exc) {
+				throw new ItemStreamException("Could not resolve location pattern '" + locationPattern + "'.", exc);
+			}
+		}
+
+		Assert.state(toRead != null, "Set either 'locationPattern' or 'resources' property.");
+
+		sortedResources = toRead.clone();
+
+		Arrays.sort(sortedResources, comparator);
+
+		cancelled = new AtomicBoolean();
+
+		resourceQueues.clear();
+		sharedQueue = ordered ? null : new ArrayBlockingQueue<Object>(bufferSize * prefetchResources);
+		resourcesInFlight = 0;
+		openFailure = null;
+
+		currentResource = 0;
+		currentItem = 0;
+
+		if (ordered && saveState && executionContext.containsKey(getKey(RESOURCE_INDEX_KEY))) {
+			currentResource = executionContext.getInt(getKey(RESOURCE_INDEX_KEY));
+			currentItem = executionContext.getLong(getKey(ITEM_INDEX_KEY), 0);
+		}
+
+		nextResource = currentResource;
+
+		fillReadAheadWindow();
+	}
+
+	/**
+	 * Return the next item read ahead, either of the current resource (ordered mode) or of any resource (unordered
+	 * mode). The exception thrown by the delegate reading a resource is re-thrown; the read of that resource goes on
+	 * upon the next call. The failure to open a delegate is re-thrown by every call instead.
+	 */
+	@Override
+	public T read() throws Exception {
+
+		if (openFailure != null) {
+			throw openFailure;
+		}
+
+		for (;;) {
+
+			// Resubmit the reads rejected by the task executor, if any.
+			fillReadAheadWindow();
+
+			if (resourcesInFlight == 0) {
+				return null;
+			}
+
+			Object item = (ordered ? resourceQueues.getFirst() : sharedQueue).take();
+
+			if (item == END_OF_RESOURCE) {
+				resourcesInFlight--;
+
+				if (ordered) {
+					resourceQueues.removeFirst();
+					currentResource++;
+					currentItem = 0;
+				}
+
+				continue;
+			}
+
+			// Neither the current resource nor its item count moves past a failure.
+			if (item instanceof OpenFailure) {
+				openFailure = new ItemStreamException("Could not open the delegate reading resource '"
+						+ ((OpenFailure) item).resource + "'.", ((Failure) item).exception);
+
+				throw openFailure;
+			}
+
+			if (item instanceof Failure) {
+				Throwable exception = ((Failure) item).exception;
+
+				if (exception instanceof Error) {
+					throw (Error) exception;
+				}
+
+				throw (Exception) exception;
+			}
+
+			currentItem++;
+
+			@SuppressWarnings("unchecked")
+			T object = (T) item;
+
+			return object;
+		}
+	}
+
+	/**
+	 * Store the index of the current resource and the number of its items read (ordered mode only).
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if (ordered && saveState) {
+			executionContext.putInt(getKey(RESOURCE_INDEX_KEY), currentResource);
+			executionContext.putLong(getKey(ITEM_INDEX_KEY), currentItem);
+		}
+	}
+
+	/**
+	 * Cancel the background reads. The delegates are closed by the threads reading them.
+	 */
+	@Override
+	public void close() throws ItemStreamException {
+
+		if (cancelled != null) {
+			cancelled.set(true);
+		}
+
+		resourceQueues.clear();
+		sharedQueue = null;
+		resourcesInFlight = 0;
+		openFailure = null;
+	}
+
+	// }}
+
+	/**
+	 * Submits the reads of the next resources until {@link #setPrefetchResources(int) prefetch resources} are in
+	 * flight. The items of the current resource read before restart are skipped. A read rejected by the task executor
+	 * is submitted again on the next call, unless there is no read in flight to wait for.
+	 */
+	private void fillReadAheadWindow() {
+		try {
+			while (resourcesInFlight < prefetchResources
+					&& readAhead(nextResource == currentResource ? currentItem : 0)) {
+				// Fill the read-ahead window.
+			}
+		} catch (TaskRejectedException exc) {
+			if (resourcesInFlight == 0) {
+				throw exc;
+			}
+		}
+	}
+
+	/**
+	 * Submits the read of the next resource to the task executor. The state is left untouched if the executor
+	 * rejects the read, so it could be submitted again.
+	 *
+	 * @return <code>false</code> if all resources are already read ahead
+	 */
+	protected boolean readAhead(long itemsToSkip) {
+
+		if (nextResource >= sortedResources.length) {
+			return false;
+		}
+
+		BlockingQueue<Object> queue = (ordered ? new ArrayBlockingQueue<Object>(bufferSize) : sharedQueue);
+
+		taskExecutor.execute(new ResourceReader(sortedResources[nextResource], itemsToSkip, queue, cancelled));
+
+		if (ordered) {
+			resourceQueues.addLast(queue);
+		}
+
+		resourcesInFlight++;
+		nextResource++;
+
+		return true;
+	}
+
+	/**
+	 * @param locationPattern The HDFS location pattern to read from.
+	 */
+	public void setLocationPattern(String locationPattern) {
+		this.locationPattern = locationPattern;
+	}
+
+	/**
+	 * @param resources The resources to read from if no location pattern is set.
+	 */
+	public void setResources(Resource[] resources) {
+		this.resources = resources;
+	}
+
+	/**
+	 * @param hdfsResourceLoader The {@link HdfsResourceLoader} instance used to resolve location pattern to HDFS
+	 * resources.
+	 */
+	public void setHdfsResourceLoader(HdfsResourceLoader hdfsResourceLoader) {
+		this.loader = hdfsResourceLoader;
+	}
+
+	/**
+	 * @param delegateFactory The factory creating a new delegate reader for every resource (such as an
+	 * <code>ObjectFactoryCreatingFactoryBean</code> of a prototype bean).
+	 */
+	public void setDelegateFactory(
+			ObjectFactory<? extends ResourceAwareItemReaderItemStream<? extends T>> delegateFactory) {
+		this.delegateFactory = delegateFactory;
+	}
+
+	/**
+	 * @param taskExecutor The executor reading the resources in the background. It must run the reads in other threads
+	 * than the calling one. By default, an internal {@link SimpleAsyncTaskExecutor} instance is used.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * @param prefetchResources The number of resources read at the same time. Defaults to 4.
+	 */
+	public void setPrefetchResources(int prefetchResources) {
+		this.prefetchResources = prefetchResources;
+	}
+
+	/**
+	 * @param bufferSize The number of items per resource read ahead. Defaults to 1000.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @param ordered <code>false</code> to interleave the items of the resources read at the same time. Defaults to
+	 * <code>true</code>.
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * @param saveState Whether to store the current resource and item in the execution context (ordered mode only).
+	 * Defaults to <code>true</code>.
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+
+	/**
+	 * @param comparator The comparator ordering the resources. Defaults to the comparison of their filenames.
+	 */
+	public void setComparator(Comparator<Resource> comparator) {
+		this.comparator = comparator;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.isTrue(hasText(locationPattern) ? loader != null : resources != null,
+				"Either a location pattern with a non-null HdfsResourceLoader or resources are required.");
+		Assert.notNull(delegateFactory, "A non-null delegate factory is required.");
+		Assert.notNull(taskExecutor, "A non-null TaskExecutor is required.");
+		Assert.isTrue(!isSynchronous(taskExecutor), "A TaskExecutor running the reads in other threads is required.");
+		Assert.notNull(comparator, "A non-null comparator is required.");
+		Assert.isTrue(prefetchResources > 0, "The number of prefetched resources must be positive.");
+		Assert.isTrue(bufferSize > 0, "The buffer size must be positive.");
+	}
+
+	/**
+	 * @return <code>true</code> if passed executor is known to run (some of) the tasks in the calling thread
+	 */
+	private static boolean isSynchronous(TaskExecutor taskExecutor) {
+
+		if (taskExecutor instanceof SyncTaskExecutor) {
+			return true;
+		}
+
+		if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+			try {
+				ThreadPoolExecutor executor = ((ThreadPoolTaskExecutor) taskExecutor).getThreadPoolExecutor();
+
+				return executor.getRejectedExecutionHandler() instanceof CallerRunsPolicy;
+			} catch (IllegalStateException exc) {
+				// Not initialized yet.
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads a resource through a new delegate and passes its items to a queue, followed by
+	 * {@link HdfsPrefetchingMultiResourceItemReader#END_OF_RESOURCE the end of the resource}. The exception thrown
+	 * while reading an item is passed as a {@link Failure} in its place; the failure to open the delegate is passed as
+	 * an {@link OpenFailure}; any other one ends the read. Blocks while the
+	 * queue is full. Stops (and closes the delegate) once cancelled.
+	 */
+	protected class ResourceReader implements Runnable {
+
+		private final Resource resource;
+
+		private final long itemsToSkip;
+
+		private final BlockingQueue<Object> queue;
+
+		private final AtomicBoolean cancelled;
+
+		public ResourceReader(Resource resource, long itemsToSkip, BlockingQueue<Object> queue,
+				AtomicBoolean cancelled) {
+			this.resource = resource;
+			this.itemsToSkip = itemsToSkip;
+			this.queue = queue;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		public void run() {
+
+			Failure failure = null;
+
+			ResourceAwareItemReaderItemStream<? extends T> delegate = null;
+
+			try {
+				try {
+					try {
+						delegate = delegateFactory.getObject();
+						delegate.setResource(resource);
+						delegate.open(new ExecutionContext());
+					} catch (Exception exc) {
+						failure = new OpenFailure(resource, exc);
+						return;
+					}
+
+					// Skip the items read before restart. The failed reads are not counted, the same way read() does.
+					for (long skipped = 0; skipped < itemsToSkip && !cancelled.get();) {
+						Object item = readItem(delegate);
+
+						if (item == null) {
+							break;
+						}
+						if (!(item instanceof Failure)) {
+							skipped++;
+						}
+					}
+
+					for (Object item = null; (item = readItem(delegate)) != null;) {
+						if (!put(item)) {
+							return;
+						}
+					}
+				} finally {
+					close(delegate);
+				}
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+
+				failure = new Failure(exc);
+			} catch (Throwable exc) {
+				failure = new Failure(exc);
+			} finally {
+				putEnd(failure);
+			}
+		}
+
+		/**
+		 * @return The next item of the delegate, a {@link Failure} if the delegate throws an exception or
+		 * <code>null</code> at the end of the resource.
+		 */
+		private Object readItem(ResourceAwareItemReaderItemStream<? extends T> delegate) {
+			try {
+				return delegate.read();
+			} catch (Exception exc) {
+				return new Failure(exc);
+			}
+		}
+
+		/**
+		 * Passes the failure (if any) and the end of the resource to the queue, even if interrupted.
+		 */
+		private void putEnd(Failure failure) {
+			if (failure == null || putUninterruptibly(failure)) {
+				putUninterruptibly(END_OF_RESOURCE);
+			}
+		}
+
+		/**
+		 * Same as {@link #put(Object)}, but retries if interrupted (and restores the interrupt status afterwards).
+		 */
+		private boolean putUninterruptibly(Object item) {
+
+			boolean interrupted = false;
+
+			try {
+				for (;;) {
+					try {
+						return put(item);
+					} catch (InterruptedException exc) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		/**
+		 * @return <code>false</code> if cancelled while waiting for the queue
+		 */
+		private boolean put(Object item) throws InterruptedException {
+			while (!cancelled.get()) {
+				if (queue.offer(item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		private void close(ResourceAwareItemReaderItemStream<? extends T> delegate) {
+			if (delegate != null) {
+				try {
+					delegate.close();
+				} catch (ItemStreamException exc) {
+					// Ignore. The items are already read.
+				}
+			}
+		}
+	}
+
+	/**
+	 * The exception thrown by a delegate, passed to the reading thread.
+	 */
+	protected static class Failure {
+
+		private final Throwable exception;
+
+		public Failure(Throwable exception) {
+			this.exception = exception;
+		}
+	}
+
+	/**
+	 * The exception thrown by a delegate while opening its resource.
+	 */
+	protected static class OpenFailure extends Failure {
+
+		private final Resource resource;
+
+		public OpenFailure(Resource resource, Throwable exception) {
+			super(exception);
+			this.resource = resource;
+		}
+	}
+
+}
@@ -20,19 +20,30 @@ import static org.springframework.util.StringUtils.hasText;
 
 import java.io.IOException;
 
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
 import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
+import org.springframework.data.hadoop.serialization.ResumableSerializationReader;
 import org.springframework.data.hadoop.serialization.SerializationFormat;
 import org.springframework.data.hadoop.serialization.SerializationReader;
+import org.springframework.data.hadoop.serialization.SplittableSerializationFormat;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
 /**
  * Spring Batch {@link ItemReader} implementation for reading data from a single HDFS resource using serialization
- * format.
+ * format. If a byte range is specified only the objects of that range are read, which allows a large resource to be
+ * read by several partitioned steps (requires a {@link SplittableSerializationFormat}).
+ * 
+ * <p>
+ * If the serialization reader is a {@link ResumableSerializationReader} (such as the readers of Avro and SeqFile
+ * formats) the last sync position passed and the number of objects read after it are stored in the execution context
+ * upon every {@link #update(ExecutionContext) update}. Upon restart the reader seeks to that position rather than
+ * decoding all objects read by the failed execution again.
  * 
  * @see {@link SerializationFormat}
  * 
@@ -41,9 +52,18 @@ import org.springframework.util.ClassUtils;
 public class HdfsSerializationFormatItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> implements
 		ResourceAwareItemReaderItemStream<T>, InitializingBean {
 
+	private final static String SYNC_POSITION_KEY = "read.sync.position";
+
+	private final static String OBJECTS_SINCE_SYNC_KEY = "read.objects.since.sync";
+
 	/* The Reader provides core 'read objects from Hadoop' logic. Its lifecycle is demarcated by 'open-close' methods. */
 	private SerializationReader<T> serializationReader;
 
+	/* The position to resume the read from upon restart; -1 if none. */
+	private long restartSyncPosition = -1;
+
+	private long restartObjectsSinceSync;
+
 	// The properties are publicly configurable.
 
 	/* The HDFS serialization format used to read objects. */
@@ -55,6 +75,10 @@ public class HdfsSerializationFormatItemReader<T> extends AbstractItemCountingIt
 	/* HDFS resource to read from. */
 	private Resource resource;
 
+	/* The byte range to read. Defaults to the whole resource. */
+	private long start = 0;
+	private long end = Long.MAX_VALUE;
+
 	{
 		/* Initialize the name for the key in the execution context. */
 		setName(ClassUtils.getShortName(HdfsSerializationFormatItemReader.class));
@@ -68,23 +92,83 @@ public class HdfsSerializationFormatItemReader<T> extends AbstractItemCountingIt
 	protected void doOpen() throws IOException {
 		if (hasText(location)) {
 
-			serializationReader = serializationFormat.getReader(location);
+			serializationReader = getReader(location);
 
 		} else if (resource != null) {
 
 			// Passed resource is used only to get its URI.
-			serializationReader = serializationFormat.getReader(resource.getURI().toString());
+			serializationReader = getReader(resource.getURI().toString());
 
 		} else {
 			Assert.state(false, "Set either 'location' or 'resource' property.");
 		}
 	}
 
+	private SerializationReader<T> getReader(String location) throws IOException {
+
+		if (start == 0 && end == Long.MAX_VALUE) {
+			return serializationFormat.getReader(location);
+		}
+
+		Assert.isInstanceOf(SplittableSerializationFormat.class, serializationFormat,
+				"A SplittableSerializationFormat is required to read a byte range.");
+
+		return ((SplittableSerializationFormat<T>) serializationFormat).getReader(location, start, end);
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+
+		String syncPositionKey = getExecutionContextUserSupport().getKey(SYNC_POSITION_KEY);
+
+		String objectsSinceSyncKey = getExecutionContextUserSupport().getKey(OBJECTS_SINCE_SYNC_KEY);
+
+		restartSyncPosition = isSaveState() ? executionContext.getLong(syncPositionKey, -1) : -1;
+		restartObjectsSinceSync = isSaveState() ? executionContext.getLong(objectsSinceSyncKey, 0) : 0;
+
+		super.open(executionContext);
+	}
+
+	/**
+	 * Resume the read from the stored sync position if possible. Otherwise skip the objects one by one.
+	 */
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		if (restartSyncPosition >= 0 && serializationReader instanceof ResumableSerializationReader) {
+			((ResumableSerializationReader<T>) serializationReader).resume(restartSyncPosition,
+					restartObjectsSinceSync);
+		} else {
+			super.jumpToItem(itemIndex);
+		}
+	}
+
 	@Override
 	protected T doRead() throws IOException {
 		return serializationReader.read();
 	}
 
+	/**
+	 * Store the sync position of the Serialization Reader (if resumable) along with the read count.
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+
+		super.update(executionContext);
+
+		if (!isSaveState() || !(serializationReader instanceof ResumableSerializationReader)) {
+			return;
+		}
+
+		ResumableSerializationReader<T> reader = (ResumableSerializationReader<T>) serializationReader;
+
+		if (reader.getSyncPosition() >= 0) {
+			executionContext.putLong(getExecutionContextUserSupport().getKey(SYNC_POSITION_KEY),
+					reader.getSyncPosition());
+			executionContext.putLong(getExecutionContextUserSupport().getKey(OBJECTS_SINCE_SYNC_KEY),
+					reader.getObjectsSinceSync());
+		}
+	}
+
 	@Override
 	protected void doClose() throws IOException {
 		serializationReader.close();
@@ -108,6 +192,20 @@ public class HdfsSerializationFormatItemReader<T> extends AbstractItemCountingIt
 		this.resource = resource;
 	}
 
+	/**
+	 * @param start The start (inclusive) of the byte range to read. Defaults to <code>0</code>.
+	 */
+	public void setStart(long start) {
+		this.start = start;
+	}
+
+	/**
+	 * @param end The end (exclusive) of the byte range to read. Defaults to the end of the resource.
+	 */
+	public void setEnd(long end) {
+		this.end = end;
+	}
+
 	/**
 	 * @param serializationFormat The {@link SerializationFormat} instance used to read objects from Hadoop.
 	 */
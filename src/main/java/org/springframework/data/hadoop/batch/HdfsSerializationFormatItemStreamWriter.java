@@ -21,36 +21,60 @@ import static org.apache.hadoop.io.IOUtils.closeStream;
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.springframework.batch.item.ExecutionContext;
-import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.file.ResourceAwareItemWriterItemStream;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 import org.springframework.data.hadoop.fs.HdfsResource;
 import org.springframework.data.hadoop.serialization.SerializationFormat;
+import org.springframework.data.hadoop.serialization.SerializationReader;
 import org.springframework.data.hadoop.serialization.SerializationWriter;
 import org.springframework.data.hadoop.serialization.SerializationWriterFactoryBean;
 import org.springframework.data.hadoop.serialization.SerializationWriterObjectFactory;
+import org.springframework.data.hadoop.serialization.SyncableSerializationWriter;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
 /**
  * Spring Batch {@link ItemWriter} implementation for writing data to Hadoop using Hadoop serialization formats.
  * Multiple {@link #write(List) writes} demarcated by {@link #open(ExecutionContext) open} and {@link #close() close}
  * methods are aggregated and go to a single HDFS destination.
  * 
+ * <p>
+ * If the serialization writer is a {@link SyncableSerializationWriter} (such as the writers of Avro and SeqFile
+ * formats, also when written asynchronously or along with a Bloom filter) it's synced upon every
+ * {@link #update(ExecutionContext) update}, i.e. at chunk commit, and the number of objects and bytes committed are
+ * stored in the execution context. Upon restart the committed objects are copied from the file left by the failed
+ * execution to a new file at the same destination, which is synced before the old file is deleted, and the write
+ * resumes after them. The objects written after the last commit are discarded. The serialization format should have an
+ * HDFS resource loader set to read the committed objects.
+ * 
  * @see {@link SerializationFormat}
  * @see {@link HdfsSerializationFormatItemWriter}
  * @see {@link HdfsSerializationFormatMultiResourceItemWriter}
  * 
  * @author Alex Savov
  */
-public class HdfsSerializationFormatItemStreamWriter<T> extends ItemStreamSupport implements ResourceAwareItemWriterItemStream<T>,
-		InitializingBean {
+public class HdfsSerializationFormatItemStreamWriter<T> extends ExecutionContextUserSupport implements
+		ResourceAwareItemWriterItemStream<T>, InitializingBean {
+
+	private final static String COMMITTED_OBJECTS_KEY = "committed.objects";
+
+	private final static String COMMITTED_BYTES_KEY = "committed.bytes";
+
+	private final static String RESTART_PREFIX = "_restart-";
 
 	/* The Writer provides core 'write objects to Hadoop' logic. Its lifecycle is demarcated by 'open-close' methods. */
 	private SerializationWriter<T> serializationWriter;
 
+	/* The number of objects written by the Writer. */
+	private long writtenObjects;
+
 	// The properties are publicly configurable.
 
 	/* HDFS location to write to. */
@@ -62,21 +86,38 @@ public class HdfsSerializationFormatItemStreamWriter<T> extends ItemStreamSuppor
 	/* The factory used to open/create serialization writers to passed HDFS destination. */
 	private SerializationWriterObjectFactory sfObjectFactory;
 
+	{
+		/* Initialize the name for the key in the execution context. */
+		setName(ClassUtils.getShortName(HdfsSerializationFormatItemStreamWriter.class));
+	}
+
 	//
 	// Adapt Serialization Writer to Spring Batch Item Writer contract {{
 	//
 
 	/**
-	 * Create Serialization Writer with passed parameters.
+	 * Create Serialization Writer with passed parameters. Resume the write on restart.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void open(ExecutionContext executionContext) {
 
 		sfObjectFactory.setDestination(location);
 		sfObjectFactory.setResource(resource);
 
-		serializationWriter = (SerializationWriter<T>) sfObjectFactory.getObject();
+		long committedObjects = executionContext.getLong(getKey(COMMITTED_OBJECTS_KEY), -1);
+
+		try {
+			if (committedObjects >= 0) {
+				resume(committedObjects, executionContext.getLong(getKey(COMMITTED_BYTES_KEY), -1));
+			} else {
+				openWriter();
+			}
+		} catch (IOException exc) {
+			close();
+
+			throw new ItemStreamException("Could not resume the write to '" + sfObjectFactory.getDestination() + "'.",
+					exc);
+		}
 	}
 
 	/**
@@ -87,6 +128,29 @@ public class HdfsSerializationFormatItemStreamWriter<T> extends ItemStreamSuppor
 		for (T item : items) {
 			serializationWriter.write(item);
 		}
+
+		writtenObjects += items.size();
+	}
+
+	/**
+	 * Sync the Serialization Writer (if syncable) and store the number of objects and bytes committed.
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) {
+
+		if (!(serializationWriter instanceof SyncableSerializationWriter)) {
+			return;
+		}
+
+		try {
+			long committedBytes = ((SyncableSerializationWriter<T>) serializationWriter).sync();
+
+			executionContext.putLong(getKey(COMMITTED_OBJECTS_KEY), writtenObjects);
+			executionContext.putLong(getKey(COMMITTED_BYTES_KEY), committedBytes);
+		} catch (IOException exc) {
+			throw new ItemStreamException("Could not sync the write to '" + sfObjectFactory.getDestination() + "'.",
+					exc);
+		}
 	}
 
 	/**
@@ -102,6 +166,74 @@ public class HdfsSerializationFormatItemStreamWriter<T> extends ItemStreamSuppor
 
 	// }}
 
+	@SuppressWarnings("unchecked")
+	protected void openWriter() {
+
+		serializationWriter = (SerializationWriter<T>) sfObjectFactory.getObject();
+
+		writtenObjects = 0;
+	}
+
+	/**
+	 * Moves the file left by the failed execution aside, opens a new one and copies the committed objects to it. HDFS
+	 * files could not be truncated (nor reliably appended to), so that's the way to drop the uncommitted objects.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void resume(long committedObjects, long committedBytes) throws IOException {
+
+		FileSystem fs = sfObjectFactory.getHdfsResourceLoader().getFileSystem();
+
+		Path path = new Path(sfObjectFactory.getDestination());
+
+		// Keeps the extension, so the file is still readable by the serialization format.
+		Path restartPath = new Path(path.getParent(), RESTART_PREFIX + path.getName());
+
+		// A previous restart might have failed after the file was moved aside.
+		if (!fs.exists(restartPath)) {
+			if (!fs.exists(path)) {
+				throw new IOException("The file with " + committedObjects + " committed objects is missing.");
+			}
+
+			if (!fs.rename(path, restartPath)) {
+				throw new IOException("Cannot rename '" + path + "' to '" + restartPath + "'.");
+			}
+		}
+
+		openWriter();
+
+		// The file moved aside is kept (and reused by the next restart) unless the copy could be synced.
+		if (!(serializationWriter instanceof SyncableSerializationWriter)) {
+			throw new IOException("The write to '" + path + "' is not syncable, so it cannot be resumed.");
+		}
+
+		SerializationFormat<T> serializationFormat = (SerializationFormat<T>) sfObjectFactory
+				.getSerializationFormat();
+
+		SerializationReader<T> reader = serializationFormat.getReader(restartPath.toUri().getPath());
+
+		try {
+			for (; writtenObjects < committedObjects; writtenObjects++) {
+				T object = reader.read();
+
+				if (object == null) {
+					throw new IOException("Only " + writtenObjects + " of " + committedObjects + " objects ("
+							+ committedBytes + " bytes) committed to '" + restartPath + "' could be read.");
+				}
+
+				serializationWriter.write(object);
+			}
+		} finally {
+			closeStream(reader);
+		}
+
+		// The copied objects should survive a crash before their only other copy is deleted.
+		((SyncableSerializationWriter<T>) serializationWriter).sync();
+
+		if (!fs.delete(restartPath, false)) {
+			throw new IOException("Cannot delete '" + restartPath + "'.");
+		}
+	}
+
 	/**
 	 * @param hdfsWriter The {@link SerializationWriterFactoryBean} instance used to write to underlying Hadoop file
 	 * system.
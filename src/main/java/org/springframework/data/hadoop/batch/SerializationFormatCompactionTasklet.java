@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.batch;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.data.hadoop.serialization.SerializationFormatCompactor;
+
+/**
+ * Spring Batch {@link Tasklet} compacting the small files written by
+ * {@link HdfsSerializationFormatMultiResourceItemWriter} (or any other writer of a serialization format). The objects
+ * rewritten are reported as the write count of the step.
+ *
+ * @see {@link SerializationFormatCompactor}
+ *
+ * @author Alex Savov
+ */
+public class SerializationFormatCompactionTasklet<T> extends SerializationFormatCompactor<T> implements Tasklet {
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		long objects = compact();
+
+		contribution.incrementWriteCount((int) Math.min(objects, Integer.MAX_VALUE));
+
+		return RepeatStatus.FINISHED;
+	}
+
+}
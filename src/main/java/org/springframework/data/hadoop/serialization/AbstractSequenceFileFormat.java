@@ -20,25 +20,46 @@ import static org.apache.hadoop.io.IOUtils.closeStream;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.MD5Hash;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.SequenceFile.Reader;
 import org.apache.hadoop.io.SequenceFile.Writer;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.serializer.Serialization;
 import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.hadoop.fs.HdfsResource;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
 /**
  * The class provides support needed by {@link SerializationFormat}s creating {@link SerializationWriter}s that
- * serialize objects based on their type using Hadoop {@link SequenceFile} pluggable serialization framework.
+ * serialize objects based on their type using Hadoop {@link SequenceFile} pluggable serialization framework. The files
+ * are splittable on SequenceFile sync points.
  * 
  * @see {@link Serialization}
  * @see {@link SerializationFactory}
@@ -47,10 +68,18 @@ import org.springframework.util.Assert;
  * 
  * @author Alex Savov
  */
-public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatSupport<T> implements InitializingBean {
+public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatSupport<T> implements
+		SplittableSerializationFormat<T>, LocationAwareSerializationFormat<T>, InitializingBean {
 
 	protected static final String HADOOP_IO_SERIALIZATIONS = "io.serializations";
 
+	protected static final String BLOOM_FILTER_EXTENSION = ".bloom";
+
+	/* The largest vector (in bits) whose byte length BloomFilter computes without overflowing an int. */
+	protected static final int MAX_BLOOM_FILTER_VECTOR_SIZE = Integer.MAX_VALUE & ~7;
+
+	public static final int DEFAULT_BLOOM_FILTER_CACHE_SIZE = 1024;
+
 	/* The class of the objects that are serialized by this format. */
 	protected final Class<T> objectsClass;
 
@@ -60,6 +89,27 @@ public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatS
 	/* This property is publicly configurable. */
 	private SerializationKeyProvider serializationKeyProvider;
 
+	/* This property is publicly configurable. */
+	private boolean reuseRecords = false;
+
+	/* This property is publicly configurable. */
+	private double bloomFilterFalsePositiveRate = 0;
+
+	/* This property is publicly configurable. */
+	private int bloomFilterCacheSize = DEFAULT_BLOOM_FILTER_CACHE_SIZE;
+
+	/* The Bloom filters recently loaded, keyed by location. */
+	private final Map<String, CachedBloomFilter> bloomFilterCache = new LinkedHashMap<String, CachedBloomFilter>(16,
+			0.75f, true) {
+
+		private static final long serialVersionUID = 2675367317398423745L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedBloomFilter> eldest) {
+			return size() > bloomFilterCacheSize;
+		}
+	};
+
 	/**
 	 * @param objectsClass The class of the objects that are serialized by this serialization format.
 	 */
@@ -93,12 +143,328 @@ public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatS
 		return serializationKeyProvider;
 	}
 
+	/**
+	 * Enables record-reuse read mode. In this mode every Reader keeps a single mutable key and value instance which is
+	 * re-populated on every read, so the object returned by {@link SerializationReader#read()} is valid only until the
+	 * next call of the method. Useful for scan-and-aggregate jobs as it avoids allocating an object per record. Honored
+	 * by serializations which support object reuse (such as Writable and Avro). Defaults to <code>false</code>.
+	 * 
+	 * @param reuseRecords <code>true</code> to re-use the objects returned by Readers
+	 */
+	public void setReuseRecords(boolean reuseRecords) {
+		this.reuseRecords = reuseRecords;
+	}
+
+	protected boolean isReuseRecords() {
+		return reuseRecords;
+	}
+
+	/**
+	 * Enables Bloom filters over the keys of the objects written, sized for the specified false-positive rate (such as
+	 * <code>0.01</code>). The filters are built only by writers aware of their location (as created by
+	 * {@link SerializationWriterObjectFactory} or {@link RollingSerializationWriter}). A writer keeps an 8-byte digest
+	 * per key in memory until closed, so the filter is sized for the actual number of keys. Defaults to <code>0</code>
+	 * (disabled).
+	 * 
+	 * @param bloomFilterFalsePositiveRate The false-positive rate of the filters, between 0 and 1 (exclusive).
+	 */
+	public void setBloomFilterFalsePositiveRate(double bloomFilterFalsePositiveRate) {
+		this.bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate;
+	}
+
+	protected boolean isBloomFilterEnabled() {
+		return bloomFilterFalsePositiveRate > 0;
+	}
+
+	/**
+	 * Sets the max number of Bloom filters kept in memory by {@link #mightContain(String, Object)}. A filter takes
+	 * about 1.2 bytes per key at 1% false-positive rate. Defaults to <code>1024</code>.
+	 * 
+	 * @param bloomFilterCacheSize The max number of cached filters.
+	 */
+	public void setBloomFilterCacheSize(int bloomFilterCacheSize) {
+		this.bloomFilterCacheSize = bloomFilterCacheSize;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		// TODO: @Costin: Should we clone passed Configuration or should we use it as it is?
 		// My take is to clone it cause it's changed by 'register' method. Or is that a responsibility of the caller?
 		Assert.notNull(getConfiguration(), "A non-null Hadoop configuration is required.");
 		Assert.notNull(getSerializationKeyProvider(), "A non-null SerializationKeyProvider is required.");
+
+		if (isBloomFilterEnabled()) {
+			Assert.isTrue(bloomFilterFalsePositiveRate < 1, "The false-positive rate must be between 0 and 1.");
+			Assert.isTrue(getSerializationKeyProvider() != NullWritableSerializationKeyProvider.INSTANCE,
+					"A SerializationKeyProvider providing actual keys is required to build Bloom filters.");
+		}
+	}
+
+	/**
+	 * Builds a Bloom filter over the keys of the objects written to passed location if
+	 * {@link #setBloomFilterFalsePositiveRate(double) enabled}.
+	 */
+	@Override
+	public SerializationWriter<T> getWriter(OutputStream output, String location) throws IOException {
+
+		SerializationWriter<T> writer = super.getWriter(output, location);
+
+		if (!isBloomFilterEnabled()) {
+			return writer;
+		}
+
+		// Keep the writer syncable, so it could still be checkpointed.
+		if (writer instanceof SyncableSerializationWriter) {
+			return new SyncableBloomFilterWriter((SyncableSerializationWriter<T>) writer, location);
+		}
+		return new BloomFilterWriter(writer, location);
+	}
+
+	/**
+	 * Tells whether the file at passed location might contain an object with passed key. Uses the Bloom filter written
+	 * next to the file, so no false negatives are possible, while the rate of false positives is
+	 * {@link #setBloomFilterFalsePositiveRate(double) configurable}. Files written without a filter might contain any
+	 * key.
+	 * <p>
+	 * The filter holds digests of the keys' binary form, so passed key must be an instance of the key class provided
+	 * by the {@link #setSerializationKeyProvider(SerializationKeyProvider) key provider} for the objects of this format.
+	 * An equal looking key of another type (an <code>Integer</code> for a <code>Long</code> key, a <code>Text</code>
+	 * for a <code>String</code> key) would be digested differently and is rejected.
+	 * 
+	 * @param location The location of the file.
+	 * @param key The key to test.
+	 * 
+	 * @return <code>false</code> if the file definitely does not contain the key; <code>true</code> otherwise.
+	 * 
+	 * @throws IllegalArgumentException If the key is not an instance of the provided key class.
+	 */
+	public boolean mightContain(String location, Object key) throws IOException {
+		Assert.notNull(key, "A non-null key is required.");
+
+		Class<?> keyClass = getSerializationKeyProvider().getKeyClass(objectsClass);
+		if (keyClass != null) {
+			Assert.isInstanceOf(ClassUtils.resolvePrimitiveIfNecessary(keyClass), key,
+					"The key must be of the key class provided for " + objectsClass.getName() + ".");
+		}
+
+		location = SerializationWriterObjectFactory.canonicalSerializationDestination(this, location);
+
+		BloomFilter bloomFilter = getBloomFilter(location);
+
+		return bloomFilter == null || bloomFilter.membershipTest(toBloomFilterKey(keyDigest(key)));
+	}
+
+	/**
+	 * @return The (cached) Bloom filter of the file at passed location; <code>null</code> if the file has no filter. The
+	 * cached filter is reloaded if the filter file was modified since.
+	 */
+	protected BloomFilter getBloomFilter(String location) throws IOException {
+		FileSystem fs = getHdfsResourceLoader().getFileSystem();
+
+		Path bloomFilterPath = new Path(location + BLOOM_FILTER_EXTENSION);
+
+		if (!fs.exists(bloomFilterPath)) {
+			return null;
+		}
+
+		FileStatus status = fs.getFileStatus(bloomFilterPath);
+
+		CachedBloomFilter cached;
+
+		synchronized (bloomFilterCache) {
+			cached = bloomFilterCache.get(location);
+		}
+
+		if (cached == null || cached.modificationTime != status.getModificationTime()) {
+			cached = new CachedBloomFilter(status.getModificationTime());
+
+			FSDataInputStream input = fs.open(bloomFilterPath);
+			try {
+				cached.bloomFilter.readFields(input);
+			} finally {
+				closeStream(input);
+			}
+
+			synchronized (bloomFilterCache) {
+				bloomFilterCache.put(location, cached);
+			}
+		}
+
+		return cached.bloomFilter;
+	}
+
+	/**
+	 * Digests the binary form of passed key: {@link Writable} keys are digested as written by themselves, while other
+	 * keys as encoded by Avro reflection.
+	 * 
+	 * @return The first 8 bytes of the MD5 digest of the key.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static long keyDigest(Object key) throws IOException {
+		DataOutputBuffer buffer = new DataOutputBuffer();
+
+		if (key instanceof Writable) {
+			((Writable) key).write(buffer);
+		} else {
+			DatumWriter<Object> datumWriter = (DatumWriter<Object>) AvroSchemaCache.INSTANCE.getDatumWriter(key
+					.getClass());
+
+			BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(buffer, null);
+
+			datumWriter.write(key, encoder);
+		}
+
+		return MD5Hash.digest(buffer.getData(), 0, buffer.getLength()).halfDigest();
+	}
+
+	protected static Key toBloomFilterKey(long keyDigest) {
+		byte[] bytes = new byte[8];
+
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (keyDigest >>> (8 * i));
+		}
+
+		return new Key(bytes);
+	}
+
+	/**
+	 * Decorates a writer collecting the digests of the keys written. Builds the Bloom filter and writes it next to the
+	 * file once closed.
+	 */
+	protected class BloomFilterWriter implements SerializationWriter<T> {
+
+		protected final SerializationWriter<T> writer;
+
+		protected final String location;
+
+		protected long[] keyDigests = new long[1024];
+
+		protected int size = 0;
+
+		protected BloomFilterWriter(SerializationWriter<T> writer, String location) {
+			Assert.notNull(location, "The location is required to write a Bloom filter.");
+
+			this.writer = writer;
+			this.location = location;
+		}
+
+		@Override
+		public void write(T object) throws IOException {
+			writer.write(object);
+
+			if (size == keyDigests.length) {
+				keyDigests = Arrays.copyOf(keyDigests, size * 2);
+			}
+
+			keyDigests[size++] = keyDigest(getSerializationKeyProvider().getKey(object));
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (keyDigests == null) {
+				return;
+			}
+
+			writer.close();
+
+			// Optimal size: m = -n * ln(p) / ln(2)^2 bits and k = m / n * ln(2) hash functions.
+			int keys = Math.max(1, size);
+
+			double optimalVectorSize = Math.ceil(-keys * Math.log(bloomFilterFalsePositiveRate)
+					/ (Math.log(2) * Math.log(2)));
+
+			// Too many keys for the false-positive rate: clamp the vector at the cost of a higher false-positive rate.
+			int vectorSize = (int) Math.min(optimalVectorSize, MAX_BLOOM_FILTER_VECTOR_SIZE);
+
+			int nbHash = Math.max(1, (int) Math.round((double) vectorSize / keys * Math.log(2)));
+
+			BloomFilter bloomFilter = new BloomFilter(vectorSize, nbHash, Hash.MURMUR_HASH);
+
+			for (int i = 0; i < size; i++) {
+				bloomFilter.add(toBloomFilterKey(keyDigests[i]));
+			}
+
+			keyDigests = null;
+
+			FSDataOutputStream output = (FSDataOutputStream) ((HdfsResource) getHdfsResourceLoader().getResource(
+					location + BLOOM_FILTER_EXTENSION)).getOutputStream();
+			try {
+				bloomFilter.write(output);
+			} finally {
+				closeStream(output);
+			}
+		}
+	}
+
+	/**
+	 * A {@link BloomFilterWriter} of a {@link SyncableSerializationWriter}. The Bloom filter is written once closed
+	 * only, so the keys of a resumed write should be written again.
+	 */
+	protected class SyncableBloomFilterWriter extends BloomFilterWriter implements SyncableSerializationWriter<T> {
+
+		protected SyncableBloomFilterWriter(SyncableSerializationWriter<T> writer, String location) {
+			super(writer, location);
+		}
+
+		@Override
+		public long sync() throws IOException {
+			return ((SyncableSerializationWriter<T>) writer).sync();
+		}
+	}
+
+	/**
+	 * A Bloom filter loaded in memory.
+	 */
+	protected static class CachedBloomFilter {
+
+		final long modificationTime;
+
+		final BloomFilter bloomFilter = new BloomFilter();
+
+		CachedBloomFilter(long modificationTime) {
+			this.modificationTime = modificationTime;
+		}
+	}
+
+	@Override
+	public SerializationReader<T> getReader(String location, long start, long end) throws IOException {
+		return super.getReader(location, start, end);
+	}
+
+	@Override
+	public List<SerializationReader<T>> getReaders(String location, int desiredSplits) throws IOException {
+		return super.getReaders(location, desiredSplits);
+	}
+
+	/**
+	 * Reads the whole SequenceFile at passed location.
+	 */
+	@Override
+	protected SerializationReaderSupport createReader(String location) {
+		return createReader(location, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Should be implemented by descendant classes. Usually returns an {@link AbstractSequenceFileReader}.
+	 */
+	@Override
+	protected abstract SerializationReaderSupport createReader(String location, long start, long end);
+
+	/**
+	 * Opens a {@link SequenceFile} reader to passed location, whose input stream is {@link #readAhead(InputStream)
+	 * read ahead} if configured so.
+	 */
+	protected SequenceFile.Reader openSequenceFileReader(String location) throws IOException {
+
+		return new SequenceFile.Reader(getHdfsResourceLoader().getFileSystem(), new Path(location), getConfiguration()) {
+
+			@Override
+			protected FSDataInputStream openFile(FileSystem fs, Path file, int bufferSize, long length)
+					throws IOException {
+				// The stream is either returned untouched or decorated by a FSDataInputStream.
+				return (FSDataInputStream) readAhead(super.openFile(fs, file, bufferSize, length));
+			}
+		};
 	}
 
 	/**
@@ -107,7 +473,7 @@ public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatS
 	 * 
 	 * @see {@link SequenceFile.Writer}
 	 */
-	protected abstract class AbstractSequenceFileWriter extends SerializationWriterSupport {
+	protected abstract class AbstractSequenceFileWriter extends SyncableSerializationWriterSupport {
 
 		protected final FSDataOutputStream fsOutputStream;
 
@@ -155,6 +521,14 @@ public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatS
 			writer.append(getKey(object), getValue(object));
 		}
 
+		/**
+		 * Writes a sync marker, preceded by the current block if block-compressed.
+		 */
+		@Override
+		protected void doSync() throws IOException {
+			writer.sync();
+		}
+
 		protected abstract Class<?> getKeyClass();
 
 		protected abstract Object getKey(T object);
@@ -170,39 +544,82 @@ public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatS
 	 * 
 	 * @see {@link SequenceFile.Reader}
 	 */
-	protected abstract class AbstractSequenceFileReader extends SerializationReaderSupport {
+	protected abstract class AbstractSequenceFileReader extends ResumableSerializationReaderSupport {
 
-		// Re-used objects passed to underlying SeqFile reader.
-		protected final Object KEY_TO_REUSE = null;
-		protected final Object VALUE_TO_REUSE = null;
+		// Re-used objects passed to underlying SeqFile reader. Remain null unless in record-reuse mode.
+		protected Object keyToReuse;
+		protected Object valueToReuse;
 
 		/* Native SeqFile reader. */
 		protected SequenceFile.Reader reader;
 
 		protected final String location;
 
+		/* The byte range to read. */
+		protected final long start;
+		protected final long end;
+
 		protected AbstractSequenceFileReader(String location) {
+			this(location, 0, Long.MAX_VALUE);
+		}
+
+		protected AbstractSequenceFileReader(String location, long start, long end) {
 			this.location = location;
+			this.start = start;
+			this.end = end;
 		}
 
 		@Override
 		protected Closeable doOpen() throws IOException {
 			// Open SeqFile reader to passed location.
-			reader = new SequenceFile.Reader(getHdfsResourceLoader().getFileSystem(), new Path(location),
-					getConfiguration());
+			reader = openSequenceFileReader(location);
+
+			// Skip to the first sync point of the range.
+			if (start > reader.getPosition()) {
+				reader.sync(start);
+			}
 
 			return reader;
 		}
 
 		/**
-		 * Reads objects from Hadoop using {@link SequenceFile} serialization.
+		 * Reads objects from Hadoop using {@link SequenceFile} serialization. Stops at the first sync point after the
+		 * end of the range.
 		 * 
 		 * @see {@link Reader#getCurrentValue(Object)}
 		 */
 		@Override
 		protected T doRead() throws IOException {
+			long position = reader.getPosition();
+
+			Object key = reader.next(keyToReuse);
+
 			// SeqFile.key is skipped. Return SeqFile.value.
-			return reader.next(KEY_TO_REUSE) != null ? getValue(reader.getCurrentValue(VALUE_TO_REUSE)) : null;
+			if (key == null || (position >= end && reader.syncSeen())) {
+				return null;
+			}
+
+			Object value = reader.getCurrentValue(valueToReuse);
+
+			if (isReuseRecords()) {
+				keyToReuse = key;
+				valueToReuse = value;
+			}
+
+			// The position moves upon every record, but once per block if block-compressed.
+			objectRead(reader.getPosition() != position ? position : syncPosition);
+
+			return getValue(value);
+		}
+
+		/**
+		 * Seeks to the record (or the sync marker preceding the block) reported as the sync point.
+		 * 
+		 * @see {@link Reader#seek(long)}
+		 */
+		@Override
+		protected void doSeek(long syncPosition) throws IOException {
+			reader.seek(syncPosition);
 		}
 
 		/**
@@ -245,4 +662,23 @@ public abstract class AbstractSequenceFileFormat<T> extends SerializationFormatS
 		conf.setStrings(HADOOP_IO_SERIALIZATIONS, serializations.toArray(new String[serializations.size()]));
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Adds the {@link Serialization} scheme to the configuration ahead of all other schemes, so it takes precedence for
+	 * the classes it accepts.
+	 * 
+	 * @param serializationClass The Serialization class to register to underlying configuration.
+	 */
+	@SuppressWarnings("rawtypes")
+	protected void registerPreferredSeqFileSerialization(Class<? extends Serialization> serializationClass) {
+
+		Configuration conf = getConfiguration();
+
+		List<String> serializations = new ArrayList<String>(conf.getStringCollection(HADOOP_IO_SERIALIZATIONS));
+
+		serializations.remove(serializationClass.getName());
+		serializations.add(0, serializationClass.getName());
+
+		conf.setStrings(HADOOP_IO_SERIALIZATIONS, serializations.toArray(new String[serializations.size()]));
+	}
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import static org.apache.hadoop.io.IOUtils.closeStream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SerializationWriter} decorator which hands the objects to a bounded buffer drained by a dedicated writer
+ * thread. Thus encoding and HDFS I/O (pipeline acks, block boundaries) of the underlying writer overlap with the work
+ * of the calling thread.
+ *
+ * <p>
+ * The calling thread blocks once the buffer is full (backpressure). An error of the underlying writer is re-thrown by
+ * the next call of {@link #write(Object)} or {@link #close()}; the objects buffered after the error are discarded.
+ * {@link #close()} waits for all buffered objects to be written and closes the underlying writer. If the writer thread
+ * terminates (for example is interrupted) the calling thread fails rather than waiting for buffer space forever.
+ *
+ * <p>
+ * The objects are written after {@link #write(Object)} returns, so they must not be changed (or re-used for the next
+ * object) once passed to it.
+ *
+ * <p>
+ * Instances are NOT thread-safe: a single thread is expected to write to them, as with any other writer.
+ *
+ * @see SyncableAsyncSerializationWriter
+ *
+ * @author Alex Savov
+ */
+public class AsyncSerializationWriter<T> implements SerializationWriter<T> {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/* Marks the end of the objects written. */
+	private static final Object END_OF_WRITES = new Object();
+
+	/* How long to wait for buffer space before checking whether the writer thread is still running. */
+	private static final long PUT_TIMEOUT_MILLIS = 100;
+
+	protected final SerializationWriter<T> writer;
+
+	protected final BlockingQueue<Object> buffer;
+
+	protected final Thread writerThread;
+
+	/* The first error of the underlying writer. */
+	protected volatile Throwable writeError;
+
+	protected boolean closed = false;
+
+	/**
+	 * @param writer The writer to delegate to from a dedicated thread.
+	 */
+	public AsyncSerializationWriter(SerializationWriter<T> writer) {
+		this(writer, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param writer The writer to delegate to from a dedicated thread.
+	 * @param capacity The max number of objects buffered.
+	 */
+	public AsyncSerializationWriter(SerializationWriter<T> writer, final int capacity) {
+		Assert.notNull(writer, "A non-null SerializationWriter is required.");
+		Assert.isTrue(capacity > 0, "The capacity must be positive.");
+
+		this.writer = writer;
+
+		buffer = new ArrayBlockingQueue<Object>(capacity);
+
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainBuffer(capacity);
+			}
+		}, getClass().getSimpleName() + "-" + writer.getClass().getSimpleName());
+
+		// Abandoned (never closed) writers should not keep the JVM alive.
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Buffers the object to be written by the writer thread. Blocks while the buffer is full.
+	 *
+	 * @throws IOException if the underlying writer failed to write a previously buffered object
+	 */
+	@Override
+	public void write(T object) throws IOException {
+		Assert.notNull(object, "A non-null object is required.");
+		Assert.state(!closed, "The writer is closed.");
+
+		checkWriteError();
+
+		put(object);
+	}
+
+	/**
+	 * Waits for all buffered objects to be written and closes the underlying writer.
+	 *
+	 * @throws IOException if the underlying writer failed to write or close
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		put(END_OF_WRITES);
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for buffered objects to be written.");
+		}
+
+		checkWriteError();
+	}
+
+	/**
+	 * Waits for the objects buffered so far to be written, then syncs the underlying writer from the writer thread.
+	 *
+	 * @return The position returned by the underlying writer.
+	 * @throws IOException if the underlying writer failed to write or sync
+	 */
+	protected long syncBuffered() throws IOException {
+		Assert.state(!closed, "The writer is closed.");
+
+		checkWriteError();
+
+		SyncRequest request = new SyncRequest();
+
+		put(request);
+
+		try {
+			while (!request.done.await(PUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (!writerThread.isAlive()) {
+					checkWriteError();
+					throw new IOException("The writer thread has terminated.");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for buffered objects to be synced.");
+		}
+
+		// The request is released without a position if the underlying writer failed.
+		checkWriteError();
+
+		return request.position;
+	}
+
+	protected void put(Object object) throws IOException {
+		try {
+			while (!buffer.offer(object, PUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				// Nobody would ever take the object from a full buffer.
+				if (!writerThread.isAlive()) {
+					checkWriteError();
+					throw new IOException("The writer thread has terminated.");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for buffer space.");
+		}
+	}
+
+	protected void checkWriteError() throws IOException {
+		Throwable error = writeError;
+
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		}
+		if (error instanceof Error) {
+			throw (Error) error;
+		}
+	}
+
+	/**
+	 * Writes the buffered objects in batches until the end of writes is reached.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void drainBuffer(int capacity) {
+
+		List<Object> batch = new ArrayList<Object>(capacity);
+
+		try {
+			while (true) {
+				batch.add(buffer.take());
+				buffer.drainTo(batch);
+
+				for (Object object : batch) {
+					if (object == END_OF_WRITES) {
+						writer.close();
+						return;
+					}
+
+					if (object instanceof SyncRequest) {
+						SyncRequest request = (SyncRequest) object;
+
+						request.position = ((SyncableSerializationWriter<T>) writer).sync();
+						request.done.countDown();
+						continue;
+					}
+
+					writer.write((T) object);
+				}
+
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			writeError = new InterruptedIOException("Writer thread interrupted.");
+
+			closeStream(writer);
+
+			release(batch);
+		} catch (Throwable t) {
+			writeError = t;
+
+			// Release the underlying writer, then keep on draining (discarding) everything up to the end of writes, so
+			// the calling thread never blocks on a full buffer.
+			closeStream(writer);
+
+			release(batch);
+
+			if (!batch.contains(END_OF_WRITES)) {
+				discardUntilEndOfWrites();
+			}
+		}
+	}
+
+	private void discardUntilEndOfWrites() {
+		try {
+			for (Object object = null; (object = buffer.take()) != END_OF_WRITES;) {
+				release(Collections.singletonList(object));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Releases the sync requests among the discarded objects; the error is already set for them to re-throw.
+	 */
+	private void release(List<Object> objects) {
+		for (Object object : objects) {
+			if (object instanceof SyncRequest) {
+				((SyncRequest) object).done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * A request to sync the underlying writer once the objects buffered before it are written.
+	 */
+	protected static class SyncRequest {
+
+		final CountDownLatch done = new CountDownLatch(1);
+
+		volatile long position = -1;
+	}
+
+}
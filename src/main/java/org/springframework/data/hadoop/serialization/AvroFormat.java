@@ -18,30 +18,38 @@ package org.springframework.data.hadoop.serialization;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.file.FileReader;
 import org.apache.avro.file.SeekableInput;
-import org.apache.avro.reflect.ReflectData;
 import org.apache.avro.reflect.ReflectDatumReader;
-import org.apache.avro.reflect.ReflectDatumWriter;
-import org.apache.hadoop.fs.Seekable;
 import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
 
 /**
- * Serialization formats writing POJOs using <code>Avro</code> serialization.
+ * Serialization formats writing POJOs using <code>Avro</code> serialization. The files are splittable on Avro sync
+ * markers.
  * 
  * @author Alex Savov
  */
-public class AvroFormat<T> extends SerializationFormatSupport<T> {
+public class AvroFormat<T> extends SerializationFormatSupport<T> implements SplittableSerializationFormat<T> {
 
 	/* The class of the objects that are serialized by this format. */
 	protected final Class<T> objectsClass;
 
+	/* This property is publicly configurable. */
+	private AvroSchemaCache schemaCache = AvroSchemaCache.INSTANCE;
+
+	/* This property is publicly configurable. */
+	private Schema readerSchema;
+
+	/* This property is publicly configurable. */
+	private String[] projection;
+
 	/**
 	 * @param objectsClass The class of the objects that are serialized by this format.
 	 */
@@ -49,23 +57,75 @@ public class AvroFormat<T> extends SerializationFormatSupport<T> {
 		this.objectsClass = objectsClass;
 	}
 
+	/**
+	 * Sets the cache of reflective schemas and datum writers. Defaults to the {@link AvroSchemaCache#INSTANCE shared}
+	 * one.
+	 * 
+	 * @param schemaCache The cache to use.
+	 */
+	public void setSchemaCache(AvroSchemaCache schemaCache) {
+		this.schemaCache = schemaCache;
+	}
+
+	protected AvroSchemaCache getSchemaCache() {
+		return schemaCache;
+	}
+
+	/**
+	 * Sets the schema used to resolve the records read from Avro files. Fields of the writer schema that are missing in
+	 * the reader schema are skipped at the byte level (without being materialized) and the corresponding POJO fields
+	 * are left as initialized by the default constructor. Takes precedence over the {@link #setProjection(String...)
+	 * projection}.
+	 * 
+	 * @param readerSchema The reader schema. Should have the same full name as the schema of the objects class.
+	 */
+	public void setReaderSchema(Schema readerSchema) {
+		this.readerSchema = readerSchema;
+	}
+
+	/**
+	 * Sets the names of the fields populated by the Readers. It is a shortcut for a {@link #setReaderSchema(Schema)
+	 * reader schema} which is a projection of the reflective schema of the objects class.
+	 * 
+	 * @param projection The names of the fields to read.
+	 */
+	public void setProjection(String... projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * @return The schema used to resolve the records read from Avro files; <code>null</code> if the records should be
+	 * read using the writer schema.
+	 */
+	protected Schema getReaderSchema() {
+		if (readerSchema != null) {
+			return readerSchema;
+		}
+
+		if (projection != null) {
+			return AvroUtils.projectSchema(getSchemaCache().getSchema(objectsClass), projection);
+		}
+
+		return null;
+	}
+
 	/**
 	 * Writes POJOs using <code>Avro</code> serialization.
 	 */
 	protected SerializationWriterSupport createWriter(final OutputStream output) {
 
-		return new SerializationWriterSupport() {
+		return new SyncableSerializationWriterSupport() {
 
 			/* Native Avro writer. */
 			DataFileWriter<T> writer;
 
 			@Override
 			protected Closeable doOpen() throws IOException {
-				// Create reflective Avro schema by object class.
-				Schema schema = ReflectData.get().getSchema(objectsClass);
+				// Get (cached) reflective Avro schema by object class.
+				Schema schema = getSchemaCache().getSchema(objectsClass);
 
-				// Create Avro writer.
-				writer = new DataFileWriter<T>(new ReflectDatumWriter<T>(schema));
+				// Create Avro writer around (cached) reflective datum writer.
+				writer = new DataFileWriter<T>(getSchemaCache().getDatumWriter(objectsClass));
 
 				// Configure compression if specified.
 				writer.setCodec(CompressionUtils.getAvroCompression(getCompressionAlias()));
@@ -86,16 +146,45 @@ public class AvroFormat<T> extends SerializationFormatSupport<T> {
 			protected void doWrite(T object) throws IOException {
 				writer.append(object);
 			}
+
+			/**
+			 * Writes the current block.
+			 */
+			@Override
+			protected void doSync() throws IOException {
+				writer.flush();
+			}
 		};
 	}
 
+	@Override
+	public SerializationReader<T> getReader(String location, long start, long end) throws IOException {
+		return super.getReader(location, start, end);
+	}
+
+	@Override
+	public List<SerializationReader<T>> getReaders(String location, int desiredSplits) throws IOException {
+		return super.getReaders(location, desiredSplits);
+	}
+
 	/**
 	 * Reads POJOs using <code>Avro</code> serialization.
 	 */
 	@Override
-	protected SerializationReaderSupport createReader(final String location) {
+	protected SerializationReaderSupport createReader(String location) {
+		return createReader(location, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads POJOs of the Avro blocks starting within passed byte range using <code>Avro</code> serialization.
+	 * 
+	 * @see {@link DataFileReader#sync(long)}
+	 * @see {@link DataFileReader#pastSync(long)}
+	 */
+	@Override
+	protected SerializationReaderSupport createReader(final String location, final long start, final long end) {
 
-		return new SerializationReaderSupport() {
+		return new ResumableSerializationReaderSupport() {
 
 			/* Native Avro reader. */
 			FileReader<T> reader;
@@ -103,56 +192,51 @@ public class AvroFormat<T> extends SerializationFormatSupport<T> {
 			@Override
 			protected Closeable doOpen() throws IOException {
 
-				final Resource hdfsResource = getHdfsResourceLoader().getResource(location);
-				final InputStream delegate = hdfsResource.getInputStream();
-
-				/*
-				 * Adapts Hadoop FSDataInputStream and CompressionInputStream to Avro SeekableInput.
-				 * 
-				 * Both Hadoop input streams implement Seekable interface which is 'easily' adapted to SeekableInput.
-				 * 
-				 * The HdfsResource (as returned by HDFS RL) returns either of above depending on 'useCodecs' prop, so
-				 * we can 'safely' cast to Seekable ( so far:) ).
-				 * 
-				 * BACKUP: If the stream is not Seekable then we can fall back to Avro DataFileStream as a reader. It
-				 * accepts simple InputStream, but sacrificing the 'seeking'.
-				 */
-				SeekableInput seekableInput = new SeekableInput() {
-
-					@Override
-					public void close() throws IOException {
-						delegate.close();
-					}
-
-					@Override
-					public long tell() throws IOException {
-						return ((Seekable) delegate).getPos();
-					}
-
-					@Override
-					public void seek(long p) throws IOException {
-						((Seekable) delegate).seek(p);
-					}
-
-					@Override
-					public int read(byte[] b, int off, int len) throws IOException {
-						return delegate.read(b, off, len);
-					}
-
-					@Override
-					public long length() throws IOException {
-						return hdfsResource.contentLength();
-					}
-				};
-
-				reader = DataFileReader.openReader(seekableInput, new ReflectDatumReader<T>());
+				Resource hdfsResource = getHdfsResourceLoader().getResource(location);
+
+				SeekableInput seekableInput = AvroUtils.toSeekableInput(hdfsResource,
+						readAhead(hdfsResource.getInputStream()));
+
+				reader = DataFileReader.openReader(seekableInput, new ReflectDatumReader<T>(null, getReaderSchema()));
+
+				// Skip to the first Avro block of the range.
+				if (start > 0) {
+					reader.sync(start);
+				}
 
 				return reader;
 			}
 
 			@Override
 			protected T doRead() throws IOException {
-				return reader.hasNext() ? reader.next() : null;
+				long blockStart = previousSync();
+
+				// Stop at the first Avro block starting after the range. Unbounded ranges are not checked as
+				// pastSync(Long.MAX_VALUE) overflows.
+				if (!reader.hasNext() || (end != Long.MAX_VALUE && reader.pastSync(end))) {
+					return null;
+				}
+
+				T object = reader.next();
+
+				// The previous sync is moved past a block once its last object is read, so it's the start of the
+				// block holding the object.
+				if (blockStart >= 0) {
+					objectRead(blockStart);
+				}
+
+				return object;
+			}
+
+			@Override
+			protected void doSeek(long syncPosition) throws IOException {
+				Assert.isInstanceOf(DataFileReader.class, reader, "Cannot seek within a legacy Avro file.");
+
+				((DataFileReader<T>) reader).seek(syncPosition);
+			}
+
+			private long previousSync() {
+				return reader instanceof DataFileReader ? ((DataFileReader<T>) reader).previousSync() : -1;
 			}
 		};
 	}
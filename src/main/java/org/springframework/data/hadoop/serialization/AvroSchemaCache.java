@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.ReflectDatumWriter;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded, class-keyed cache of reflective Avro schemas and datum writers shared by Avro based serialization formats.
+ * Reflective schema induction and datum writer construction are relatively expensive, so caching them pays off when
+ * many short-lived writers are opened (for example one per rolled file). The least recently used classes are evicted
+ * once the capacity is reached.
+ *
+ * <p>
+ * Datum writers are stateless once bound to a schema, so a single instance per class is shared between writers. Datum
+ * readers are bound to the writer schema of every file they read, so only their (reader) schemas are cached.
+ *
+ * <p>
+ * The classes known upfront could be {@link #register(Class...) registered} at startup, so the first write is not
+ * slowed down by schema induction.
+ *
+ * @author Alex Savov
+ */
+public class AvroSchemaCache {
+
+	/* The cache shared by default by all Avro based serialization formats. */
+	public static final AvroSchemaCache INSTANCE = new AvroSchemaCache();
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final Map<Class<?>, CacheEntry> cache;
+
+	public AvroSchemaCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity The max number of classes cached.
+	 */
+	public AvroSchemaCache(final int capacity) {
+		Assert.isTrue(capacity > 0, "The capacity must be positive.");
+
+		// Access ordered map which evicts the least recently used entries.
+		cache = new LinkedHashMap<Class<?>, CacheEntry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 8214462713418271564L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Class<?>, CacheEntry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Pre-registers passed classes, so their schemas and datum writers are created upfront.
+	 *
+	 * @param classes The classes to register.
+	 */
+	public void register(Class<?>... classes) {
+		for (Class<?> clazz : classes) {
+			getCacheEntry(clazz);
+		}
+	}
+
+	/**
+	 * Alias of {@link #register(Class...)} to ease the configuration as a Spring bean.
+	 *
+	 * @param classes The classes to register.
+	 */
+	public void setClasses(Class<?>... classes) {
+		register(classes);
+	}
+
+	/**
+	 * @return The reflective Avro schema of passed class.
+	 */
+	public Schema getSchema(Class<?> clazz) {
+		return getCacheEntry(clazz).schema;
+	}
+
+	/**
+	 * @return The reflective Avro datum writer of passed class bound to its reflective schema.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> DatumWriter<T> getDatumWriter(Class<T> clazz) {
+		return (DatumWriter<T>) getCacheEntry(clazz).datumWriter;
+	}
+
+	/**
+	 * Evicts all cached classes.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * @return The number of cached classes.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	protected CacheEntry getCacheEntry(Class<?> clazz) {
+		Assert.notNull(clazz, "A non-null class is required.");
+
+		CacheEntry entry;
+
+		synchronized (cache) {
+			entry = cache.get(clazz);
+		}
+
+		if (entry == null) {
+			// Schema induction happens outside the lock. Concurrent inductions of the same class yield equal schemas.
+			entry = new CacheEntry(ReflectData.get().getSchema(clazz));
+
+			synchronized (cache) {
+				cache.put(clazz, entry);
+			}
+		}
+
+		return entry;
+	}
+
+	protected static class CacheEntry {
+
+		final Schema schema;
+
+		final DatumWriter<Object> datumWriter;
+
+		CacheEntry(Schema schema) {
+			this.schema = schema;
+			this.datumWriter = new ReflectDatumWriter<Object>(schema);
+		}
+	}
+
+}
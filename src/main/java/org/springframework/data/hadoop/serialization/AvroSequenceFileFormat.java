@@ -22,7 +22,6 @@ import org.apache.avro.hadoop.io.AvroSerialization;
 import org.apache.avro.mapred.AvroKey;
 import org.apache.avro.mapred.AvroValue;
 import org.apache.avro.mapred.AvroWrapper;
-import org.apache.avro.reflect.ReflectData;
 import org.apache.hadoop.io.SequenceFile;
 
 /**
@@ -33,10 +32,26 @@ import org.apache.hadoop.io.SequenceFile;
  */
 public class AvroSequenceFileFormat<T> extends AbstractSequenceFileFormat<T> {
 
+	/* This property is publicly configurable. */
+	private AvroSchemaCache schemaCache = AvroSchemaCache.INSTANCE;
+
 	public AvroSequenceFileFormat(Class<T> objectsClass) {
 		super(objectsClass);
 	}
 
+	/**
+	 * Sets the cache of reflective schemas. Defaults to the {@link AvroSchemaCache#INSTANCE shared} one.
+	 * 
+	 * @param schemaCache The cache to use.
+	 */
+	public void setSchemaCache(AvroSchemaCache schemaCache) {
+		this.schemaCache = schemaCache;
+	}
+
+	protected AvroSchemaCache getSchemaCache() {
+		return schemaCache;
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public void afterPropertiesSet() throws Exception {
@@ -44,12 +59,12 @@ public class AvroSequenceFileFormat<T> extends AbstractSequenceFileFormat<T> {
 		super.afterPropertiesSet();
 
 		// Reflective Avro schema of key class
-		Schema keySchema = ReflectData.get().getSchema(getSerializationKeyProvider().getKeyClass(objectsClass));
+		Schema keySchema = getSchemaCache().getSchema(getSerializationKeyProvider().getKeyClass(objectsClass));
 
 		AvroSerialization.setKeyWriterSchema(getConfiguration(), keySchema);
 
 		// Reflective Avro schema of value class
-		Schema valueSchema = ReflectData.get().getSchema(objectsClass);
+		Schema valueSchema = getSchemaCache().getSchema(objectsClass);
 
 		AvroSerialization.setValueWriterSchema(getConfiguration(), valueSchema);
 
@@ -104,9 +119,9 @@ public class AvroSequenceFileFormat<T> extends AbstractSequenceFileFormat<T> {
 	 * Reads POJOs in <code>Avro</code> schema using Hadoop {@link SequenceFile} serialization framework.
 	 */
 	@Override
-	protected SerializationReaderSupport createReader(String location) {
+	protected SerializationReaderSupport createReader(String location, long start, long end) {
 
-		return new AbstractSequenceFileReader(location) {
+		return new AbstractSequenceFileReader(location, start, end) {
 
 			@SuppressWarnings("unchecked")
 			@Override
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableInput;
+import org.apache.hadoop.fs.Seekable;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Avro schemas and streams utility class.
+ *
+ * @author Alex Savov
+ */
+public abstract class AvroUtils {
+
+	/**
+	 * Creates a projection of passed record schema which consists of the specified fields only. The projection keeps
+	 * the full name of the record, so it can be used as a reader schema: Avro's resolving decoder skips the fields that
+	 * are not part of the projection without materializing them.
+	 *
+	 * @param recordSchema The record schema to project.
+	 * @param fieldNames The names of the fields to keep.
+	 *
+	 * @return The projected record schema.
+	 *
+	 * @throws IllegalArgumentException if the schema is not a record or a field is not present in the schema
+	 */
+	public static Schema projectSchema(Schema recordSchema, String... fieldNames) {
+		Assert.isTrue(recordSchema.getType() == Type.RECORD, "Only record schemas could be projected.");
+
+		List<Field> fields = new ArrayList<Field>(fieldNames.length);
+
+		for (String fieldName : fieldNames) {
+			Field field = recordSchema.getField(fieldName);
+
+			Assert.notNull(field, "Field '" + fieldName + "' is not present in schema " + recordSchema.getFullName());
+
+			// Fields are bound to their position within a record so they could not be shared between schemas.
+			fields.add(new Field(field.name(), field.schema(), field.doc(), field.defaultValue(), field.order()));
+		}
+
+		Schema projection = Schema.createRecord(recordSchema.getName(), recordSchema.getDoc(),
+				recordSchema.getNamespace(), recordSchema.isError());
+
+		projection.setFields(fields);
+
+		return projection;
+	}
+
+	/**
+	 * Adapts the input stream of passed HDFS resource to Avro {@link SeekableInput}, so it could be read by Avro
+	 * {@link DataFileReader} which supports seeking and syncing.
+	 *
+	 * @param hdfsResource The HDFS resource to read.
+	 *
+	 * @return Avro seekable input reading the resource.
+	 */
+	public static SeekableInput toSeekableInput(Resource hdfsResource) throws IOException {
+
+		return toSeekableInput(hdfsResource, hdfsResource.getInputStream());
+	}
+
+	/**
+	 * Adapts passed (possibly decorated) input stream of the HDFS resource to Avro {@link SeekableInput}.
+	 *
+	 * @param hdfsResource The HDFS resource to read.
+	 * @param delegate The {@link Seekable} input stream of the resource.
+	 *
+	 * @return Avro seekable input reading the stream.
+	 */
+	public static SeekableInput toSeekableInput(final Resource hdfsResource, final InputStream delegate)
+			throws IOException {
+
+		/*
+		 * Adapts Hadoop FSDataInputStream and CompressionInputStream to Avro SeekableInput.
+		 * 
+		 * Both Hadoop input streams implement Seekable interface which is 'easily' adapted to SeekableInput.
+		 * 
+		 * The HdfsResource (as returned by HDFS RL) returns either of above depending on 'useCodecs' prop, so we can
+		 * 'safely' cast to Seekable ( so far:) ).
+		 * 
+		 * BACKUP: If the stream is not Seekable then we can fall back to Avro DataFileStream as a reader. It accepts
+		 * simple InputStream, but sacrificing the 'seeking'.
+		 */
+		return new SeekableInput() {
+
+			@Override
+			public void close() throws IOException {
+				delegate.close();
+			}
+
+			@Override
+			public long tell() throws IOException {
+				return ((Seekable) delegate).getPos();
+			}
+
+			@Override
+			public void seek(long p) throws IOException {
+				((Seekable) delegate).seek(p);
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return delegate.read(b, off, len);
+			}
+
+			@Override
+			public long length() throws IOException {
+				return hdfsResource.contentLength();
+			}
+		};
+	}
+
+}
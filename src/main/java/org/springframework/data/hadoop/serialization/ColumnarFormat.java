@@ -0,0 +1,942 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import static org.apache.hadoop.io.IOUtils.closeStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Serialization format writing POJOs column by column in row groups. Every (non-static and non-transient) field of
+ * the objects class is stored as a column. Supported field types are <code>boolean</code>, <code>byte</code>,
+ * <code>short</code>, <code>int</code>, <code>long</code>, <code>float</code>, <code>double</code> (and their wrappers)
+ * and <code>String</code>.
+ *
+ * <p>
+ * Every column chunk (the values of a column within a row group) carries min/max/null-count
+ * {@link ColumnStatistics statistics} and is encoded either plain, run-length or with a dictionary (strings only)
+ * whichever is expected to be smaller. If a compression alias is specified the column chunks are compressed
+ * individually with the corresponding Hadoop codec.
+ *
+ * <p>
+ * The Readers decode only the {@link #setProjection(String...) projected} columns and skip whole row groups whose
+ * statistics do not satisfy the {@link #setPredicate(ColumnPredicate) predicate} without decoding them.
+ *
+ * @author Alex Savov
+ */
+public class ColumnarFormat<T> extends SerializationFormatSupport<T> implements InitializingBean {
+
+	protected static final byte[] MAGIC = { 'S', 'H', 'C', 1 };
+
+	protected static final int DEFAULT_ROW_GROUP_SIZE = 10000;
+
+	/* Column types. */
+	protected static final byte BOOLEAN = 0;
+	protected static final byte INT = 1;
+	protected static final byte LONG = 2;
+	protected static final byte FLOAT = 3;
+	protected static final byte DOUBLE = 4;
+	protected static final byte STRING = 5;
+
+	/* Column chunk encodings. */
+	protected static final byte PLAIN = 0;
+	protected static final byte RUN_LENGTH = 1;
+	protected static final byte DICTIONARY = 2;
+
+	/* The class of the objects that are serialized by this format. */
+	protected final Class<T> objectsClass;
+
+	/* The fields of the objects class (keyed by column name) that are stored as columns. */
+	protected final Map<String, Field> fields = new LinkedHashMap<String, Field>();
+
+	/* This property is publicly configurable. */
+	private Configuration configuration;
+
+	/* This property is publicly configurable. */
+	private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+
+	/* This property is publicly configurable. */
+	private String[] projection;
+
+	/* This property is publicly configurable. */
+	private ColumnPredicate predicate;
+
+	/**
+	 * @param objectsClass The class of the objects that are serialized by this format.
+	 */
+	public ColumnarFormat(Class<T> objectsClass) {
+		this.objectsClass = objectsClass;
+
+		ReflectionUtils.doWithFields(objectsClass, new ReflectionUtils.FieldCallback() {
+			public void doWith(Field field) {
+				Assert.isTrue(getColumnType(field.getType()) >= 0, "Field '" + field.getName() + "' of "
+						+ field.getDeclaringClass() + " is of unsupported type " + field.getType());
+				Assert.isTrue(!fields.containsKey(field.getName()), "Duplicate field '" + field.getName() + "' in "
+						+ ColumnarFormat.this.objectsClass);
+
+				ReflectionUtils.makeAccessible(field);
+
+				fields.put(field.getName(), field);
+			}
+		}, new ReflectionUtils.FieldFilter() {
+			public boolean matches(Field field) {
+				return !Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers());
+			}
+		});
+	}
+
+	/**
+	 * Sets the Hadoop configuration used to resolve the compression codec.
+	 *
+	 * @param configuration The configuration to use.
+	 */
+	public void setConfiguration(Configuration configuration) {
+		this.configuration = configuration;
+	}
+
+	protected Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Sets the number of rows buffered and written as a single row group. Defaults to <code>10000</code>.
+	 *
+	 * @param rowGroupSize the number of rows per row group
+	 */
+	public void setRowGroupSize(int rowGroupSize) {
+		this.rowGroupSize = rowGroupSize;
+	}
+
+	/**
+	 * Sets the names of the columns (fields) populated by the Readers. All other columns are skipped without decoding
+	 * and the corresponding fields are left as initialized by the default constructor. <code>null</code> (the default)
+	 * means all columns.
+	 *
+	 * @param projection the names of the columns to read
+	 */
+	public void setProjection(String... projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Sets the predicate the objects returned by the Readers should satisfy. Row groups whose statistics do not satisfy
+	 * the predicate are skipped without decoding. <code>null</code> (the default) means all objects are returned.
+	 *
+	 * @param predicate the predicate to apply
+	 */
+	public void setPredicate(ColumnPredicate predicate) {
+		this.predicate = predicate;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(getConfiguration(), "A non-null Hadoop configuration is required.");
+		Assert.isTrue(rowGroupSize > 0, "The row group size must be positive.");
+
+		if (projection != null) {
+			for (String column : projection) {
+				Assert.isTrue(fields.containsKey(column), "Unknown projected column '" + column + "'.");
+			}
+		}
+
+		if (predicate != null) {
+			Assert.isTrue(fields.containsKey(predicate.getColumn()), "Unknown predicate column '"
+					+ predicate.getColumn() + "'.");
+		}
+	}
+
+	/**
+	 * Writes POJOs column by column in row groups.
+	 */
+	@Override
+	protected SerializationWriterSupport createWriter(final OutputStream output) {
+
+		return new SerializationWriterSupport() {
+
+			/* The columns buffered for the current row group. */
+			final Field[] columns = fields.values().toArray(new Field[fields.size()]);
+
+			final Object[][] rowGroup = new Object[columns.length][rowGroupSize];
+
+			int rowCount;
+
+			DataOutputStream out;
+
+			/* Counts the bytes written to the file, the column chunks compressed. */
+			CountingOutputStream counter;
+
+			/* The bytes saved by compressing the column chunks. */
+			long compressionSavings;
+
+			CompressionCodec codec;
+
+			Compressor compressor;
+
+			@Override
+			protected Closeable doOpen() throws IOException {
+
+				rowCount = 0;
+
+				compressionSavings = 0;
+
+				codec = CompressionUtils.getHadoopCompression(getConfiguration(), getCompressionAlias());
+
+				compressor = codec != null ? CodecPool.getCompressor(codec) : null;
+
+				counter = new CountingOutputStream(new BufferedOutputStream(output));
+
+				out = new DataOutputStream(counter);
+
+				// Header: magic, codec and the columns
+				out.write(MAGIC);
+				Text.writeString(out, codec != null ? codec.getClass().getName() : "");
+				WritableUtils.writeVInt(out, columns.length);
+
+				for (Field column : columns) {
+					Text.writeString(out, column.getName());
+					out.writeByte(getColumnType(column.getType()));
+				}
+
+				return new Closeable() {
+					@Override
+					public void close() throws IOException {
+						try {
+							writeRowGroup();
+
+							// An empty row group marks the end of the file.
+							WritableUtils.writeVInt(out, 0);
+						} finally {
+							closeStream(out);
+							CodecPool.returnCompressor(compressor);
+						}
+					}
+				};
+			}
+
+			@Override
+			protected void doWrite(T object) throws IOException {
+
+				for (int i = 0; i < columns.length; i++) {
+					rowGroup[i][rowCount] = ReflectionUtils.getField(columns[i], object);
+				}
+
+				if (++rowCount == rowGroupSize) {
+					writeRowGroup();
+				}
+			}
+
+			/**
+			 * Writes the metadata (statistics, encoding and length) of all column chunks followed by the chunks
+			 * themselves, so a Reader can skip the whole row group right after reading its metadata.
+			 */
+			protected void writeRowGroup() throws IOException {
+				if (rowCount == 0) {
+					return;
+				}
+
+				byte[][] chunks = new byte[columns.length][];
+
+				WritableUtils.writeVInt(out, rowCount);
+
+				for (int i = 0; i < columns.length; i++) {
+					byte type = getColumnType(columns[i].getType());
+
+					Object[] values = rowGroup[i];
+
+					ColumnStatistics.compute(values, rowCount).write(out, type);
+
+					ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+
+					byte encoding = encode(new DataOutputStream(chunk), type, values, rowCount);
+
+					chunks[i] = compress(chunk.toByteArray());
+
+					compressionSavings += chunk.size() - chunks[i].length;
+
+					out.writeByte(encoding);
+					WritableUtils.writeVInt(out, chunks[i].length);
+				}
+
+				for (byte[] chunk : chunks) {
+					out.write(chunk);
+				}
+
+				for (Object[] values : rowGroup) {
+					Arrays.fill(values, 0, rowCount, null);
+				}
+
+				rowCount = 0;
+			}
+
+			protected byte[] compress(byte[] chunk) throws IOException {
+				if (codec == null) {
+					return chunk;
+				}
+
+				// Some codecs (such as non-native gzip) do not pool compressors.
+				if (compressor != null) {
+					compressor.reset();
+				}
+
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream(chunk.length / 2 + 16);
+
+				// Closing the stream releases the resources of codecs which do not use the pooled compressor.
+				CompressionOutputStream compressionStream = codec.createOutputStream(compressed, compressor);
+				try {
+					compressionStream.write(chunk);
+					compressionStream.finish();
+				} finally {
+					compressionStream.close();
+				}
+
+				return compressed.toByteArray();
+			}
+
+			@Override
+			protected long getUncompressedBytes() {
+				return counter != null ? counter.getByteCount() + compressionSavings : -1;
+			}
+		};
+	}
+
+	/**
+	 * Reads the projected columns of the POJOs that satisfy the predicate.
+	 */
+	@Override
+	protected SerializationReaderSupport createReader(final String location) {
+
+		return new SerializationReaderSupport() {
+
+			DataInputStream in;
+
+			CompressionCodec codec;
+
+			Decompressor decompressor;
+
+			/* The names and types of the columns stored in the file. */
+			String[] columnNames;
+
+			byte[] columnTypes;
+
+			/* Whether a column should be decoded. */
+			boolean[] decoded;
+
+			/* Whether a column should be set on the objects read. */
+			boolean[] projected;
+
+			/* The index of the predicate column; -1 if there is no predicate. */
+			int predicateColumn;
+
+			/* The decoded columns of the current row group. */
+			Object[][] rowGroup;
+
+			int rowCount;
+
+			int row;
+
+			@Override
+			protected Closeable doOpen() throws IOException {
+
+				rowCount = row = 0;
+
+				in = new DataInputStream(new BufferedInputStream(getHdfsResourceLoader().getResource(location)
+						.getInputStream()));
+
+				byte[] magic = new byte[MAGIC.length];
+				in.readFully(magic);
+
+				if (!Arrays.equals(MAGIC, magic)) {
+					closeStream(in);
+					throw new IOException("'" + location + "' is not a " + ColumnarFormat.class.getSimpleName()
+							+ " file.");
+				}
+
+				String codecClassName = Text.readString(in);
+
+				if (StringUtils.hasText(codecClassName)) {
+					codec = CompressionUtils.getHadoopCompression(getConfiguration(), codecClassName);
+					decompressor = CodecPool.getDecompressor(codec);
+				}
+
+				int columnCount = WritableUtils.readVInt(in);
+
+				columnNames = new String[columnCount];
+				columnTypes = new byte[columnCount];
+				decoded = new boolean[columnCount];
+				projected = new boolean[columnCount];
+				rowGroup = new Object[columnCount][];
+				predicateColumn = -1;
+
+				for (int i = 0; i < columnCount; i++) {
+					columnNames[i] = Text.readString(in);
+					columnTypes[i] = in.readByte();
+
+					// Columns that are no longer present in the objects class are skipped.
+					projected[i] = fields.containsKey(columnNames[i])
+							&& (projection == null || ObjectUtils.containsElement(projection, columnNames[i]));
+					decoded[i] = projected[i];
+
+					if (predicate != null && predicate.getColumn().equals(columnNames[i])) {
+						predicateColumn = i;
+						decoded[i] = true;
+					}
+				}
+
+				return new Closeable() {
+					@Override
+					public void close() throws IOException {
+						closeStream(in);
+						CodecPool.returnDecompressor(decompressor);
+					}
+				};
+			}
+
+			@Override
+			protected T doRead() throws IOException {
+
+				while (true) {
+					if (row == rowCount && !readRowGroup()) {
+						return null;
+					}
+
+					int current = row++;
+
+					if (predicateColumn >= 0 && !predicate.matches(rowGroup[predicateColumn][current])) {
+						continue;
+					}
+
+					T object = BeanUtils.instantiateClass(objectsClass);
+
+					for (int i = 0; i < columnNames.length; i++) {
+						// The predicate column is decoded but not necessarily projected.
+						if (projected[i]) {
+							setField(fields.get(columnNames[i]), object, rowGroup[i][current]);
+						}
+					}
+
+					return object;
+				}
+			}
+
+			/**
+			 * Reads the next row group that might satisfy the predicate.
+			 *
+			 * @return <code>false</code> if there are no more row groups.
+			 */
+			protected boolean readRowGroup() throws IOException {
+
+				while ((rowCount = WritableUtils.readVInt(in)) > 0) {
+
+					ColumnStatistics[] statistics = new ColumnStatistics[columnNames.length];
+					byte[] encodings = new byte[columnNames.length];
+					int[] lengths = new int[columnNames.length];
+
+					for (int i = 0; i < columnNames.length; i++) {
+						statistics[i] = ColumnStatistics.read(in, columnTypes[i], rowCount);
+						encodings[i] = in.readByte();
+						lengths[i] = WritableUtils.readVInt(in);
+					}
+
+					if (predicateColumn >= 0 && !predicate.canMatch(statistics[predicateColumn])) {
+						// Skip the whole row group without decoding it.
+						long length = 0;
+						for (int chunkLength : lengths) {
+							length += chunkLength;
+						}
+						IOUtils.skipFully(in, length);
+
+						continue;
+					}
+
+					for (int i = 0; i < columnNames.length; i++) {
+						if (decoded[i]) {
+							byte[] chunk = new byte[lengths[i]];
+							in.readFully(chunk);
+
+							InputStream chunkStream = decompress(chunk);
+							try {
+								rowGroup[i] = decode(new DataInputStream(chunkStream), columnTypes[i], encodings[i],
+										rowCount);
+							} finally {
+								chunkStream.close();
+							}
+						} else {
+							IOUtils.skipFully(in, lengths[i]);
+						}
+					}
+
+					row = 0;
+
+					return true;
+				}
+
+				rowCount = row = 0;
+
+				return false;
+			}
+
+			protected InputStream decompress(byte[] chunk) throws IOException {
+				if (codec == null) {
+					return new ByteArrayInputStream(chunk);
+				}
+
+				if (decompressor != null) {
+					decompressor.reset();
+				}
+
+				return codec.createInputStream(new ByteArrayInputStream(chunk), decompressor);
+			}
+		};
+	}
+
+	/**
+	 * @return <b>.columnar</b> is the default file extension for columnar serialization.
+	 */
+	@Override
+	protected String getDefaultExtension() {
+		return ".columnar";
+	}
+
+	/**
+	 * @return The column type of passed field type; <code>-1</code> if the field type is not supported.
+	 */
+	protected static byte getColumnType(Class<?> fieldType) {
+		Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(fieldType);
+
+		if (type == Boolean.class) {
+			return BOOLEAN;
+		}
+		if (type == Byte.class || type == Short.class || type == Integer.class) {
+			return INT;
+		}
+		if (type == Long.class) {
+			return LONG;
+		}
+		if (type == Float.class) {
+			return FLOAT;
+		}
+		if (type == Double.class) {
+			return DOUBLE;
+		}
+		if (type == String.class) {
+			return STRING;
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets a decoded column value to passed field narrowing <code>INT</code> column values if needed.
+	 */
+	protected static void setField(Field field, Object object, Object value) {
+		Class<?> type = field.getType();
+
+		if (value == null) {
+			// Primitive fields keep their default value.
+			if (!type.isPrimitive()) {
+				ReflectionUtils.setField(field, object, null);
+			}
+			return;
+		}
+
+		if (type == byte.class || type == Byte.class) {
+			value = ((Integer) value).byteValue();
+		} else if (type == short.class || type == Short.class) {
+			value = ((Integer) value).shortValue();
+		}
+
+		ReflectionUtils.setField(field, object, value);
+	}
+
+	/**
+	 * Encodes the values of a column chunk with the encoding expected to be the smallest one.
+	 *
+	 * @return The encoding used.
+	 */
+	protected static byte encode(DataOutput out, byte type, Object[] values, int count) throws IOException {
+
+		int runs = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || !ObjectUtils.nullSafeEquals(values[i - 1], values[i])) {
+				runs++;
+			}
+		}
+
+		if (type == STRING) {
+			Map<Object, Integer> dictionary = new LinkedHashMap<Object, Integer>();
+			for (int i = 0; i < count && dictionary.size() * 2 <= count; i++) {
+				if (values[i] != null && !dictionary.containsKey(values[i])) {
+					dictionary.put(values[i], dictionary.size());
+				}
+			}
+
+			if (dictionary.size() * 2 <= count) {
+				WritableUtils.writeVInt(out, dictionary.size());
+				for (Object value : dictionary.keySet()) {
+					Text.writeString(out, (String) value);
+				}
+
+				// Dictionary indexes are run-length encoded; 0 stands for null.
+				for (int i = 0; i < count;) {
+					int run = runLength(values, i, count);
+					WritableUtils.writeVInt(out, run);
+					WritableUtils.writeVInt(out, values[i] == null ? 0 : dictionary.get(values[i]) + 1);
+					i += run;
+				}
+
+				return DICTIONARY;
+			}
+		}
+
+		if (runs * 2 <= count) {
+			for (int i = 0; i < count;) {
+				int run = runLength(values, i, count);
+				WritableUtils.writeVInt(out, run);
+				writeNullableValue(out, type, values[i]);
+				i += run;
+			}
+
+			return RUN_LENGTH;
+		}
+
+		for (int i = 0; i < count; i++) {
+			writeNullableValue(out, type, values[i]);
+		}
+
+		return PLAIN;
+	}
+
+	/**
+	 * Decodes the values of a column chunk.
+	 */
+	protected static Object[] decode(DataInput in, byte type, byte encoding, int count) throws IOException {
+
+		Object[] values = new Object[count];
+
+		switch (encoding) {
+		case PLAIN:
+			for (int i = 0; i < count; i++) {
+				values[i] = readNullableValue(in, type);
+			}
+			break;
+
+		case RUN_LENGTH:
+			for (int i = 0; i < count;) {
+				int run = WritableUtils.readVInt(in);
+				Arrays.fill(values, i, i + run, readNullableValue(in, type));
+				i += run;
+			}
+			break;
+
+		case DICTIONARY:
+			String[] dictionary = new String[WritableUtils.readVInt(in) + 1];
+			for (int i = 1; i < dictionary.length; i++) {
+				dictionary[i] = Text.readString(in);
+			}
+			for (int i = 0; i < count;) {
+				int run = WritableUtils.readVInt(in);
+				Arrays.fill(values, i, i + run, dictionary[WritableUtils.readVInt(in)]);
+				i += run;
+			}
+			break;
+
+		default:
+			throw new IOException("Unknown column chunk encoding " + encoding);
+		}
+
+		return values;
+	}
+
+	private static int runLength(Object[] values, int from, int count) {
+		int to = from + 1;
+		while (to < count && ObjectUtils.nullSafeEquals(values[from], values[to])) {
+			to++;
+		}
+		return to - from;
+	}
+
+	private static void writeNullableValue(DataOutput out, byte type, Object value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			writeValue(out, type, value);
+		}
+	}
+
+	private static Object readNullableValue(DataInput in, byte type) throws IOException {
+		return in.readBoolean() ? readValue(in, type) : null;
+	}
+
+	private static void writeValue(DataOutput out, byte type, Object value) throws IOException {
+		switch (type) {
+		case BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		case INT:
+			WritableUtils.writeVInt(out, ((Number) value).intValue());
+			break;
+		case LONG:
+			WritableUtils.writeVLong(out, (Long) value);
+			break;
+		case FLOAT:
+			out.writeFloat((Float) value);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case STRING:
+			Text.writeString(out, (String) value);
+			break;
+		default:
+			throw new IOException("Unknown column type " + type);
+		}
+	}
+
+	private static Object readValue(DataInput in, byte type) throws IOException {
+		switch (type) {
+		case BOOLEAN:
+			return in.readBoolean();
+		case INT:
+			return WritableUtils.readVInt(in);
+		case LONG:
+			return WritableUtils.readVLong(in);
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case STRING:
+			return Text.readString(in);
+		default:
+			throw new IOException("Unknown column type " + type);
+		}
+	}
+
+	/**
+	 * The statistics of a column chunk. The min/max values are those of the column type: <code>Integer</code> for
+	 * <code>byte</code>, <code>short</code> and <code>int</code> fields, <code>Long</code> for <code>long</code> fields
+	 * and so on.
+	 */
+	public static class ColumnStatistics {
+
+		private final int rowCount;
+
+		private final int nullCount;
+
+		private final Object min;
+
+		private final Object max;
+
+		public ColumnStatistics(int rowCount, int nullCount, Object min, Object max) {
+			this.rowCount = rowCount;
+			this.nullCount = nullCount;
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * @return The number of rows in the column chunk.
+		 */
+		public int getRowCount() {
+			return rowCount;
+		}
+
+		/**
+		 * @return The number of <code>null</code> values in the column chunk.
+		 */
+		public int getNullCount() {
+			return nullCount;
+		}
+
+		/**
+		 * @return The min non-null value in the column chunk; <code>null</code> if all values are <code>null</code>.
+		 */
+		public Object getMin() {
+			return min;
+		}
+
+		/**
+		 * @return The max non-null value in the column chunk; <code>null</code> if all values are <code>null</code>.
+		 */
+		public Object getMax() {
+			return max;
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		static ColumnStatistics compute(Object[] values, int count) {
+			int nullCount = 0;
+			Comparable min = null;
+			Comparable max = null;
+
+			for (int i = 0; i < count; i++) {
+				Comparable value = normalize(values[i]);
+				if (value == null) {
+					nullCount++;
+				} else {
+					if (min == null || value.compareTo(min) < 0) {
+						min = value;
+					}
+					if (max == null || value.compareTo(max) > 0) {
+						max = value;
+					}
+				}
+			}
+
+			return new ColumnStatistics(count, nullCount, min, max);
+		}
+
+		/* Byte and Short values of INT columns are compared as Integers. */
+		@SuppressWarnings("rawtypes")
+		private static Comparable normalize(Object value) {
+			return (Comparable) (value instanceof Byte || value instanceof Short ? ((Number) value).intValue() : value);
+		}
+
+		void write(DataOutput out, byte type) throws IOException {
+			WritableUtils.writeVInt(out, nullCount);
+			out.writeBoolean(min != null);
+			if (min != null) {
+				writeValue(out, type, min);
+				writeValue(out, type, max);
+			}
+		}
+
+		static ColumnStatistics read(DataInput in, byte type, int rowCount) throws IOException {
+			int nullCount = WritableUtils.readVInt(in);
+			if (in.readBoolean()) {
+				return new ColumnStatistics(rowCount, nullCount, readValue(in, type), readValue(in, type));
+			}
+			return new ColumnStatistics(rowCount, nullCount, null, null);
+		}
+
+		@Override
+		public String toString() {
+			return "[rows=" + rowCount + ", nulls=" + nullCount + ", min=" + min + ", max=" + max + "]";
+		}
+	}
+
+	/**
+	 * A predicate on a single column evaluated both against the {@link ColumnStatistics statistics} of a row group (to
+	 * skip it as a whole) and against the column value of every row.
+	 */
+	public static interface ColumnPredicate {
+
+		/**
+		 * @return The name of the column this predicate is evaluated against.
+		 */
+		String getColumn();
+
+		/**
+		 * @return <code>false</code> if none of the values described by passed statistics satisfies this predicate.
+		 */
+		boolean canMatch(ColumnStatistics statistics);
+
+		/**
+		 * @return <code>true</code> if passed column value satisfies this predicate.
+		 */
+		boolean matches(Object value);
+	}
+
+	/**
+	 * A predicate matching non-null column values within a closed range. The bounds should be of the column type (see
+	 * {@link ColumnStatistics}); a <code>null</code> bound means the range is open at that end.
+	 */
+	public static class RangePredicate implements ColumnPredicate {
+
+		private final String column;
+
+		@SuppressWarnings("rawtypes")
+		private final Comparable from;
+
+		@SuppressWarnings("rawtypes")
+		private final Comparable to;
+
+		/**
+		 * @param column The name of the column.
+		 * @param from The lower bound (inclusive) of the range; <code>null</code> for no lower bound.
+		 * @param to The upper bound (inclusive) of the range; <code>null</code> for no upper bound.
+		 */
+		public RangePredicate(String column, Comparable<?> from, Comparable<?> to) {
+			Assert.hasText(column, "A non-empty column name is required.");
+			this.column = column;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Creates a predicate matching column values equal to passed value.
+		 */
+		public static RangePredicate equalTo(String column, Comparable<?> value) {
+			return new RangePredicate(column, value, value);
+		}
+
+		public String getColumn() {
+			return column;
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean canMatch(ColumnStatistics statistics) {
+			if (statistics.getMin() == null) {
+				return false;
+			}
+			return (from == null || from.compareTo(statistics.getMax()) <= 0)
+					&& (to == null || to.compareTo(statistics.getMin()) >= 0);
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean matches(Object value) {
+			if (value == null) {
+				return false;
+			}
+			return (from == null || from.compareTo(value) <= 0) && (to == null || to.compareTo(value) >= 0);
+		}
+
+		@Override
+		public String toString() {
+			return column + " in [" + from + ", " + to + "]";
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+
+import org.springframework.data.hadoop.serialization.DelimitedTextFormat.Field;
+import org.springframework.data.hadoop.serialization.DelimitedTextFormat.FieldWriter;
+
+/**
+ * Maps the fields of a delimited text record to an object and back. Used by {@link DelimitedTextFormat}.
+ *
+ * @param <T> The type of objects mapped.
+ *
+ * @author Alex Savov
+ */
+public interface DelimitedRecordMapper<T> {
+
+	/**
+	 * @return A new object to set the fields of a record to.
+	 */
+	T createObject();
+
+	/**
+	 * Sets a field of the record to passed object. The field is a view over the bytes of the record, so it's valid
+	 * only within this call.
+	 *
+	 * @param object The object to populate.
+	 * @param index The zero-based index of the field within the record.
+	 * @param field The field value.
+	 */
+	void setField(T object, int index, Field field) throws IOException;
+
+	/**
+	 * Writes the fields of passed object (in order) to passed writer.
+	 *
+	 * @param object The object to write.
+	 * @param writer The writer of the record fields.
+	 */
+	void writeFields(T object, FieldWriter writer) throws IOException;
+
+}
@@ -0,0 +1,720 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Serialization format writing objects as delimited text records (such as CSV or TSV lines) in UTF-8. The Readers
+ * scan the bytes for the record and field delimiters directly in a re-usable buffer and hand every field to the
+ * {@link DelimitedRecordMapper record mapper} as a {@link Field view} over the buffer, so neither a <code>String</code>
+ * per line nor a <code>String[]</code> per record is allocated.
+ *
+ * <p>
+ * Quoting and escaping are not supported: the fields should not contain the delimiters. A <code>'\r'</code> preceding
+ * a <code>'\n'</code> record delimiter is dropped, so CRLF-terminated files are read as well.
+ *
+ * <p>
+ * If a compression alias is specified the files are compressed with the corresponding Hadoop codec and the codec
+ * extension is appended to the file extension, so they are read by any Hadoop tool. Uncompressed files are splittable:
+ * a byte range reads the records starting after its first record delimiter up to (and including) the record starting
+ * at its end, the same way Hadoop <code>LineRecordReader</code> does. Compressed files are read by a single reader.
+ *
+ * @author Alex Savov
+ */
+public class DelimitedTextFormat<T> extends SerializationFormatSupport<T> implements SplittableSerializationFormat<T>,
+		InitializingBean {
+
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+	protected static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/* This property is publicly configurable. */
+	private Configuration configuration;
+
+	/* This property is publicly configurable. */
+	private DelimitedRecordMapper<T> recordMapper;
+
+	/* This property is publicly configurable. */
+	private char fieldDelimiter = ',';
+
+	/* This property is publicly configurable. */
+	private char recordDelimiter = '\n';
+
+	/* This property is publicly configurable. */
+	private boolean reuseRecords = false;
+
+	/**
+	 * Sets the Hadoop configuration for this <code>SerializationFormat</code>.
+	 *
+	 * @param configuration The configuration to use.
+	 */
+	public void setConfiguration(Configuration configuration) {
+		this.configuration = configuration;
+	}
+
+	protected Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Sets the mapper of the record fields to objects and back.
+	 *
+	 * @param recordMapper The mapper to use.
+	 */
+	public void setRecordMapper(DelimitedRecordMapper<T> recordMapper) {
+		this.recordMapper = recordMapper;
+	}
+
+	protected DelimitedRecordMapper<T> getRecordMapper() {
+		return recordMapper;
+	}
+
+	/**
+	 * Sets the (ASCII) delimiter of the fields of a record. Defaults to <code>','</code>.
+	 *
+	 * @param fieldDelimiter The field delimiter.
+	 */
+	public void setFieldDelimiter(char fieldDelimiter) {
+		this.fieldDelimiter = fieldDelimiter;
+	}
+
+	/**
+	 * Sets the (ASCII) delimiter of the records. Defaults to <code>'\n'</code>.
+	 *
+	 * @param recordDelimiter The record delimiter.
+	 */
+	public void setRecordDelimiter(char recordDelimiter) {
+		this.recordDelimiter = recordDelimiter;
+	}
+
+	/**
+	 * Enables record-reuse read mode. In this mode every Reader keeps a single object which is re-populated on every
+	 * read, so the object returned by {@link SerializationReader#read()} is valid only until the next call of the
+	 * method. Defaults to <code>false</code>.
+	 *
+	 * @param reuseRecords <code>true</code> to re-use the objects returned by Readers
+	 */
+	public void setReuseRecords(boolean reuseRecords) {
+		this.reuseRecords = reuseRecords;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(getConfiguration(), "A non-null Hadoop configuration is required.");
+		Assert.notNull(getRecordMapper(), "A non-null record mapper is required.");
+		Assert.isTrue(fieldDelimiter < 0x80 && recordDelimiter < 0x80, "The delimiters should be ASCII characters.");
+		Assert.isTrue(fieldDelimiter != recordDelimiter, "The field and record delimiters should differ.");
+	}
+
+	/**
+	 * Writes objects as delimited text records.
+	 */
+	@Override
+	protected SerializationWriterSupport createWriter(final OutputStream output) {
+
+		return new SerializationWriterSupport() {
+
+			private OutputStream outputStream = output;
+
+			private FieldWriter fieldWriter;
+
+			private long uncompressedBytes;
+
+			@Override
+			protected Closeable doOpen() throws IOException {
+
+				fieldWriter = new FieldWriter((byte) fieldDelimiter);
+
+				uncompressedBytes = 0;
+
+				CompressionCodec codec = CompressionUtils.getHadoopCompression(getConfiguration(),
+						getCompressionAlias());
+
+				// If a compression is not specified and if passed stream does have compression capabilities...
+				if (codec == null || CompressionOutputStream.class.isInstance(outputStream)) {
+					// ...just return original stream untouched
+					return outputStream;
+				}
+
+				// Eventually re-use Compressor from underlying CodecPool
+				final Compressor compressor = CodecPool.getCompressor(codec);
+
+				outputStream = codec.createOutputStream(outputStream, compressor);
+
+				return new Closeable() {
+
+					@Override
+					public void close() throws IOException {
+						IOUtils.closeStream(outputStream);
+						CodecPool.returnCompressor(compressor);
+					}
+				};
+			}
+
+			@Override
+			protected void doWrite(T object) throws IOException {
+				fieldWriter.reset();
+
+				getRecordMapper().writeFields(object, fieldWriter);
+
+				fieldWriter.endRecord((byte) recordDelimiter);
+
+				outputStream.write(fieldWriter.bytes, 0, fieldWriter.length);
+
+				uncompressedBytes += fieldWriter.length;
+			}
+
+			@Override
+			protected long getUncompressedBytes() {
+				return uncompressedBytes;
+			}
+		};
+	}
+
+	@Override
+	public SerializationReader<T> getReader(String location, long start, long end) throws IOException {
+		return super.getReader(location, start, end);
+	}
+
+	/**
+	 * Cuts uncompressed files into byte ranges. Compressed files are read by a single reader.
+	 */
+	@Override
+	public List<SerializationReader<T>> getReaders(String location, int desiredSplits) throws IOException {
+
+		if (getCodec(SerializationWriterObjectFactory.canonicalSerializationDestination(this, location)) != null) {
+			List<SerializationReader<T>> readers = new ArrayList<SerializationReader<T>>(1);
+			readers.add(getReader(location));
+			return readers;
+		}
+
+		return super.getReaders(location, desiredSplits);
+	}
+
+	/**
+	 * Reads the whole file at passed location.
+	 */
+	@Override
+	protected SerializationReaderSupport createReader(String location) {
+		return createReader(location, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads the records starting within passed byte range.
+	 */
+	@Override
+	protected SerializationReaderSupport createReader(final String location, final long start, final long end) {
+
+		return new SerializationReaderSupport() {
+
+			private InputStream input;
+
+			private byte[] buffer;
+
+			/* The offset of the next byte to scan. */
+			private int bufferOffset;
+
+			/* The number of valid bytes. */
+			private int bufferLength;
+
+			/* The position of the first byte of the buffer within the (uncompressed) stream. */
+			private long bufferPosition;
+
+			private boolean endOfInput;
+
+			/* Stop reading past the range. Unbounded for compressed files. */
+			private long lastRecordPosition;
+
+			private final Field field = new Field();
+
+			private T reusedObject;
+
+			@Override
+			protected Closeable doOpen() throws IOException {
+
+				buffer = new byte[DEFAULT_BUFFER_SIZE];
+				bufferOffset = bufferLength = 0;
+				bufferPosition = 0;
+				endOfInput = false;
+				lastRecordPosition = end;
+
+				Path path = new Path(location);
+
+				FSDataInputStream fsInput = getHdfsResourceLoader().getFileSystem().open(path);
+
+				CompressionCodec codec = getCodec(location);
+
+				if (codec != null) {
+					// Only the range at the start of the file reads the (non-splittable) compressed file.
+					if (start > 0) {
+						endOfInput = true;
+						return fsInput;
+					}
+
+					lastRecordPosition = Long.MAX_VALUE;
+
+					final Decompressor decompressor = CodecPool.getDecompressor(codec);
+
+					input = codec.createInputStream(fsInput, decompressor);
+
+					return new Closeable() {
+						@Override
+						public void close() throws IOException {
+							IOUtils.closeStream(input);
+							CodecPool.returnDecompressor(decompressor);
+						}
+					};
+				}
+
+				if (start > 0) {
+					fsInput.seek(start);
+				}
+
+				input = readAhead(fsInput);
+
+				bufferPosition = start;
+
+				// The first (partial or not) record belongs to the previous range.
+				if (start > 0) {
+					nextRecord();
+				}
+
+				return input;
+			}
+
+			@Override
+			protected T doRead() throws IOException {
+				if (bufferPosition + bufferOffset > lastRecordPosition) {
+					return null;
+				}
+
+				int recordStart = nextRecord();
+
+				if (recordStart < 0) {
+					return null;
+				}
+
+				int recordEnd = bufferOffset - 1;
+
+				// The last record might not be delimited.
+				if (recordEnd < 0 || buffer[recordEnd] != (byte) recordDelimiter) {
+					recordEnd = bufferOffset;
+				}
+
+				if (recordDelimiter == '\n' && recordEnd > recordStart && buffer[recordEnd - 1] == '\r') {
+					recordEnd--;
+				}
+
+				T object;
+				if (reuseRecords) {
+					if (reusedObject == null) {
+						reusedObject = getRecordMapper().createObject();
+					}
+					object = reusedObject;
+				} else {
+					object = getRecordMapper().createObject();
+				}
+
+				DelimitedRecordMapper<T> mapper = getRecordMapper();
+
+				byte delimiter = (byte) fieldDelimiter;
+
+				int index = 0;
+				int fieldStart = recordStart;
+
+				for (int i = recordStart; i < recordEnd; i++) {
+					if (buffer[i] == delimiter) {
+						mapper.setField(object, index++, field.set(buffer, fieldStart, i - fieldStart));
+						fieldStart = i + 1;
+					}
+				}
+
+				mapper.setField(object, index, field.set(buffer, fieldStart, recordEnd - fieldStart));
+
+				return object;
+			}
+
+			/**
+			 * Scans the next record (including its delimiter).
+			 *
+			 * @return The buffer offset of the record or <code>-1</code> if there are no more records.
+			 */
+			protected int nextRecord() throws IOException {
+				byte delimiter = (byte) recordDelimiter;
+
+				int scanned = bufferOffset;
+
+				while (true) {
+					for (int i = scanned; i < bufferLength; i++) {
+						if (buffer[i] == delimiter) {
+							int recordStart = bufferOffset;
+							bufferOffset = i + 1;
+							return recordStart;
+						}
+					}
+
+					if (endOfInput) {
+						if (bufferOffset == bufferLength) {
+							return -1;
+						}
+
+						int recordStart = bufferOffset;
+						bufferOffset = bufferLength;
+						return recordStart;
+					}
+
+					// Keep scanning after the bytes scanned so far (relative to the record start).
+					scanned = bufferLength - bufferOffset;
+
+					fill();
+				}
+			}
+
+			/**
+			 * Moves the record being scanned to the start of the buffer (growing it if needed) and reads more bytes.
+			 */
+			protected void fill() throws IOException {
+				int remaining = bufferLength - bufferOffset;
+
+				if (bufferOffset > 0) {
+					System.arraycopy(buffer, bufferOffset, buffer, 0, remaining);
+					bufferPosition += bufferOffset;
+					bufferOffset = 0;
+					bufferLength = remaining;
+				}
+
+				if (bufferLength == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+
+				int read = input.read(buffer, bufferLength, buffer.length - bufferLength);
+
+				if (read < 0) {
+					endOfInput = true;
+				} else {
+					bufferLength += read;
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return The codec of the file at passed location as resolved by its extension; <code>null</code> if the file is
+	 * not compressed.
+	 */
+	protected CompressionCodec getCodec(String location) {
+		return new CompressionCodecFactory(getConfiguration()).getCodec(new Path(location));
+	}
+
+	/**
+	 * @return <b>.csv</b>, <b>.tsv</b> or <b>.txt</b> depending on the field delimiter, followed by the compression
+	 * default {@link CompressionCodec#getDefaultExtension() extension} if compression alias is specified.
+	 */
+	@Override
+	protected String getDefaultExtension() {
+		String extension = fieldDelimiter == ',' ? ".csv" : fieldDelimiter == '\t' ? ".tsv" : ".txt";
+
+		CompressionCodec codec = CompressionUtils.getHadoopCompression(getConfiguration(), getCompressionAlias());
+
+		return codec != null ? extension + codec.getDefaultExtension() : extension;
+	}
+
+	/**
+	 * A field of a record: a view over the bytes of the record. Valid only within
+	 * {@link DelimitedRecordMapper#setField(Object, int, Field)} call.
+	 */
+	public static class Field {
+
+		private byte[] bytes;
+
+		private int offset;
+
+		private int length;
+
+		Field set(byte[] bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+			return this;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public boolean isEmpty() {
+			return length == 0;
+		}
+
+		/**
+		 * Parses the field as a decimal <code>int</code> without allocating a <code>String</code>.
+		 *
+		 * @throws NumberFormatException if the field is not a decimal <code>int</code>
+		 */
+		public int intValue() {
+			long value = longValue();
+
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("For input string: \"" + toString() + "\"");
+			}
+
+			return (int) value;
+		}
+
+		/**
+		 * Parses the field as a decimal <code>long</code> without allocating a <code>String</code>.
+		 *
+		 * @throws NumberFormatException if the field is not a decimal <code>long</code>
+		 */
+		public long longValue() {
+			int i = offset;
+			int end = offset + length;
+
+			boolean negative = false;
+
+			if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+				negative = bytes[i++] == '-';
+			}
+
+			if (i == end || end - i > 19) {
+				// Empty or (possibly) out of range: let Long report or parse it.
+				return Long.parseLong(toString());
+			}
+
+			long value = 0;
+
+			for (; i < end; i++) {
+				int digit = bytes[i] - '0';
+
+				if (digit < 0 || digit > 9) {
+					throw new NumberFormatException("For input string: \"" + toString() + "\"");
+				}
+
+				// Accumulate negatively, so Long.MIN_VALUE is parsed as well.
+				value = value * 10 - digit;
+
+				if (value > 0) {
+					throw new NumberFormatException("For input string: \"" + toString() + "\"");
+				}
+			}
+
+			if (!negative) {
+				if (value == Long.MIN_VALUE) {
+					throw new NumberFormatException("For input string: \"" + toString() + "\"");
+				}
+				value = -value;
+			}
+
+			return value;
+		}
+
+		/**
+		 * @throws NumberFormatException if the field is not a <code>double</code>
+		 */
+		public double doubleValue() {
+			return Double.parseDouble(toString());
+		}
+
+		/**
+		 * @return <code>true</code> if the field is <code>true</code> (ignoring case) or <code>1</code>.
+		 */
+		public boolean booleanValue() {
+			if (length == 1) {
+				return bytes[offset] == '1';
+			}
+
+			return length == 4 && (bytes[offset] | 0x20) == 't' && (bytes[offset + 1] | 0x20) == 'r'
+					&& (bytes[offset + 2] | 0x20) == 'u' && (bytes[offset + 3] | 0x20) == 'e';
+		}
+
+		/**
+		 * @return The field decoded as an UTF-8 string.
+		 */
+		@Override
+		public String toString() {
+			return new String(bytes, offset, length, UTF8);
+		}
+	}
+
+	/**
+	 * Writes the fields of a record (in order) into a re-usable buffer, separated by the field delimiter. The values are
+	 * encoded as UTF-8.
+	 */
+	public static class FieldWriter {
+
+		private final byte fieldDelimiter;
+
+		byte[] bytes = new byte[256];
+
+		int length;
+
+		private int fieldCount;
+
+		FieldWriter(byte fieldDelimiter) {
+			this.fieldDelimiter = fieldDelimiter;
+		}
+
+		/**
+		 * Writes a string field. <code>null</code> is written as an empty field.
+		 */
+		public FieldWriter write(CharSequence value) {
+			beginField();
+
+			if (value == null) {
+				return this;
+			}
+
+			int count = value.length();
+
+			// Worst case of 3 bytes per char (a surrogate pair is 4 bytes per 2 chars).
+			ensureCapacity(3 * count);
+
+			for (int i = 0; i < count; i++) {
+				char c = value.charAt(i);
+
+				if (c < 0x80) {
+					bytes[length++] = (byte) c;
+				} else if (c < 0x800) {
+					bytes[length++] = (byte) (0xc0 | (c >> 6));
+					bytes[length++] = (byte) (0x80 | (c & 0x3f));
+				} else if (Character.isHighSurrogate(c) && i + 1 < count
+						&& Character.isLowSurrogate(value.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					bytes[length++] = (byte) (0xf0 | (codePoint >> 18));
+					bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+					bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+					bytes[length++] = (byte) (0x80 | (codePoint & 0x3f));
+				} else {
+					bytes[length++] = (byte) (0xe0 | (c >> 12));
+					bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+					bytes[length++] = (byte) (0x80 | (c & 0x3f));
+				}
+			}
+
+			return this;
+		}
+
+		/**
+		 * Writes a decimal <code>long</code> field without allocating a <code>String</code>.
+		 */
+		public FieldWriter write(long value) {
+			// Could not be negated.
+			if (value == Long.MIN_VALUE) {
+				return write(Long.toString(value));
+			}
+
+			beginField();
+
+			ensureCapacity(20);
+
+			if (value < 0) {
+				bytes[length++] = '-';
+				value = -value;
+			}
+
+			int digits = 1;
+			for (long rest = value / 10; rest > 0; rest /= 10) {
+				digits++;
+			}
+
+			for (int i = length + digits - 1; i >= length; i--) {
+				bytes[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+
+			length += digits;
+
+			return this;
+		}
+
+		public FieldWriter write(double value) {
+			return write(Double.toString(value));
+		}
+
+		public FieldWriter write(boolean value) {
+			return write(value ? "true" : "false");
+		}
+
+		/**
+		 * Writes the (UTF-8 encoded) bytes as a field.
+		 */
+		public FieldWriter write(byte[] value, int offset, int count) {
+			beginField();
+
+			ensureCapacity(count);
+
+			System.arraycopy(value, offset, bytes, length, count);
+
+			length += count;
+
+			return this;
+		}
+
+		void reset() {
+			length = 0;
+			fieldCount = 0;
+		}
+
+		void endRecord(byte recordDelimiter) {
+			ensureCapacity(1);
+
+			bytes[length++] = recordDelimiter;
+		}
+
+		private void beginField() {
+			if (fieldCount++ > 0) {
+				ensureCapacity(1);
+				bytes[length++] = fieldDelimiter;
+			}
+		}
+
+		private void ensureCapacity(int count) {
+			if (length + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + count));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link SerializationFormat} whose writers need to know the HDFS location they write to, such as formats maintaining
+ * sidecar files (indexes, filters) next to the data file. {@link SerializationWriterObjectFactory} and
+ * {@link RollingSerializationWriter} pass the location to such formats.
+ *
+ * @param <T> The type of objects (de)serialized by this serialization format.
+ *
+ * @author Alex Savov
+ */
+public interface LocationAwareSerializationFormat<T> extends SerializationFormat<T> {
+
+	/**
+	 * Creates a serialization writer that writes to the specified <code>OutputStream</code> opened to the specified
+	 * location.
+	 *
+	 * @param output The output stream to write to.
+	 * @param location The HDFS location the output stream is opened to.
+	 *
+	 * @return A Writer that writes to the specified <code>OutputStream</code>.
+	 */
+	SerializationWriter<T> getWriter(OutputStream output, String location) throws IOException;
+
+}
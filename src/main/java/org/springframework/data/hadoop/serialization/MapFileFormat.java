@@ -0,0 +1,385 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import static org.apache.hadoop.io.IOUtils.closeStream;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.springframework.data.hadoop.fs.HdfsResource;
+import org.springframework.util.Assert;
+
+/**
+ * Serialization format writing POJOs sorted by their keys to a {@link SequenceFile} accompanied by a sidecar index
+ * (<code>&lt;location&gt;.index</code>) mapping every {@link #setIndexInterval(int) n-th} key to its position in the
+ * file. The index allows {@link #get(String, Object) point} and {@link #range(String, Object, Object) range} lookups
+ * which binary-search the index and scan at most <code>indexInterval</code> records instead of the whole file.
+ *
+ * <p>
+ * The index is built the way Hadoop {@link MapFile} builds its own (a SequenceFile of keys and
+ * <code>LongWritable</code> positions), but the layout is <b>not</b> MapFile compatible: a MapFile is a directory
+ * holding <code>data</code> and <code>index</code> files, while this format writes the data file at the location
+ * itself and the index next to it. Thus the files can be read as plain SequenceFiles, but not by
+ * <code>MapFile.Reader</code>.
+ *
+ * <p>
+ * The keys (as provided by the {@link #setSerializationKeyProvider(SerializationKeyProvider) key provider}) must be
+ * {@link Comparable} and the objects must be written in non-descending key order; writing a key that is less than the
+ * previous one fails. The writers need to know the location they write to in order to write the index, so they should
+ * be created by {@link SerializationWriterObjectFactory} or {@link RollingSerializationWriter}.
+ *
+ * @author Alex Savov
+ */
+public class MapFileFormat<T> extends SequenceFileFormat<T> {
+
+	protected static final String INDEX_EXTENSION = ".index";
+
+	protected static final int DEFAULT_INDEX_INTERVAL = 128;
+
+	protected static final int INDEX_CACHE_SIZE = 16;
+
+	/* This property is publicly configurable. */
+	private int indexInterval = DEFAULT_INDEX_INTERVAL;
+
+	/* The indexes recently loaded, keyed by location. */
+	private final Map<String, Index> indexCache = new LinkedHashMap<String, Index>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = -3571230484431837437L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Index> eldest) {
+			return size() > INDEX_CACHE_SIZE;
+		}
+	};
+
+	public MapFileFormat(Class<T> objectsClass) {
+		super(objectsClass);
+	}
+
+	/**
+	 * Sets the number of records between two consecutive index entries. Smaller values speed up lookups at the cost
+	 * of bigger index. Defaults to <code>128</code>.
+	 *
+	 * @param indexInterval The number of records per index entry.
+	 */
+	public void setIndexInterval(int indexInterval) {
+		this.indexInterval = indexInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+
+		Assert.isTrue(indexInterval > 0, "The index interval must be positive.");
+
+		Class<?> keyClass = getSerializationKeyProvider().getKeyClass(objectsClass);
+
+		Assert.isTrue(Comparable.class.isAssignableFrom(keyClass), "The keys must be Comparable but " + keyClass
+				+ " is not.");
+	}
+
+	/**
+	 * Not supported as the index could not be written without knowing the location of the file.
+	 */
+	@Override
+	protected SerializationWriterSupport createWriter(OutputStream output) {
+		return createWriter(output, null);
+	}
+
+	/**
+	 * Writes the POJOs and the index validating the order of their keys.
+	 */
+	@Override
+	protected SerializationWriterSupport createWriter(OutputStream output, final String location) {
+
+		return new SequenceFileWriter(output) {
+
+			/* Native SeqFile writer of the index. */
+			SequenceFile.Writer indexWriter;
+
+			FSDataOutputStream indexOutputStream;
+
+			final LongWritable position = new LongWritable();
+
+			Comparable<Object> lastKey;
+
+			long size;
+
+			@Override
+			protected Closeable doOpen() throws IOException {
+
+				Assert.notNull(location, "The location is required to write an index. "
+						+ "Use SerializationWriterObjectFactory or RollingSerializationWriter.");
+
+				final Closeable dataWriter = super.doOpen();
+
+				indexOutputStream = (FSDataOutputStream) ((HdfsResource) getHdfsResourceLoader().getResource(
+						location + INDEX_EXTENSION)).getOutputStream();
+
+				indexWriter = SequenceFile.createWriter(getConfiguration(), indexOutputStream, getKeyClass(),
+						LongWritable.class, CompressionType.NONE, null);
+
+				size = 0;
+
+				return new Closeable() {
+					@Override
+					public void close() throws IOException {
+						try {
+							dataWriter.close();
+						} finally {
+							closeStream(indexWriter);
+							closeStream(indexOutputStream);
+						}
+					}
+				};
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			protected void doWrite(T object) throws IOException {
+				Comparable<Object> key = (Comparable<Object>) getKey(object);
+
+				if (lastKey != null && lastKey.compareTo(key) > 0) {
+					throw new IOException("Key out of order: " + key + " after " + lastKey);
+				}
+
+				// Point the index to the current end of the (flushed) data, as MapFile does.
+				if (size % indexInterval == 0) {
+					position.set(writer.getLength());
+					indexWriter.append(key, position);
+				}
+
+				writer.append(key, getValue(object));
+
+				lastKey = key;
+				size++;
+			}
+		};
+	}
+
+	/**
+	 * Looks up the object with passed key.
+	 *
+	 * @param location The location of the file.
+	 * @param key The key to look up.
+	 *
+	 * @return The first object with passed key; <code>null</code> if there is no such object.
+	 */
+	public T get(String location, Object key) throws IOException {
+		SerializationReader<T> reader = range(location, key, null);
+
+		try {
+			Object[] found = ((RangeReader) reader).readEntry();
+
+			return found != null && compare(found[0], key) == 0 ? objectsClass.cast(found[1]) : null;
+		} finally {
+			closeStream(reader);
+		}
+	}
+
+	/**
+	 * Creates a serialization reader that reads the objects with keys within passed range in key order.
+	 *
+	 * @param location The location of the file.
+	 * @param from The lower bound (inclusive) of the range; <code>null</code> to read from the first object.
+	 * @param to The upper bound (exclusive) of the range; <code>null</code> to read up to the last object.
+	 *
+	 * @return A Reader that reads the objects with keys within passed range.
+	 */
+	public SerializationReader<T> range(String location, Object from, Object to) throws IOException {
+
+		location = SerializationWriterObjectFactory.canonicalSerializationDestination(this, location);
+
+		RangeReader reader = new RangeReader(location, from, to);
+
+		reader.open();
+
+		return reader;
+	}
+
+	/**
+	 * Reads the objects with keys within a range seeking to the closest preceding index entry.
+	 */
+	protected class RangeReader extends SerializationReaderSupport {
+
+		protected final String location;
+
+		protected final Object from;
+
+		protected final Object to;
+
+		/* Native SeqFile reader. */
+		protected SequenceFile.Reader reader;
+
+		protected RangeReader(String location, Object from, Object to) {
+			this.location = location;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Closeable doOpen() throws IOException {
+
+			reader = openSequenceFileReader(location);
+
+			if (from != null) {
+				long position = getIndex(location).floor(from);
+
+				if (position >= 0) {
+					reader.seek(position);
+				}
+			}
+
+			return reader;
+		}
+
+		@Override
+		protected T doRead() throws IOException {
+			Object[] entry = readEntry();
+
+			return entry != null ? objectsClass.cast(entry[1]) : null;
+		}
+
+		/**
+		 * @return The next key-value pair within the range; <code>null</code> if there are no more.
+		 */
+		protected Object[] readEntry() throws IOException {
+			for (Object key = reader.next((Object) null); key != null; key = reader.next((Object) null)) {
+
+				// Skip the keys preceding the range.
+				if (from != null && compare(key, from) < 0) {
+					continue;
+				}
+
+				if (to != null && compare(key, to) >= 0) {
+					return null;
+				}
+
+				return new Object[] { key, reader.getCurrentValue((Object) null) };
+			}
+
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static int compare(Object key, Object other) {
+		return ((Comparable<Object>) key).compareTo(other);
+	}
+
+	/**
+	 * @return The (cached) index of the file at passed location. The cached index is reloaded if the index file was
+	 * modified since.
+	 */
+	protected Index getIndex(String location) throws IOException {
+		FileSystem fs = getHdfsResourceLoader().getFileSystem();
+
+		Path indexPath = new Path(location + INDEX_EXTENSION);
+
+		if (!fs.exists(indexPath)) {
+			throw new FileNotFoundException("Index of '" + location + "' not found.");
+		}
+
+		FileStatus status = fs.getFileStatus(indexPath);
+
+		Index index;
+
+		synchronized (indexCache) {
+			index = indexCache.get(location);
+		}
+
+		if (index == null || index.modificationTime != status.getModificationTime()) {
+			index = new Index(status.getModificationTime());
+
+			SequenceFile.Reader indexReader = new SequenceFile.Reader(fs, indexPath, getConfiguration());
+			try {
+				LongWritable position = new LongWritable();
+
+				for (Object key = indexReader.next((Object) null); key != null; key = indexReader.next((Object) null)) {
+					indexReader.getCurrentValue(position);
+
+					index.keys.add(key);
+					index.positions.add(position.get());
+				}
+			} finally {
+				closeStream(indexReader);
+			}
+
+			synchronized (indexCache) {
+				indexCache.put(location, index);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * The index entries of a file loaded in memory.
+	 */
+	protected static class Index {
+
+		final long modificationTime;
+
+		final List<Object> keys = new ArrayList<Object>();
+
+		final List<Long> positions = new ArrayList<Long>();
+
+		Index(long modificationTime) {
+			this.modificationTime = modificationTime;
+		}
+
+		/**
+		 * Binary-searches the index for the last entry whose key is less than passed key. As equal keys might span
+		 * multiple index entries, seeking to that entry guarantees the first object with passed key is read.
+		 *
+		 * @return The position of the entry; <code>-1</code> if there is no such entry.
+		 */
+		long floor(Object key) {
+			int low = 0;
+			int high = keys.size() - 1;
+			int found = -1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+
+				if (compare(keys.get(middle), key) < 0) {
+					found = middle;
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return found >= 0 ? positions.get(found) : -1;
+		}
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import static org.apache.hadoop.io.IOUtils.closeStream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.springframework.core.io.ContextResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SerializationReader} merging the objects of several readers, each of them sorted by the key of a
+ * {@link SerializationKeyProvider} (such as the reducer outputs written by {@link SequenceFileFormat}), into a single
+ * stream in key order. The merge is a heap-based k-way merge which holds a single object per input reader.
+ *
+ * <p>
+ * Objects with equal keys are returned in the order of their input readers. If a {@link Combiner combiner} is set, they
+ * are collapsed into a single object instead.
+ *
+ * <p>
+ * The object returned by {@link #read()} stays valid until the next call of the method, so the input readers might be
+ * in record-reuse mode unless a combiner is set. An input reader that is not sorted fails the merge.
+ *
+ * @author Alex Savov
+ */
+public class MergingSerializationReader<T> implements SerializationReader<T> {
+
+	/**
+	 * Collapses the objects with equal keys.
+	 */
+	public interface Combiner<T> {
+
+		/**
+		 * @param accumulated The (combined) object of the preceding objects with the same key.
+		 * @param object The next object with the same key.
+		 *
+		 * @return The combined object.
+		 */
+		T combine(T accumulated, T object) throws IOException;
+	}
+
+	private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+		@SuppressWarnings("unchecked")
+		@Override
+		public int compare(Object key1, Object key2) {
+			return ((Comparable<Object>) key1).compareTo(key2);
+		}
+	};
+
+	protected final List<SerializationReader<T>> readers;
+
+	protected final SerializationKeyProvider keyProvider;
+
+	protected final Comparator<Object> keyComparator;
+
+	/* This property is publicly configurable. */
+	private Combiner<T> combiner;
+
+	/* The inputs ordered by the key of their current object. Initialized upon first read. */
+	protected PriorityQueue<Input> heap;
+
+	/* The input of the object returned last. Advanced lazily, so the object stays valid until the next read. */
+	protected Input lastInput;
+
+	protected boolean closed = false;
+
+	/**
+	 * @param readers The readers to merge. Every reader should return its objects sorted by their key.
+	 * @param keyProvider Provides the ({@link Comparable}) keys of the objects.
+	 */
+	public MergingSerializationReader(List<? extends SerializationReader<T>> readers,
+			SerializationKeyProvider keyProvider) {
+		this(readers, keyProvider, null);
+	}
+
+	/**
+	 * @param readers The readers to merge. Every reader should return its objects sorted by their key.
+	 * @param keyProvider Provides the keys of the objects.
+	 * @param keyComparator The order of the keys. <code>null</code> means natural order of {@link Comparable} keys.
+	 */
+	@SuppressWarnings("unchecked")
+	public MergingSerializationReader(List<? extends SerializationReader<T>> readers,
+			SerializationKeyProvider keyProvider, Comparator<?> keyComparator) {
+		Assert.notNull(readers, "A non-null list of readers is required.");
+		Assert.notNull(keyProvider, "A non-null SerializationKeyProvider is required.");
+
+		this.readers = new ArrayList<SerializationReader<T>>(readers);
+		this.keyProvider = keyProvider;
+		this.keyComparator = keyComparator != null ? (Comparator<Object>) keyComparator : NATURAL_ORDER;
+	}
+
+	/**
+	 * Opens a reader of passed serialization format for every file matching passed location pattern and merges them.
+	 *
+	 * @param serializationFormat The format of the files.
+	 * @param hdfsResourceLoader The loader resolving the location pattern.
+	 * @param locationPattern The location pattern (such as <code>/output/part-*</code>).
+	 * @param keyProvider Provides the ({@link Comparable}) keys of the objects.
+	 *
+	 * @return A reader merging the files matching the location pattern.
+	 */
+	public static <T> MergingSerializationReader<T> open(SerializationFormat<T> serializationFormat,
+			HdfsResourceLoader hdfsResourceLoader, String locationPattern, SerializationKeyProvider keyProvider)
+			throws IOException {
+
+		Assert.notNull(serializationFormat, "A non-null SerializationFormat is required.");
+		Assert.notNull(hdfsResourceLoader, "A non-null HdfsResourceLoader is required.");
+
+		List<SerializationReader<T>> readers = new ArrayList<SerializationReader<T>>();
+
+		try {
+			for (Resource resource : hdfsResourceLoader.getResources(locationPattern)) {
+				readers.add(serializationFormat.getReader(((ContextResource) resource).getPathWithinContext()));
+			}
+		} catch (IOException e) {
+			for (SerializationReader<T> reader : readers) {
+				closeStream(reader);
+			}
+			throw e;
+		}
+
+		return new MergingSerializationReader<T>(readers, keyProvider);
+	}
+
+	/**
+	 * Sets the combiner collapsing the objects with equal keys. Since the combiner is passed objects of different input
+	 * readers, the inputs should not be in record-reuse mode.
+	 *
+	 * @param combiner The combiner to use. <code>null</code> means no collapsing.
+	 */
+	public void setCombiner(Combiner<T> combiner) {
+		this.combiner = combiner;
+	}
+
+	/**
+	 * @return The object with the least key among the current objects of the input readers; <code>null</code> if all
+	 * of them are drained.
+	 */
+	@Override
+	public T read() throws IOException {
+		if (closed) {
+			return null;
+		}
+
+		if (heap == null) {
+			heap = new PriorityQueue<Input>(Math.max(1, readers.size()));
+
+			for (int i = 0; i < readers.size(); i++) {
+				advance(new Input(i, readers.get(i)));
+			}
+		}
+
+		if (lastInput != null) {
+			advance(lastInput);
+			lastInput = null;
+		}
+
+		Input input = heap.poll();
+
+		if (input == null) {
+			close();
+			return null;
+		}
+
+		T object = input.object;
+
+		if (combiner == null) {
+			lastInput = input;
+			return object;
+		}
+
+		Object key = input.key;
+
+		advance(input);
+
+		while (!heap.isEmpty() && keyComparator.compare(heap.peek().key, key) == 0) {
+			Input next = heap.poll();
+
+			object = combiner.combine(object, next.object);
+
+			advance(next);
+		}
+
+		return object;
+	}
+
+	/**
+	 * Closes all input readers.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		IOException error = null;
+
+		for (SerializationReader<T> reader : readers) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+
+		heap = null;
+		lastInput = null;
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Reads the next object of passed input and puts the input back to the heap unless it is drained.
+	 */
+	protected void advance(Input input) throws IOException {
+		T object = input.reader.read();
+
+		if (object == null) {
+			return;
+		}
+
+		Object key = keyProvider.getKey(object);
+
+		Assert.notNull(key, "A non-null key is required for " + object);
+
+		if (input.key != null && keyComparator.compare(key, input.key) < 0) {
+			throw new IOException("Input reader #" + input.index + " is not sorted: key [" + key + "] follows key ["
+					+ input.key + "].");
+		}
+
+		input.object = object;
+		input.key = key;
+
+		heap.add(input);
+	}
+
+	/**
+	 * An input reader along with its current object.
+	 */
+	protected class Input implements Comparable<Input> {
+
+		final int index;
+
+		final SerializationReader<T> reader;
+
+		T object;
+
+		Object key;
+
+		Input(int index, SerializationReader<T> reader) {
+			this.index = index;
+			this.reader = reader;
+		}
+
+		@Override
+		public int compareTo(Input other) {
+			int result = keyComparator.compare(key, other.key);
+
+			// Equal keys keep the order of the input readers.
+			return result != 0 ? result : (index < other.index ? -1 : (index == other.index ? 0 : 1));
+		}
+	}
+
+}
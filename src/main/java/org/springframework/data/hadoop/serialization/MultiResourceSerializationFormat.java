@@ -15,13 +15,23 @@
  */
 package org.springframework.data.hadoop.serialization;
 
+import static org.apache.hadoop.io.IOUtils.closeStream;
+
 import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.DataFileStream;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericData;
@@ -31,7 +41,10 @@ import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.util.Utf8;
 import org.apache.commons.io.IOUtils;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.data.hadoop.fs.HdfsResource;
+import org.springframework.util.Assert;
 
 /**
  * An implementation of {@link SerializationFormat} which serializes multiple Spring {@link Resource}s to a single
@@ -39,71 +52,235 @@ import org.springframework.core.io.Resource;
  * so without hitting the NameNode memory limits.
  * 
  * <p>
- * The Avro container file used internally consists of zero or more records, where each record consists of two fields
- * containing the resource key and the resource content in byte form.
+ * The Avro container file used internally consists of zero or more records, where each record consists of the
+ * resource key, a chunk of the resource content in byte form and a flag marking the last chunk of the resource. Large
+ * resources are split across multiple records of {@link #setChunkSize(int) fixed size}, so neither writing nor reading
+ * them requires memory proportional to their size. Files written before the chunked layout (without the flag) store
+ * every resource as a single chunk and remain readable.
  * 
  * @author Alex Savov
  */
 // TODO: Decide which class to go with: MultiResourceSerializationFormat or MultiResourceSerializationFormat2
 // This impl is based on native Avro API and its GenericRecord and GenericDatumWriter
 // It supports/stores resource key (configurable through SerializationKeyProvider) and resource content (as byte array)
-public class MultiResourceSerializationFormat extends SerializationFormatSupport<Resource> {
+public class MultiResourceSerializationFormat extends SerializationFormatSupport<Resource> implements
+		LocationAwareSerializationFormat<Resource> {
 
 	protected static final String RESOURCE_KEY_FIELD = "resourceKey";
 	protected static final String RESOURCE_CONTENT_FIELD = "resourceContent";
+	protected static final String LAST_CHUNK_FIELD = "lastChunk";
+
+	protected static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	protected static final String INDEX_EXTENSION = ".index";
+
+	protected static final String INDEX_POSITION_FIELD = "position";
+	protected static final String INDEX_SKIP_FIELD = "skip";
+
+	/* The (approximate) number of bytes per Avro block of indexed files. */
+	protected static final int INDEX_SYNC_INTERVAL = 64 * 1024;
+
+	/* The max number of bytes of a record besides its key and content (length prefixes and last chunk flag). */
+	protected static final int RECORD_OVERHEAD = 11;
 
 	// TODO: this is not extensible. we need to generate underlying Avro schemaon the fly.
 	// Maybe this is a "pro" for MultiResourceSerializationFormat2.
 	protected static final String SCHEMA_JSON = "{\"type\": \"record\", \"name\": \""
 			+ MultiResourceSerializationFormat.class.getSimpleName() + "\", " + "\"fields\": [" + "{\"name\":\""
 			+ RESOURCE_KEY_FIELD + "\", \"type\":\"string\"}," + "{\"name\":\"" + RESOURCE_CONTENT_FIELD
-			+ "\", \"type\":\"bytes\"}]}";
+			+ "\", \"type\":\"bytes\"}," + "{\"name\":\"" + LAST_CHUNK_FIELD
+			+ "\", \"type\":\"boolean\", \"default\":true}]}";
 
 	protected static final Schema SCHEMA = new Schema.Parser().parse(SCHEMA_JSON);
 
+	/* Every index record maps a resource key to the Avro block it starts in and the records to skip in that block. */
+	protected static final Schema INDEX_SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \""
+			+ MultiResourceSerializationFormat.class.getSimpleName() + "Index\", " + "\"fields\": [" + "{\"name\":\""
+			+ RESOURCE_KEY_FIELD + "\", \"type\":\"string\"}," + "{\"name\":\"" + INDEX_POSITION_FIELD
+			+ "\", \"type\":\"long\"}," + "{\"name\":\"" + INDEX_SKIP_FIELD + "\", \"type\":\"int\"}]}");
+
+	/* Generic datum writers are stateless once bound to a schema, so a single one is shared by all writers. */
+	protected static final GenericDatumWriter<GenericRecord> DATUM_WRITER = new GenericDatumWriter<GenericRecord>(
+			SCHEMA);
+
+	protected static final GenericDatumWriter<GenericRecord> INDEX_DATUM_WRITER = new GenericDatumWriter<GenericRecord>(
+			INDEX_SCHEMA);
+
 	/* This property is publicly configurable. */
 	private SerializationKeyProvider resourceKeyProvider = new ReflectiveSerializationKeyProvider(Resource.class,
 			"description");
 
+	/* This property is publicly configurable. */
+	private String[] projection;
+
+	/* This property is publicly configurable. */
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/* This property is publicly configurable. */
+	private boolean indexed = false;
+
+	/* The index read last, so consecutive lookups into the same file do not re-read it. */
+	private volatile ResourceIndex resourceIndex;
+
+	@Override
+	public SerializationWriter<Resource> getWriter(OutputStream output, String location) throws IOException {
+		return super.getWriter(output, location);
+	}
+
+	/**
+	 * Writes Spring {@link Resource}s to an <code>Avro</code> container file. Index is not supported as the location of
+	 * the file is unknown.
+	 */
+	protected SerializationWriterSupport createWriter(OutputStream output) {
+		return createWriter(output, null);
+	}
+
 	/**
-	 * Writes Spring {@link Resource}s to an <code>Avro</code> container file.
+	 * Writes Spring {@link Resource}s to an <code>Avro</code> container file at passed location and its sidecar index
+	 * (if {@link #setIndexed(boolean) enabled}).
 	 */
-	protected SerializationWriterSupport createWriter(final OutputStream output) {
+	@Override
+	protected SerializationWriterSupport createWriter(final OutputStream output, final String location) {
 
 		return new SerializationWriterSupport() {
 
 			/* Native Avro writer. */
 			DataFileWriter<GenericRecord> writer;
 
+			/* Native Avro writer of the index; null if not indexed. */
+			DataFileWriter<GenericRecord> indexWriter;
+
+			/* Re-used for every chunk. */
+			byte[] chunk;
+
+			/* The position of the current Avro block, the records and the (max) bytes written to it. */
+			long blockPosition;
+			int blockRecords;
+			long blockBytes;
+
 			@Override
 			protected Closeable doOpen() throws IOException {
 
-				writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>());
+				Assert.isTrue(chunkSize > 0, "The chunk size must be positive.");
+				Assert.isTrue(!indexed || location != null, "The location is required to write an index. "
+						+ "Use SerializationWriterObjectFactory or RollingSerializationWriter.");
+
+				chunk = new byte[chunkSize];
+
+				writer = new DataFileWriter<GenericRecord>(DATUM_WRITER);
 
 				// Configure compression if specified.
 				writer.setCodec(CompressionUtils.getAvroCompression(getCompressionAlias()));
 
+				if (indexed) {
+					// Blocks are synced explicitly, so the index knows the block every record is written to. Avro syncs
+					// a block on its own only once the actual block size exceeds that interval, which happens exactly
+					// when the over-estimated block size does, i.e. right before the explicit sync.
+					writer.setSyncInterval(2 * INDEX_SYNC_INTERVAL);
+				}
+
 				// Open a new file for data serialization using specified SCHEMA.
 				writer.create(SCHEMA, output);
 
-				// Return Avro writer for later release.
-				return writer;
+				if (!indexed) {
+					// Return Avro writer for later release.
+					return writer;
+				}
+
+				OutputStream indexOutput = null;
+
+				boolean created = false;
+
+				try {
+					blockPosition = writer.sync();
+
+					indexOutput = ((HdfsResource) getHdfsResourceLoader().getResource(location + INDEX_EXTENSION))
+							.getOutputStream();
+
+					indexWriter = new DataFileWriter<GenericRecord>(INDEX_DATUM_WRITER);
+					indexWriter.create(INDEX_SCHEMA, indexOutput);
+
+					created = true;
+				} finally {
+					// The data file (and the index file if opened) would never be closed otherwise.
+					if (!created) {
+						closeStream(writer);
+						closeStream(indexOutput);
+					}
+				}
+
+				return new Closeable() {
+					@Override
+					public void close() throws IOException {
+						try {
+							writer.close();
+						} finally {
+							indexWriter.close();
+						}
+					}
+				};
 			}
 
+			/**
+			 * Streams the resource content as a sequence of chunks. The last chunk is the first one which is not full
+			 * (it might be empty).
+			 */
 			@Override
 			protected void doWrite(Resource resource) throws IOException {
-				GenericRecord record = new GenericData.Record(SCHEMA);
+				String key = getResourceKeyProvider().getKey(resource).toString();
+
+				int keyLength = new Utf8(key).getByteLength();
+
+				if (indexWriter != null) {
+					GenericRecord indexRecord = new GenericData.Record(INDEX_SCHEMA);
+
+					indexRecord.put(RESOURCE_KEY_FIELD, key);
+					indexRecord.put(INDEX_POSITION_FIELD, blockPosition);
+					indexRecord.put(INDEX_SKIP_FIELD, blockRecords);
+
+					indexWriter.append(indexRecord);
+				}
+
+				InputStream inputStream = resource.getInputStream();
+
+				try {
+					boolean lastChunk;
+					do {
+						int length = readChunk(inputStream, chunk);
+
+						lastChunk = length < chunk.length;
+
+						GenericRecord record = new GenericData.Record(SCHEMA);
+
+						record.put(RESOURCE_KEY_FIELD, key);
+						record.put(RESOURCE_CONTENT_FIELD, ByteBuffer.wrap(chunk, 0, length));
+						record.put(LAST_CHUNK_FIELD, lastChunk);
 
-				record.put(RESOURCE_KEY_FIELD, getResourceKeyProvider().getKey(resource).toString());
-				record.put(RESOURCE_CONTENT_FIELD, ByteBuffer.wrap(IOUtils.toByteArray(resource.getInputStream())));
+						writer.append(record);
 
-				writer.append(record);
+						if (indexWriter != null) {
+							blockRecords++;
+							blockBytes += keyLength + length + RECORD_OVERHEAD;
+
+							if (blockBytes >= INDEX_SYNC_INTERVAL) {
+								blockPosition = writer.sync();
+								blockRecords = 0;
+								blockBytes = 0;
+							}
+						}
+					} while (!lastChunk);
+				} finally {
+					IOUtils.closeQuietly(inputStream);
+				}
 			}
 		};
 	}
 
 	/**
-	 * Reads Spring {@link Resource}s from an <code>Avro</code> container file.
+	 * Reads Spring {@link Resource}s from an <code>Avro</code> container file. Resources stored in a single chunk are
+	 * returned as <code>ByteArrayResource</code>s. Larger ones are returned as <code>InputStreamResource</code>s which
+	 * stream their chunks lazily from the container file; the content of such a resource should be consumed before the
+	 * next resource is read, as reading the next resource skips the unconsumed chunks.
 	 */
 	@Override
 	protected SerializationReaderSupport createReader(final String location) {
@@ -113,34 +290,329 @@ public class MultiResourceSerializationFormat extends SerializationFormatSupport
 			/* Native Avro reader. */
 			DataFileStream<GenericRecord> reader;
 
+			/* The content of the resource returned last. */
+			ChunkInputStream content;
+
 			@Override
 			protected Closeable doOpen() throws IOException {
 
 				final Resource hdfsResource = getHdfsResourceLoader().getResource(location);
-				final InputStream inputStream = hdfsResource.getInputStream();
+				final InputStream inputStream = readAhead(hdfsResource.getInputStream());
+
+				GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<GenericRecord>();
+
+				reader = new DataFileStream<GenericRecord>(inputStream, datumReader);
 
-				reader = new DataFileStream<GenericRecord>(inputStream, new GenericDatumReader<GenericRecord>());
+				// Resolve the records against the projected schema (if any), so skipped fields are never materialized.
+				// The projection is made from the schema of the file as it depends on whether the file is chunked.
+				if (projection != null) {
+					Schema writerSchema = reader.getSchema();
+
+					Set<String> fields = new LinkedHashSet<String>(Arrays.asList(projection));
+					if (writerSchema.getField(LAST_CHUNK_FIELD) != null) {
+						fields.add(LAST_CHUNK_FIELD);
+					}
+
+					datumReader.setExpected(AvroUtils.projectSchema(writerSchema,
+							fields.toArray(new String[fields.size()])));
+				}
 
 				return reader;
 			}
 
 			@Override
 			protected Resource doRead() throws IOException {
+				// Skip the unconsumed chunks of the previous resource.
+				if (content != null) {
+					content.skipChunks();
+					content = null;
+				}
+
 				if (!reader.hasNext()) {
 					return null;
 				}
 
 				final GenericRecord genericRecord = reader.next();
 
-				String description = ((Utf8) genericRecord.get(RESOURCE_KEY_FIELD)).toString();
+				// Fields that are not projected are missing from the record.
+				Object key = genericRecord.getSchema().getField(RESOURCE_KEY_FIELD) != null ? genericRecord
+						.get(RESOURCE_KEY_FIELD) : null;
+
+				String description = key != null ? ((Utf8) key).toString() : null;
+
+				ChunkInputStream chunks = new ChunkInputStream(reader, genericRecord);
+
+				if (genericRecord.getSchema().getField(RESOURCE_CONTENT_FIELD) == null) {
+					chunks.skipChunks();
+
+					return new ByteArrayResource(new byte[0], description);
+				}
+
+				if (chunks.lastChunk) {
+					return new ByteArrayResource(chunks.toByteArray(), description);
+				}
 
-				byte[] content = ((ByteBuffer) genericRecord.get(RESOURCE_CONTENT_FIELD)).array();
+				content = chunks;
 
-				return new ByteArrayResource(content, description);
+				return new InputStreamResource(content, description);
 			}
 		};
 	}
 
+	/**
+	 * Looks up a resource by its key in the {@link #setIndexed(boolean) index} of the Avro container file at passed
+	 * location and reads it seeking directly to the Avro block it is stored in. The resources are returned as by the
+	 * Readers; the content of a resource stored in multiple chunks is streamed from the container file, so its input
+	 * stream should be closed once consumed.
+	 * 
+	 * @param location The location of the Avro container file.
+	 * @param key The key of the resource (as returned by the {@link #setResourceKeyProvider(SerializationKeyProvider)
+	 * resource key provider} at write time).
+	 * 
+	 * @return The resource with passed key; <code>null</code> if no such resource is present.
+	 * 
+	 * @throws IOException if the file is not indexed or in case of errors reading it
+	 */
+	public Resource getResource(String location, String key) throws IOException {
+
+		location = SerializationWriterObjectFactory.canonicalSerializationDestination(this, location);
+
+		long[] indexEntry = getResourceIndex(location).entries.get(key);
+
+		if (indexEntry == null) {
+			return null;
+		}
+
+		DataFileReader<GenericRecord> reader = new DataFileReader<GenericRecord>(
+				AvroUtils.toSeekableInput(getHdfsResourceLoader().getResource(location)),
+				new GenericDatumReader<GenericRecord>());
+
+		boolean streamed = false;
+
+		try {
+			reader.seek(indexEntry[0]);
+
+			for (long skip = indexEntry[1]; skip > 0; skip--) {
+				nextIndexedRecord(reader, location, key);
+			}
+
+			ChunkInputStream chunks = new ChunkInputStream(reader, nextIndexedRecord(reader, location, key), reader);
+
+			if (chunks.lastChunk) {
+				return new ByteArrayResource(chunks.toByteArray(), key);
+			}
+
+			streamed = true;
+
+			return new InputStreamResource(chunks, key);
+		} finally {
+			if (!streamed) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * @throws IOException if the container file ends before the indexed record, i.e. it is truncated or does not
+	 * match its index
+	 */
+	private static GenericRecord nextIndexedRecord(DataFileReader<GenericRecord> reader, String location, String key)
+			throws IOException {
+
+		if (!reader.hasNext()) {
+			throw new EOFException("The Avro container file '" + location + "' ends before the resource '" + key
+					+ "' indexed in it. The file is truncated or does not match its index.");
+		}
+
+		return reader.next();
+	}
+
+	/**
+	 * Returns the index of the Avro container file at passed location, reading it only if it differs from the index
+	 * read last (another file or a file re-written since).
+	 */
+	protected ResourceIndex getResourceIndex(String location) throws IOException {
+
+		Resource indexResource = getHdfsResourceLoader().getResource(location + INDEX_EXTENSION);
+
+		if (!indexResource.exists()) {
+			throw new FileNotFoundException("Index of '" + location + "' not found.");
+		}
+
+		long lastModified = indexResource.lastModified();
+		long length = indexResource.contentLength();
+
+		ResourceIndex index = resourceIndex;
+
+		if (index != null && index.location.equals(location) && index.lastModified == lastModified
+				&& index.length == length) {
+			return index;
+		}
+
+		index = new ResourceIndex(location, lastModified, length);
+
+		DataFileStream<GenericRecord> indexStream = new DataFileStream<GenericRecord>(indexResource.getInputStream(),
+				new GenericDatumReader<GenericRecord>());
+		try {
+			for (GenericRecord record : indexStream) {
+				String key = record.get(RESOURCE_KEY_FIELD).toString();
+
+				// Keys written more than once resolve to their first resource.
+				if (!index.entries.containsKey(key)) {
+					index.entries.put(key, new long[] { (Long) record.get(INDEX_POSITION_FIELD),
+							(Integer) record.get(INDEX_SKIP_FIELD) });
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(indexStream);
+		}
+
+		resourceIndex = index;
+
+		return index;
+	}
+
+	/**
+	 * The index of a container file: the Avro block position and the records to skip in that block keyed by resource
+	 * key.
+	 */
+	protected static class ResourceIndex {
+
+		final String location;
+
+		final long lastModified;
+
+		final long length;
+
+		final Map<String, long[]> entries = new HashMap<String, long[]>();
+
+		ResourceIndex(String location, long lastModified, long length) {
+			this.location = location;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Fills the chunk from the stream.
+	 * 
+	 * @return The number of bytes read; less than the chunk length only at the end of the stream.
+	 */
+	private static int readChunk(InputStream inputStream, byte[] chunk) throws IOException {
+		int length = 0;
+
+		for (int n; length < chunk.length && (n = inputStream.read(chunk, length, chunk.length - length)) != -1;) {
+			length += n;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Streams the content of a resource chunk by chunk as read from the Avro container file.
+	 */
+	protected static class ChunkInputStream extends InputStream {
+
+		private final DataFileStream<GenericRecord> reader;
+
+		/* Released on close; null if the reader is owned by someone else. */
+		private final Closeable owned;
+
+		private ByteBuffer chunk;
+
+		private boolean lastChunk;
+
+		ChunkInputStream(DataFileStream<GenericRecord> reader, GenericRecord firstChunk) {
+			this(reader, firstChunk, null);
+		}
+
+		ChunkInputStream(DataFileStream<GenericRecord> reader, GenericRecord firstChunk, Closeable owned) {
+			this.reader = reader;
+			this.owned = owned;
+
+			setChunk(firstChunk);
+		}
+
+		private void setChunk(GenericRecord record) {
+			chunk = (ByteBuffer) record.get(RESOURCE_CONTENT_FIELD);
+
+			// Files written before the chunked layout store every resource as a single chunk.
+			Object lastChunkFlag = record.getSchema().getField(LAST_CHUNK_FIELD) != null ? record.get(LAST_CHUNK_FIELD)
+					: null;
+
+			lastChunk = lastChunkFlag == null || (Boolean) lastChunkFlag;
+		}
+
+		/**
+		 * @return <code>false</code> if there are no more chunks.
+		 */
+		private boolean nextChunk() throws IOException {
+			if (lastChunk) {
+				return false;
+			}
+
+			if (!reader.hasNext()) {
+				throw new EOFException("Missing last chunk of resource.");
+			}
+
+			setChunk(reader.next());
+
+			return true;
+		}
+
+		void skipChunks() throws IOException {
+			while (nextChunk()) {
+			}
+		}
+
+		byte[] toByteArray() {
+			byte[] bytes = new byte[chunk.remaining()];
+			chunk.get(bytes);
+			return bytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (chunk == null || !chunk.hasRemaining()) {
+				if (!nextChunk()) {
+					return -1;
+				}
+			}
+			return chunk.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			while (chunk == null || !chunk.hasRemaining()) {
+				if (!nextChunk()) {
+					return -1;
+				}
+			}
+
+			int length = Math.min(len, chunk.remaining());
+
+			chunk.get(b, off, length);
+
+			return length;
+		}
+
+		@Override
+		public int available() {
+			return chunk != null ? chunk.remaining() : 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (owned != null) {
+				owned.close();
+			}
+		}
+	}
+
 	/**
 	 * @return <b>.avro</b> is the default file extension for Avro serialization.
 	 */
@@ -164,4 +636,38 @@ public class MultiResourceSerializationFormat extends SerializationFormatSupport
 		return resourceKeyProvider;
 	}
 
+	/**
+	 * Sets the names of the record fields populated by the Readers - <code>resourceKey</code> and/or
+	 * <code>resourceContent</code>. Skipping the content is useful for listing the resources stored in a large
+	 * container file: the Readers return {@link Resource}s with empty content. <code>null</code> (the default) means
+	 * all fields.
+	 * 
+	 * @param projection The names of the fields to read.
+	 */
+	public void setProjection(String... projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Sets the max number of content bytes stored per record. Bounds the memory needed to write and read a resource
+	 * regardless of its size. Defaults to 1 MB.
+	 * 
+	 * @param chunkSize The max number of content bytes per record.
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Enables the writing of a sidecar index (<code>&lt;location&gt;.index</code>) mapping every resource key to the
+	 * Avro block the resource is stored in, so single resources could be {@link #getResource(String, String) looked up}
+	 * without scanning the whole container file. Requires the writers to be created through
+	 * {@link LocationAwareSerializationFormat#getWriter(OutputStream, String)}. Defaults to <code>false</code>.
+	 * 
+	 * @param indexed <code>true</code> to write an index
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link CompressionOutputStream} which splits the data into blocks, compresses every block as an independent
+ * stream (a gzip <i>member</i> in case of gzip) on a pool of worker threads and writes the compressed blocks in order.
+ * The output is a concatenation of complete compressed streams, readable by the input stream of the very same
+ * {@link CompressionCodec}.
+ *
+ * <p>
+ * Blocks do not share a compression dictionary, so the output is slightly larger than the one of a single stream. The
+ * bigger the block, the smaller the difference.
+ *
+ * <p>
+ * Hadoop 1.x {@link BZip2Codec} input stream does not read concatenated streams, so the codec is not supported.
+ *
+ * <p>
+ * Instances are NOT thread-safe: a single thread is expected to write to them.
+ *
+ * @author Alex Savov
+ */
+public class ParallelCompressionOutputStream extends CompressionOutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	protected final CompressionCodec codec;
+
+	protected final int blockSize;
+
+	/* The max number of blocks submitted for compression but not yet written. */
+	protected final int maxPendingBlocks;
+
+	protected final ExecutorService executor;
+
+	/* The blocks submitted for compression, in the order to be written. */
+	protected final Deque<Future<Block>> pendingBlocks = new ArrayDeque<Future<Block>>();
+
+	/* Written blocks, available for re-use. */
+	protected final Deque<Block> freeBlocks = new ArrayDeque<Block>();
+
+	/* The block being filled. */
+	protected Block currentBlock;
+
+	protected boolean finished = false;
+
+	/**
+	 * @param output The stream to write the compressed blocks to.
+	 * @param codec The codec to compress the blocks with.
+	 * @param parallelism The number of worker threads.
+	 */
+	public ParallelCompressionOutputStream(OutputStream output, CompressionCodec codec, int parallelism) {
+		this(output, codec, parallelism, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param output The stream to write the compressed blocks to.
+	 * @param codec The codec to compress the blocks with.
+	 * @param parallelism The number of worker threads.
+	 * @param blockSize The number of uncompressed bytes per block.
+	 */
+	public ParallelCompressionOutputStream(OutputStream output, CompressionCodec codec, int parallelism,
+			int blockSize) {
+		super(output);
+
+		Assert.notNull(output, "A non-null output stream is required.");
+		Assert.notNull(codec, "A non-null compression codec is required.");
+		Assert.isTrue(!(codec instanceof BZip2Codec), "Concatenated bzip2 streams are not readable by Hadoop.");
+		Assert.isTrue(parallelism > 0, "The parallelism must be positive.");
+		Assert.isTrue(blockSize > 0, "The block size must be positive.");
+
+		this.codec = codec;
+		this.blockSize = blockSize;
+
+		// Let workers compress the next blocks while the oldest one is being written.
+		maxPendingBlocks = 2 * parallelism;
+
+		executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, ParallelCompressionOutputStream.class.getSimpleName() + "-"
+						+ THREAD_COUNTER.incrementAndGet());
+				// Abandoned (never closed) streams should not keep the JVM alive.
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureCurrentBlock();
+
+		currentBlock.data[currentBlock.length++] = (byte) b;
+
+		if (currentBlock.length == blockSize) {
+			submitCurrentBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			ensureCurrentBlock();
+
+			int count = Math.min(len, blockSize - currentBlock.length);
+
+			System.arraycopy(b, off, currentBlock.data, currentBlock.length, count);
+
+			currentBlock.length += count;
+			off += count;
+			len -= count;
+
+			if (currentBlock.length == blockSize) {
+				submitCurrentBlock();
+			}
+		}
+	}
+
+	/**
+	 * Writes all blocks compressed so far and flushes the underlying stream. The data buffered in the current block is
+	 * NOT compressed in order to not produce small blocks.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (!pendingBlocks.isEmpty()) {
+			writeOldestBlock();
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Compresses and writes all buffered data without closing the underlying stream. Stops the worker threads.
+	 */
+	@Override
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+
+		finished = true;
+
+		try {
+			if (currentBlock != null && currentBlock.length > 0) {
+				submitCurrentBlock();
+			}
+
+			while (!pendingBlocks.isEmpty()) {
+				writeOldestBlock();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void resetState() throws IOException {
+		Assert.state(!finished, "The stream is finished.");
+
+		// Every block is an independent compressed stream: nothing to reset.
+	}
+
+	protected void ensureCurrentBlock() {
+		Assert.state(!finished, "The stream is finished.");
+
+		if (currentBlock == null) {
+			currentBlock = freeBlocks.isEmpty() ? new Block(blockSize) : freeBlocks.pop();
+		}
+	}
+
+	protected void submitCurrentBlock() throws IOException {
+		if (pendingBlocks.size() >= maxPendingBlocks) {
+			writeOldestBlock();
+		}
+
+		pendingBlocks.add(executor.submit(currentBlock));
+
+		currentBlock = null;
+	}
+
+	protected void writeOldestBlock() throws IOException {
+		Future<Block> pendingBlock = pendingBlocks.poll();
+
+		Block block;
+		try {
+			block = pendingBlock.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a block to be compressed.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Failed to compress a block.", cause);
+		}
+
+		block.compressed.writeTo(out);
+
+		block.reset();
+
+		freeBlocks.push(block);
+	}
+
+	/**
+	 * A block of uncompressed data which compresses itself into an independent compressed stream.
+	 */
+	protected class Block implements Callable<Block> {
+
+		final byte[] data;
+
+		int length;
+
+		final ByteArrayOutputStream compressed;
+
+		Block(int size) {
+			data = new byte[size];
+			compressed = new ByteArrayOutputStream(size / 2);
+		}
+
+		@Override
+		public Block call() throws IOException {
+			// Eventually re-use Compressor from underlying CodecPool
+			Compressor compressor = CodecPool.getCompressor(codec);
+			try {
+				CompressionOutputStream compressionStream = codec.createOutputStream(compressed, compressor);
+				compressionStream.write(data, 0, length);
+				compressionStream.finish();
+			} finally {
+				CodecPool.returnCompressor(compressor);
+			}
+			return this;
+		}
+
+		void reset() {
+			length = 0;
+			compressed.reset();
+		}
+	}
+
+}
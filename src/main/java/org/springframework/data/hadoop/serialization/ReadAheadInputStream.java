@@ -0,0 +1,369 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.Seekable;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Seekable} input stream which reads the next buffers of the underlying stream on a background thread while
+ * the current buffer is consumed. Thus the latency of the underlying reads (block boundaries, datanode switches,
+ * cross-rack round trips) overlaps with the work of the calling thread.
+ *
+ * <p>
+ * The buffers are re-used once consumed. A seek within the current buffer or forward within the buffers read ahead
+ * does not touch the underlying stream; any other seek discards the buffers read ahead and restarts the read-ahead
+ * from the new position. Positioned reads are delegated to the underlying stream if it is {@link PositionedReadable}.
+ *
+ * <p>
+ * Instances are NOT thread-safe: a single thread is expected to read from them, as with any other stream.
+ *
+ * @author Alex Savov
+ */
+public class ReadAheadInputStream extends FSInputStream {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/* The underlying stream. Read ONLY by the background thread. */
+	protected final InputStream input;
+
+	protected final int bufferSize;
+
+	/* The max number of buffers read ahead. */
+	protected final int bufferCount;
+
+	/* Runs the reads, seeks and close of the underlying stream in order. */
+	protected final ExecutorService executor;
+
+	/* The buffers submitted for read, in the order of their position. */
+	protected final Deque<Buffer> pendingBuffers = new ArrayDeque<Buffer>();
+
+	/* Consumed buffers, available for re-use. */
+	protected final Deque<Buffer> freeBuffers = new ArrayDeque<Buffer>();
+
+	/* The buffer being consumed. */
+	protected Buffer currentBuffer;
+
+	/* The position of the next byte to be returned. */
+	protected long position;
+
+	/* The position of the next buffer to be submitted for read. */
+	protected long readAheadPosition;
+
+	/* Whether a buffer has hit the end of the underlying stream. */
+	protected boolean endOfStream = false;
+
+	protected boolean closed = false;
+
+	/**
+	 * @param input The {@link Seekable} stream to read ahead.
+	 * @param bufferSize The number of bytes per buffer.
+	 * @param bufferCount The max number of buffers read ahead.
+	 */
+	public ReadAheadInputStream(InputStream input, int bufferSize, int bufferCount) throws IOException {
+		Assert.notNull(input, "A non-null input stream is required.");
+		Assert.isInstanceOf(Seekable.class, input, "A seekable input stream is required.");
+		Assert.isTrue(bufferSize > 0, "The buffer size must be positive.");
+		Assert.isTrue(bufferCount > 0, "The buffer count must be positive.");
+
+		this.input = input;
+		this.bufferSize = bufferSize;
+		this.bufferCount = bufferCount;
+
+		position = readAheadPosition = ((Seekable) input).getPos();
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, ReadAheadInputStream.class.getSimpleName() + "-"
+						+ THREAD_COUNTER.incrementAndGet());
+				// Abandoned (never closed) streams should not keep the JVM alive.
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+
+		position++;
+
+		return currentBuffer.data[currentBuffer.offset++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (!ensureAvailable()) {
+			return -1;
+		}
+
+		int count = Math.min(len, currentBuffer.length - currentBuffer.offset);
+
+		System.arraycopy(currentBuffer.data, currentBuffer.offset, b, off, count);
+
+		currentBuffer.offset += count;
+		position += count;
+
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return currentBuffer != null ? currentBuffer.length - currentBuffer.offset : 0;
+	}
+
+	@Override
+	public long getPos() throws IOException {
+		return position;
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		Assert.state(!closed, "The stream is closed.");
+
+		if (pos == position) {
+			return;
+		}
+
+		// Seek forward through the buffers read ahead...
+		if (pos > position && pos < readAheadPosition) {
+			while (currentBuffer == null || pos >= currentBuffer.position + currentBuffer.length) {
+				if (!nextBuffer()) {
+					break;
+				}
+			}
+		}
+
+		// ...or within the current buffer
+		if (currentBuffer != null && pos >= currentBuffer.position
+				&& pos <= currentBuffer.position + currentBuffer.length) {
+			currentBuffer.offset = (int) (pos - currentBuffer.position);
+			position = pos;
+			return;
+		}
+
+		// Otherwise restart the read-ahead from the new position.
+		final long newPosition = pos;
+
+		discardBuffers(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				((Seekable) input).seek(newPosition);
+				return null;
+			}
+		});
+
+		position = readAheadPosition = newPosition;
+		endOfStream = false;
+	}
+
+	@Override
+	public boolean seekToNewSource(long targetPos) throws IOException {
+		return false;
+	}
+
+	@Override
+	public int read(long pos, byte[] b, int off, int len) throws IOException {
+		if (input instanceof PositionedReadable) {
+			return ((PositionedReadable) input).read(pos, b, off, len);
+		}
+
+		return super.read(pos, b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+			discardBuffers(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					input.close();
+					return null;
+				}
+			});
+		} finally {
+			executor.shutdown();
+			freeBuffers.clear();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the current buffer has bytes to read.
+	 */
+	protected boolean ensureAvailable() throws IOException {
+		Assert.state(!closed, "The stream is closed.");
+
+		while (currentBuffer == null || currentBuffer.offset == currentBuffer.length) {
+			if (!nextBuffer()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Makes the oldest buffer read ahead the current one and submits the next buffers for read.
+	 *
+	 * @return <code>false</code> if the end of the underlying stream is reached.
+	 */
+	protected boolean nextBuffer() throws IOException {
+		submitBuffers();
+
+		if (pendingBuffers.isEmpty()) {
+			return false;
+		}
+
+		if (currentBuffer != null) {
+			freeBuffers.push(currentBuffer);
+		}
+
+		currentBuffer = await(pendingBuffers.poll());
+
+		// A buffer not filled up ends the stream (the rest of pending buffers are empty).
+		if (currentBuffer.length < bufferSize) {
+			endOfStream = true;
+		}
+
+		submitBuffers();
+
+		return currentBuffer.length > 0;
+	}
+
+	protected void submitBuffers() {
+		while (!endOfStream && pendingBuffers.size() < bufferCount) {
+			Buffer buffer = freeBuffers.isEmpty() ? new Buffer(bufferSize) : freeBuffers.pop();
+
+			buffer.position = readAheadPosition;
+			buffer.length = 0;
+			buffer.offset = 0;
+			buffer.future = executor.submit(buffer);
+
+			pendingBuffers.add(buffer);
+
+			readAheadPosition += bufferSize;
+		}
+	}
+
+	/**
+	 * Discards the current buffer and the buffers read ahead, then runs passed task against the underlying stream.
+	 */
+	protected void discardBuffers(Callable<Void> task) throws IOException {
+		// Pending reads not started yet are skipped. The one in progress completes before the task.
+		for (Buffer buffer : pendingBuffers) {
+			buffer.future.cancel(false);
+		}
+
+		try {
+			await(executor.submit(task));
+		} finally {
+			freeBuffers.addAll(pendingBuffers);
+			pendingBuffers.clear();
+
+			if (currentBuffer != null) {
+				freeBuffers.push(currentBuffer);
+				currentBuffer = null;
+			}
+		}
+	}
+
+	protected Buffer await(Buffer buffer) throws IOException {
+		await(buffer.future);
+
+		return buffer;
+	}
+
+	protected <V> V await(Future<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the underlying stream.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Failed to read the underlying stream.", cause);
+		}
+	}
+
+	/**
+	 * A buffer which fills itself up from the underlying stream.
+	 */
+	protected class Buffer implements Callable<Buffer> {
+
+		final byte[] data;
+
+		/* The position of the first byte within the underlying stream. */
+		long position;
+
+		int length;
+
+		/* The offset of the next byte to be returned. */
+		int offset;
+
+		Future<Buffer> future;
+
+		Buffer(int size) {
+			data = new byte[size];
+		}
+
+		@Override
+		public Buffer call() throws IOException {
+			while (length < data.length) {
+				int read = input.read(data, length, data.length - length);
+				if (read < 0) {
+					break;
+				}
+				length += read;
+			}
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,1110 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.JavaSerialization;
+import org.apache.hadoop.io.serializer.Serialization;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Hadoop {@link Serialization} writing objects in a compact binary form by reflection. Unlike
+ * {@link JavaSerialization} no class descriptors are written per record: the fields of a class are encoded in
+ * declaration order (super class fields first) as variable-length numbers, length-prefixed UTF-8 strings and nested
+ * objects. A class name is written only if a field holds an object of a class different from its declared type (or
+ * the default implementation of a declared collection interface).
+ *
+ * <p>
+ * Only the classes {@link #addClasses(Configuration, Class...) registered} with the configuration are accepted, so
+ * the serialization does not interfere with other serializations accepting the same classes. Objects of registered
+ * classes should have a no-arg constructor (of any visibility) and should not contain cyclic references. Static and
+ * transient fields are skipped, so classes keeping their state in transient fields (other than {@link Date},
+ * {@link BigInteger} and {@link BigDecimal}) are not supported. The encoding depends on the fields of the classes, so
+ * the files should be read with the same class versions they were written with.
+ *
+ * @see FastSequenceFileFormat
+ *
+ * @author Alex Savov
+ */
+public class ReflectiveBinarySerialization extends Configured implements Serialization<Object> {
+
+	/* The names of the classes accepted by this serialization. */
+	public static final String CLASSES = "spring.hadoop.serialization.reflective.classes";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/* Tags written before nullable values. Classes of the table below get a tag of their own. */
+	private static final int NULL = 0;
+	private static final int DECLARED_CLASS = 1;
+	private static final int NAMED_CLASS = 2;
+
+	private static final Class<?>[] TAGGED_CLASSES = { String.class, Boolean.class, Byte.class, Short.class,
+			Character.class, Integer.class, Long.class, Float.class, Double.class, byte[].class, ArrayList.class,
+			HashMap.class, HashSet.class };
+
+	private static final int FIRST_CLASS_TAG = 3;
+
+	/* The codecs of the classes, shared by all serializers and deserializers. */
+	private static final Map<Class<?>, Codec> CODECS = new ConcurrentHashMap<Class<?>, Codec>();
+
+	/* The class loader resolving the classes named in the input of the current deserializer. */
+	private static final ThreadLocal<ClassLoader> CLASS_LOADER = new ThreadLocal<ClassLoader>();
+
+	/**
+	 * Registers passed classes with the configuration, so they are accepted by this serialization.
+	 *
+	 * @param conf The configuration to register the classes with.
+	 * @param classes The classes to register.
+	 */
+	public static void addClasses(Configuration conf, Class<?>... classes) {
+
+		Collection<String> classNames = conf.getStringCollection(CLASSES);
+
+		for (Class<?> clazz : classes) {
+
+			if (!classNames.contains(clazz.getName())) {
+
+				classNames.add(clazz.getName());
+			}
+		}
+
+		conf.setStrings(CLASSES, classNames.toArray(new String[classNames.size()]));
+	}
+
+	/**
+	 * Accepts the registered classes which are not {@link Writable}.
+	 */
+	@Override
+	public boolean accept(Class<?> c) {
+		return getConf() != null && !Writable.class.isAssignableFrom(c)
+				&& getConf().getStringCollection(CLASSES).contains(c.getName());
+	}
+
+	@Override
+	public Serializer<Object> getSerializer(Class<Object> c) {
+		return new ReflectiveBinarySerializer(codecFor(c));
+	}
+
+	@Override
+	public Deserializer<Object> getDeserializer(Class<Object> c) {
+		return new ReflectiveBinaryDeserializer(codecFor(c), getConf().getClassLoader());
+	}
+
+	protected static class ReflectiveBinarySerializer implements Serializer<Object> {
+
+		private final Codec codec;
+
+		private DataOutputStream output;
+
+		ReflectiveBinarySerializer(Codec codec) {
+			this.codec = codec;
+		}
+
+		@Override
+		public void open(OutputStream out) throws IOException {
+			output = out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out);
+		}
+
+		@Override
+		public void serialize(Object object) throws IOException {
+			codec.write(output, object);
+		}
+
+		@Override
+		public void close() throws IOException {
+			output.close();
+		}
+	}
+
+	protected static class ReflectiveBinaryDeserializer implements Deserializer<Object> {
+
+		private final Codec codec;
+
+		private final ClassLoader classLoader;
+
+		private DataInputStream input;
+
+		ReflectiveBinaryDeserializer(Codec codec, ClassLoader classLoader) {
+			this.codec = codec;
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		public void open(InputStream in) throws IOException {
+			input = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+		}
+
+		/**
+		 * Re-populates passed object if not <code>null</code>.
+		 */
+		@Override
+		public Object deserialize(Object object) throws IOException {
+			ClassLoader original = CLASS_LOADER.get();
+
+			CLASS_LOADER.set(classLoader);
+			try {
+				return codec.read(input, object);
+			} finally {
+				CLASS_LOADER.set(original);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return The (cached) codec of passed class.
+	 */
+	protected static Codec codecFor(Class<?> clazz) {
+		Codec codec = CODECS.get(clazz);
+
+		if (codec == null) {
+			codec = createCodec(clazz, clazz);
+
+			CODECS.put(clazz, codec);
+		}
+
+		return codec;
+	}
+
+	/**
+	 * @param clazz The class of the values.
+	 * @param type The generic type of the values, used to resolve the element types of collections and maps.
+	 */
+	protected static Codec createCodec(Class<?> clazz, Type type) {
+		clazz = ClassUtils.resolvePrimitiveIfNecessary(clazz);
+
+		if (clazz == String.class) {
+			return STRING;
+		}
+		if (clazz == Boolean.class) {
+			return BOOLEAN;
+		}
+		if (clazz == Byte.class) {
+			return BYTE;
+		}
+		if (clazz == Short.class) {
+			return SHORT;
+		}
+		if (clazz == Character.class) {
+			return CHARACTER;
+		}
+		if (clazz == Integer.class) {
+			return INTEGER;
+		}
+		if (clazz == Long.class) {
+			return LONG;
+		}
+		if (clazz == Float.class) {
+			return FLOAT;
+		}
+		if (clazz == Double.class) {
+			return DOUBLE;
+		}
+		if (clazz == byte[].class) {
+			return BYTES;
+		}
+		if (clazz == Date.class) {
+			return DATE;
+		}
+		if (clazz == BigInteger.class) {
+			return BIG_INTEGER;
+		}
+		if (clazz == BigDecimal.class) {
+			return BIG_DECIMAL;
+		}
+		if (clazz != Enum.class && Enum.class.isAssignableFrom(clazz)) {
+			return new EnumCodec(enumClass(clazz));
+		}
+		if (clazz.isArray()) {
+			return new ArrayCodec(clazz.getComponentType());
+		}
+		if (Collection.class.isAssignableFrom(clazz)) {
+			return new CollectionCodec(clazz, typeArgument(type, 0));
+		}
+		if (Map.class.isAssignableFrom(clazz)) {
+			return new MapCodec(clazz, typeArgument(type, 0), typeArgument(type, 1));
+		}
+
+		return new ObjectCodec(clazz);
+	}
+
+	/**
+	 * @return The type argument at passed index of a parameterized type; <code>Object</code> if not resolvable.
+	 */
+	private static Type typeArgument(Type type, int index) {
+		if (type instanceof ParameterizedType) {
+			Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+
+			if (index < arguments.length
+					&& (arguments[index] instanceof Class || arguments[index] instanceof ParameterizedType)) {
+				return arguments[index];
+			}
+		}
+
+		return Object.class;
+	}
+
+	/**
+	 * @return The enum declaring the constants of passed class, which is a subclass of the enum for constants with a
+	 * body.
+	 */
+	private static Class<?> enumClass(Class<?> clazz) {
+		while (!clazz.isEnum()) {
+			clazz = clazz.getSuperclass();
+		}
+
+		return clazz;
+	}
+
+	private static Class<?> rawClass(Type type) {
+		return (Class<?>) (type instanceof ParameterizedType ? ((ParameterizedType) type).getRawType() : type);
+	}
+
+	/**
+	 * @return The class instantiated for values of passed declared class; <code>null</code> if it should be named.
+	 */
+	private static Class<?> defaultClass(Class<?> declaredClass) {
+		if (declaredClass.isPrimitive() || declaredClass.isArray() || declaredClass.isEnum()) {
+			return declaredClass;
+		}
+		if (!declaredClass.isInterface() && !Modifier.isAbstract(declaredClass.getModifiers())) {
+			return declaredClass;
+		}
+		if (declaredClass == List.class || declaredClass == Collection.class || declaredClass == Iterable.class) {
+			return ArrayList.class;
+		}
+		if (declaredClass == Set.class) {
+			return HashSet.class;
+		}
+		if (declaredClass == SortedSet.class) {
+			return TreeSet.class;
+		}
+		if (declaredClass == Map.class) {
+			return HashMap.class;
+		}
+		if (declaredClass == SortedMap.class) {
+			return TreeMap.class;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Encodes and decodes non-null values of a class.
+	 */
+	protected static abstract class Codec {
+
+		abstract void write(DataOutput out, Object value) throws IOException;
+
+		/**
+		 * @param reuse An object to re-populate, if supported by the codec. Might be <code>null</code>.
+		 */
+		abstract Object read(DataInput in, Object reuse) throws IOException;
+	}
+
+	/**
+	 * Encodes and decodes nullable values of a declared type prefixing them with a tag of their class.
+	 */
+	protected static class ReferenceCodec extends Codec {
+
+		private final Type declaredType;
+
+		private final Class<?> defaultClass;
+
+		/* Resolved lazily, so self-referencing classes are supported. */
+		private Codec defaultCodec;
+
+		private final Map<Class<?>, Codec> namedCodecs = new ConcurrentHashMap<Class<?>, Codec>();
+
+		private final Map<String, Class<?>> namedClasses = new ConcurrentHashMap<String, Class<?>>();
+
+		ReferenceCodec(Type declaredType) {
+			this.declaredType = declaredType;
+			this.defaultClass = defaultClass(rawClass(declaredType));
+		}
+
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(NULL);
+				return;
+			}
+
+			// Constants with a body are instances of an anonymous subclass of their enum.
+			Class<?> clazz = value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+
+			if (clazz == defaultClass) {
+				out.writeByte(DECLARED_CLASS);
+				getDefaultCodec().write(out, value);
+				return;
+			}
+
+			int tag = classTag(clazz);
+
+			if (tag != NAMED_CLASS) {
+				out.writeByte(tag);
+			} else {
+				out.writeByte(NAMED_CLASS);
+				STRING.write(out, clazz.getName());
+			}
+
+			getNamedCodec(clazz).write(out, value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			int tag = in.readByte();
+
+			switch (tag) {
+			case NULL:
+				return null;
+			case DECLARED_CLASS:
+				return getDefaultCodec().read(in, reuse);
+			case NAMED_CLASS:
+				return getNamedCodec(forName((String) STRING.read(in, null))).read(in, null);
+			default:
+				return getNamedCodec(TAGGED_CLASSES[tag - FIRST_CLASS_TAG]).read(in, null);
+			}
+		}
+
+		private Codec getDefaultCodec() {
+			if (defaultCodec == null) {
+				// Keep the generic type (if any) to resolve element types of collections.
+				defaultCodec = createCodec(defaultClass, declaredType);
+			}
+
+			return defaultCodec;
+		}
+
+		private Codec getNamedCodec(Class<?> clazz) {
+			Codec codec = namedCodecs.get(clazz);
+
+			if (codec == null) {
+				codec = createCodec(clazz, clazz);
+
+				namedCodecs.put(clazz, codec);
+			}
+
+			return codec;
+		}
+
+		private Class<?> forName(String className) throws IOException {
+			Class<?> clazz = namedClasses.get(className);
+
+			if (clazz == null) {
+				ClassLoader classLoader = CLASS_LOADER.get();
+
+				try {
+					clazz = ClassUtils.forName(className, classLoader != null ? classLoader : ClassUtils
+							.getDefaultClassLoader());
+				} catch (ClassNotFoundException e) {
+					throw new IOException("Cannot resolve class " + className, e);
+				}
+
+				namedClasses.put(className, clazz);
+			}
+
+			return clazz;
+		}
+
+		private static int classTag(Class<?> clazz) {
+			for (int i = 0; i < TAGGED_CLASSES.length; i++) {
+				if (TAGGED_CLASSES[i] == clazz) {
+					return FIRST_CLASS_TAG + i;
+				}
+			}
+
+			return NAMED_CLASS;
+		}
+	}
+
+	/**
+	 * Encodes the (non-static, non-transient) fields of an object in declaration order, super class fields first.
+	 */
+	protected static class ObjectCodec extends Codec {
+
+		private final Constructor<?> constructor;
+
+		private final List<FieldCodec> fieldCodecs = new ArrayList<FieldCodec>();
+
+		ObjectCodec(Class<?> clazz) {
+			try {
+				constructor = clazz.getDeclaredConstructor();
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("A no-arg constructor is required to deserialize " + clazz, e);
+			}
+
+			ReflectionUtils.makeAccessible(constructor);
+
+			List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+
+			for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+				hierarchy.add(0, c);
+			}
+
+			for (Class<?> c : hierarchy) {
+				for (Field field : c.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())
+							&& !field.isSynthetic()) {
+
+						ReflectionUtils.makeAccessible(field);
+
+						fieldCodecs.add(FieldCodec.create(field));
+					}
+				}
+			}
+		}
+
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			for (FieldCodec fieldCodec : fieldCodecs) {
+				fieldCodec.write(out, value);
+			}
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			Object object = reuse != null && reuse.getClass() == constructor.getDeclaringClass() ? reuse
+					: newInstance();
+
+			for (FieldCodec fieldCodec : fieldCodecs) {
+				fieldCodec.read(in, object);
+			}
+
+			return object;
+		}
+
+		private Object newInstance() throws IOException {
+			try {
+				return constructor.newInstance();
+			} catch (Exception e) {
+				throw new IOException("Cannot instantiate " + constructor.getDeclaringClass(), e);
+			}
+		}
+	}
+
+	/**
+	 * Encodes and decodes a field of an object. Primitive fields are accessed without boxing.
+	 */
+	protected static abstract class FieldCodec {
+
+		protected final Field field;
+
+		FieldCodec(Field field) {
+			this.field = field;
+		}
+
+		abstract void write(DataOutput out, Object object) throws IOException;
+
+		abstract void read(DataInput in, Object object) throws IOException;
+
+		static FieldCodec create(Field field) {
+			Class<?> type = field.getType();
+
+			if (type == int.class) {
+				return new FieldCodec(field) {
+					void write(DataOutput out, Object object) throws IOException {
+						WritableUtils.writeVInt(out, getInt(object));
+					}
+
+					void read(DataInput in, Object object) throws IOException {
+						setInt(object, WritableUtils.readVInt(in));
+					}
+				};
+			}
+			if (type == long.class) {
+				return new FieldCodec(field) {
+					void write(DataOutput out, Object object) throws IOException {
+						WritableUtils.writeVLong(out, getLong(object));
+					}
+
+					void read(DataInput in, Object object) throws IOException {
+						setLong(object, WritableUtils.readVLong(in));
+					}
+				};
+			}
+			if (type == double.class) {
+				return new FieldCodec(field) {
+					void write(DataOutput out, Object object) throws IOException {
+						out.writeDouble(getDouble(object));
+					}
+
+					void read(DataInput in, Object object) throws IOException {
+						setDouble(object, in.readDouble());
+					}
+				};
+			}
+			if (type == boolean.class) {
+				return new FieldCodec(field) {
+					void write(DataOutput out, Object object) throws IOException {
+						out.writeBoolean(getBoolean(object));
+					}
+
+					void read(DataInput in, Object object) throws IOException {
+						setBoolean(object, in.readBoolean());
+					}
+				};
+			}
+			if (type.isPrimitive()) {
+				// The less common primitives (byte, short, char, float) are boxed.
+				final Codec codec = createCodec(type, type);
+
+				return new FieldCodec(field) {
+					void write(DataOutput out, Object object) throws IOException {
+						codec.write(out, ReflectionUtils.getField(field, object));
+					}
+
+					void read(DataInput in, Object object) throws IOException {
+						ReflectionUtils.setField(field, object, codec.read(in, null));
+					}
+				};
+			}
+
+			final Codec codec = new ReferenceCodec(field.getGenericType());
+
+			return new FieldCodec(field) {
+				void write(DataOutput out, Object object) throws IOException {
+					codec.write(out, ReflectionUtils.getField(field, object));
+				}
+
+				void read(DataInput in, Object object) throws IOException {
+					ReflectionUtils.setField(field, object, codec.read(in, null));
+				}
+			};
+		}
+
+		int getInt(Object object) {
+			try {
+				return field.getInt(object);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void setInt(Object object, int value) {
+			try {
+				field.setInt(object, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		long getLong(Object object) {
+			try {
+				return field.getLong(object);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void setLong(Object object, long value) {
+			try {
+				field.setLong(object, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		double getDouble(Object object) {
+			try {
+				return field.getDouble(object);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void setDouble(Object object, double value) {
+			try {
+				field.setDouble(object, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		boolean getBoolean(Object object) {
+			try {
+				return field.getBoolean(object);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void setBoolean(Object object, boolean value) {
+			try {
+				field.setBoolean(object, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * @return The no-arg constructor of passed class; the one of the fallback class if passed class is abstract or has
+	 * no such constructor (such as unmodifiable collections).
+	 */
+	private static Constructor<?> noArgConstructor(Class<?> clazz, Class<?> fallbackClass) {
+		Constructor<?> constructor;
+
+		try {
+			constructor = clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()) ? fallbackClass
+					.getDeclaredConstructor() : clazz.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			return noArgConstructor(fallbackClass, fallbackClass);
+		}
+
+		ReflectionUtils.makeAccessible(constructor);
+
+		return constructor;
+	}
+
+	protected static class CollectionCodec extends Codec {
+
+		private final Constructor<?> constructor;
+
+		private final Codec elementCodec;
+
+		CollectionCodec(Class<?> clazz, Type elementType) {
+			Class<?> fallbackClass = SortedSet.class.isAssignableFrom(clazz) ? TreeSet.class : Set.class
+					.isAssignableFrom(clazz) ? LinkedHashSet.class : ArrayList.class;
+
+			constructor = noArgConstructor(clazz, fallbackClass);
+
+			elementCodec = new ReferenceCodec(elementType);
+		}
+
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			Collection<?> collection = (Collection<?>) value;
+
+			WritableUtils.writeVInt(out, collection.size());
+
+			for (Object element : collection) {
+				elementCodec.write(out, element);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			int size = WritableUtils.readVInt(in);
+
+			Collection<Object> collection;
+			try {
+				collection = (Collection<Object>) constructor.newInstance();
+			} catch (Exception e) {
+				throw new IOException("Cannot instantiate " + constructor.getDeclaringClass(), e);
+			}
+
+			for (int i = 0; i < size; i++) {
+				collection.add(elementCodec.read(in, null));
+			}
+
+			return collection;
+		}
+	}
+
+	protected static class MapCodec extends Codec {
+
+		private final Constructor<?> constructor;
+
+		private final Codec keyCodec;
+
+		private final Codec valueCodec;
+
+		MapCodec(Class<?> clazz, Type keyType, Type valueType) {
+			Class<?> fallbackClass = SortedMap.class.isAssignableFrom(clazz) ? TreeMap.class : LinkedHashMap.class;
+
+			constructor = noArgConstructor(clazz, fallbackClass);
+
+			keyCodec = new ReferenceCodec(keyType);
+			valueCodec = new ReferenceCodec(valueType);
+		}
+
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			Map<?, ?> map = (Map<?, ?>) value;
+
+			WritableUtils.writeVInt(out, map.size());
+
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				keyCodec.write(out, entry.getKey());
+				valueCodec.write(out, entry.getValue());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			int size = WritableUtils.readVInt(in);
+
+			Map<Object, Object> map;
+			try {
+				map = (Map<Object, Object>) constructor.newInstance();
+			} catch (Exception e) {
+				throw new IOException("Cannot instantiate " + constructor.getDeclaringClass(), e);
+			}
+
+			for (int i = 0; i < size; i++) {
+				map.put(keyCodec.read(in, null), valueCodec.read(in, null));
+			}
+
+			return map;
+		}
+	}
+
+	protected static class ArrayCodec extends Codec {
+
+		private final Class<?> componentType;
+
+		private final Codec componentCodec;
+
+		ArrayCodec(Class<?> componentType) {
+			this.componentType = componentType;
+			this.componentCodec = componentType.isPrimitive() ? createCodec(componentType, componentType)
+					: new ReferenceCodec(componentType);
+		}
+
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			int length = Array.getLength(value);
+
+			WritableUtils.writeVInt(out, length);
+
+			for (int i = 0; i < length; i++) {
+				componentCodec.write(out, Array.get(value, i));
+			}
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			int length = WritableUtils.readVInt(in);
+
+			Object array = Array.newInstance(componentType, length);
+
+			for (int i = 0; i < length; i++) {
+				Array.set(array, i, componentCodec.read(in, null));
+			}
+
+			return array;
+		}
+	}
+
+	protected static class EnumCodec extends Codec {
+
+		private final Object[] constants;
+
+		EnumCodec(Class<?> enumClass) {
+			constants = enumClass.getEnumConstants();
+		}
+
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			WritableUtils.writeVInt(out, ((Enum<?>) value).ordinal());
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return constants[WritableUtils.readVInt(in)];
+		}
+	}
+
+	private static final Codec STRING = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			String string = (String) value;
+
+			StringBuffers buffers = STRING_BUFFERS.get();
+
+			char[] chars = buffers.chars(string.length());
+			string.getChars(0, string.length(), chars, 0);
+
+			ByteBuffer bytes = buffers.bytes((int) (string.length() * buffers.encoder.maxBytesPerChar()));
+
+			buffers.encoder.reset();
+			buffers.encoder.encode(CharBuffer.wrap(chars, 0, string.length()), bytes, true);
+			buffers.encoder.flush(bytes);
+
+			WritableUtils.writeVInt(out, bytes.position());
+			out.write(bytes.array(), 0, bytes.position());
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			int length = WritableUtils.readVInt(in);
+
+			StringBuffers buffers = STRING_BUFFERS.get();
+
+			ByteBuffer bytes = buffers.bytes(length);
+			in.readFully(bytes.array(), 0, length);
+			bytes.limit(length);
+
+			// UTF-8 decodes to at most one char per byte.
+			CharBuffer chars = CharBuffer.wrap(buffers.chars(length));
+
+			buffers.decoder.reset();
+			buffers.decoder.decode(bytes, chars, true);
+			buffers.decoder.flush(chars);
+
+			return new String(chars.array(), 0, chars.position());
+		}
+	};
+
+	/* The buffers of the strings encoded and decoded by the current thread. */
+	private static final ThreadLocal<StringBuffers> STRING_BUFFERS = new ThreadLocal<StringBuffers>() {
+		@Override
+		protected StringBuffers initialValue() {
+			return new StringBuffers();
+		}
+	};
+
+	/**
+	 * Reusable buffers (growing as needed) and coders of UTF-8 strings, so no arrays are allocated per string but the
+	 * string itself.
+	 */
+	private static class StringBuffers {
+
+		final CharsetEncoder encoder = UTF8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		final CharsetDecoder decoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		private char[] chars = new char[256];
+
+		private ByteBuffer bytes = ByteBuffer.allocate(1024);
+
+		char[] chars(int capacity) {
+			if (chars.length < capacity) {
+				chars = new char[Math.max(capacity, chars.length * 2)];
+			}
+
+			return chars;
+		}
+
+		/**
+		 * @return The cleared byte buffer of at least passed capacity.
+		 */
+		ByteBuffer bytes(int capacity) {
+			if (bytes.capacity() < capacity) {
+				bytes = ByteBuffer.allocate(Math.max(capacity, bytes.capacity() * 2));
+			}
+
+			bytes.clear();
+
+			return bytes;
+		}
+	}
+
+	private static final Codec BYTES = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			byte[] bytes = (byte[]) value;
+
+			WritableUtils.writeVInt(out, bytes.length);
+			out.write(bytes);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			byte[] bytes = new byte[WritableUtils.readVInt(in)];
+
+			in.readFully(bytes);
+
+			return bytes;
+		}
+	};
+
+	private static final Codec DATE = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			WritableUtils.writeVLong(out, ((Date) value).getTime());
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return new Date(WritableUtils.readVLong(in));
+		}
+	};
+
+	private static final Codec BIG_INTEGER = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			BYTES.write(out, ((BigInteger) value).toByteArray());
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return new BigInteger((byte[]) BYTES.read(in, null));
+		}
+	};
+
+	private static final Codec BIG_DECIMAL = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			BIG_INTEGER.write(out, ((BigDecimal) value).unscaledValue());
+			WritableUtils.writeVInt(out, ((BigDecimal) value).scale());
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return new BigDecimal((BigInteger) BIG_INTEGER.read(in, null), WritableUtils.readVInt(in));
+		}
+	};
+
+	private static final Codec BOOLEAN = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			out.writeBoolean((Boolean) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return in.readBoolean();
+		}
+	};
+
+	private static final Codec BYTE = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			out.writeByte((Byte) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return in.readByte();
+		}
+	};
+
+	private static final Codec SHORT = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			WritableUtils.writeVInt(out, (Short) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return (short) WritableUtils.readVInt(in);
+		}
+	};
+
+	private static final Codec CHARACTER = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			WritableUtils.writeVInt(out, (Character) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return (char) WritableUtils.readVInt(in);
+		}
+	};
+
+	private static final Codec INTEGER = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			WritableUtils.writeVInt(out, (Integer) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return WritableUtils.readVInt(in);
+		}
+	};
+
+	private static final Codec LONG = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			WritableUtils.writeVLong(out, (Long) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return WritableUtils.readVLong(in);
+		}
+	};
+
+	private static final Codec FLOAT = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			out.writeFloat((Float) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return in.readFloat();
+		}
+	};
+
+	private static final Codec DOUBLE = new Codec() {
+		@Override
+		void write(DataOutput out, Object value) throws IOException {
+			out.writeDouble((Double) value);
+		}
+
+		@Override
+		Object read(DataInput in, Object reuse) throws IOException {
+			return in.readDouble();
+		}
+	};
+
+}
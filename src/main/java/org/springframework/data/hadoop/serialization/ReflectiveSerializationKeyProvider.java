@@ -16,24 +16,32 @@
 package org.springframework.data.hadoop.serialization;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import org.springframework.core.MethodParameter;
 import org.springframework.core.convert.TypeDescriptor;
 import org.springframework.data.hadoop.HadoopException;
-import org.springframework.expression.AccessException;
 import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
 import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * Reflective implementation of {@link SerializationKeyProvider} returning specific object property as object key. A
  * property is accessible through a getter method or a field of the object.
  * 
+ * <p>
+ * The getter method (or the field) is resolved once, upon construction, so providing a key involves neither property
+ * lookup nor allocation (besides boxing a primitive key). Once invoked often enough the JVM replaces reflective calls
+ * with generated accessors.
+ * 
  * @author Alex Savov
  */
 public class ReflectiveSerializationKeyProvider extends ReflectivePropertyAccessor implements SerializationKeyProvider {
 
+	private static final Object[] NO_ARGS = new Object[0];
+
 	/* The name of the property (either getter method or field) to use as key. */
 	private final String propertyName;
 
@@ -43,6 +51,13 @@ public class ReflectiveSerializationKeyProvider extends ReflectivePropertyAccess
 	/* A metadata for the key property (either getter method or field). */
 	private final TypeDescriptor keyDescriptor;
 
+	/* The key property: either getter method or field. */
+	private final Method getter;
+	private final Field field;
+
+	/* The class of the last object a key was provided for. Objects of that class are not checked again. */
+	private volatile Class<?> lastObjectClass;
+
 	/**
 	 * @param objectClass The class of the object for which a key should be provided.
 	 * @param propertyName The name of the property (either getter method or field) to use as key.
@@ -50,14 +65,19 @@ public class ReflectiveSerializationKeyProvider extends ReflectivePropertyAccess
 	public ReflectiveSerializationKeyProvider(Class<?> objectClass, String propertyName) {
 
 		// Try to resolve from getter...
-		Method getter = findGetterForProperty(propertyName, objectClass, false);
+		getter = findGetterForProperty(propertyName, objectClass, false);
 		if (getter != null) {
 			keyDescriptor = new TypeDescriptor(new MethodParameter(getter, -1));
+			field = null;
+
+			ReflectionUtils.makeAccessible(getter);
 		} else {
 			// Try to resolve from field
-			Field field = findField(propertyName, objectClass, false);
+			field = findField(propertyName, objectClass, false);
 			if (field != null) {
 				keyDescriptor = new TypeDescriptor(field);
+
+				ReflectionUtils.makeAccessible(field);
 			} else {
 				throw new HadoopException("Neither getter method nor field found for property '" + propertyName
 						+ "' of '" + objectClass + "'.");
@@ -72,12 +92,21 @@ public class ReflectiveSerializationKeyProvider extends ReflectivePropertyAccess
 	 * @return The value of the key property, which is either getter method or field on the object.
 	 */
 	public Object getKey(Object object) {
-		Assert.notNull(getKeyClass(object.getClass()),
-				"This ReflectiveSerializationKeyProvider provides keys only for objects of " + objectClass);
+		Class<?> clazz = object.getClass();
+
+		if (clazz != lastObjectClass) {
+			Assert.notNull(getKeyClass(clazz),
+					"This ReflectiveSerializationKeyProvider provides keys only for objects of " + objectClass);
+
+			lastObjectClass = clazz;
+		}
 
 		try {
-			return read(null, object, propertyName).getValue();
-		} catch (AccessException e) {
+			return getter != null ? getter.invoke(object, NO_ARGS) : field.get(object);
+		} catch (InvocationTargetException e) {
+			throw new HadoopException("Cannot read property '" + propertyName + "' of " + clazz + ": "
+					+ e.getTargetException().getMessage(), e.getTargetException());
+		} catch (IllegalAccessException e) {
 			throw new HadoopException(e.getMessage(), e);
 		}
 	}
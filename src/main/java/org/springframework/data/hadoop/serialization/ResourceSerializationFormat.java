@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.compress.CodecPool;
@@ -39,10 +40,17 @@ import org.springframework.util.Assert;
  * An implementation of {@link SerializationFormat} which serializes Spring {@link Resource}s to HDFS. The resources are
  * written to a single HDFS destination and are read as a single aggregated resource.
  * 
+ * <p>
+ * A compression alias prefixed with {@value #PARALLEL_COMPRESSION_PREFIX} (such as <code>parallel-gzip</code>)
+ * compresses the output on {@link #setCompressionParallelism(int) several} threads by means of
+ * {@link ParallelCompressionOutputStream}. The output is readable by the codec of the alias without the prefix.
+ * 
  * @author Alex Savov
  */
 public class ResourceSerializationFormat extends SerializationFormatSupport<Resource> implements InitializingBean {
 
+	public static final String PARALLEL_COMPRESSION_PREFIX = "parallel-";
+
 	private static final String DEFAULT_LINE_SEPARATOR = System.getProperty("line.separator");
 
 	/* This property is publicly configurable. */
@@ -51,6 +59,12 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 	/* This property is publicly configurable. */
 	private String resourceSeparator = DEFAULT_LINE_SEPARATOR;
 
+	/* This property is publicly configurable. */
+	private int compressionParallelism = Runtime.getRuntime().availableProcessors();
+
+	/* This property is publicly configurable. */
+	private int compressionBlockSize = ParallelCompressionOutputStream.DEFAULT_BLOCK_SIZE;
+
 	/**
 	 * Sets the Hadoop configuration for this <code>SerializationFormat</code>.
 	 * 
@@ -78,9 +92,60 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 		return resourceSeparator;
 	}
 
+	/**
+	 * Sets the number of threads compressing the output in case of a {@value #PARALLEL_COMPRESSION_PREFIX} compression
+	 * alias. Defaults to the number of available processors.
+	 * 
+	 * @param compressionParallelism The number of compression threads.
+	 */
+	public void setCompressionParallelism(int compressionParallelism) {
+		this.compressionParallelism = compressionParallelism;
+	}
+
+	protected int getCompressionParallelism() {
+		return compressionParallelism;
+	}
+
+	/**
+	 * Sets the number of uncompressed bytes compressed as an independent block in case of a
+	 * {@value #PARALLEL_COMPRESSION_PREFIX} compression alias. Defaults to 1 MB.
+	 * 
+	 * @param compressionBlockSize The compression block size.
+	 */
+	public void setCompressionBlockSize(int compressionBlockSize) {
+		this.compressionBlockSize = compressionBlockSize;
+	}
+
+	protected int getCompressionBlockSize() {
+		return compressionBlockSize;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		Assert.notNull(getConfiguration(), "A non-null Hadoop configuration is required.");
+		Assert.isTrue(getCompressionParallelism() > 0, "The compression parallelism must be positive.");
+		Assert.isTrue(getCompressionBlockSize() > 0, "The compression block size must be positive.");
+	}
+
+	/**
+	 * @return <code>true</code> if the compression alias is prefixed with {@value #PARALLEL_COMPRESSION_PREFIX}.
+	 */
+	protected boolean isParallelCompression() {
+		return getCompressionAlias() != null && getCompressionAlias().startsWith(PARALLEL_COMPRESSION_PREFIX);
+	}
+
+	/**
+	 * @return The codec of the compression alias (without {@value #PARALLEL_COMPRESSION_PREFIX} prefix) or
+	 * <code>null</code> if the alias is not specified.
+	 */
+	protected CompressionCodec getCompressionCodec() {
+		String compressionAlias = getCompressionAlias();
+
+		if (isParallelCompression()) {
+			compressionAlias = compressionAlias.substring(PARALLEL_COMPRESSION_PREFIX.length());
+		}
+
+		return CompressionUtils.getHadoopCompression(getConfiguration(), compressionAlias);
 	}
 
 	/**
@@ -95,13 +160,24 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 
 			private InputStream resourceSeparatorInputStream;
 
+			/* Counts the bytes written before compression. */
+			private CountingOutputStream uncompressedStream;
+
 			@Override
 			protected Closeable doOpen() throws IOException {
 
 				resourceSeparatorInputStream = null;
 
-				CompressionCodec codec = CompressionUtils.getHadoopCompression(getConfiguration(),
-						getCompressionAlias());
+				Closeable closeable = openCompression();
+
+				uncompressedStream = new CountingOutputStream(outputStream);
+
+				return closeable;
+			}
+
+			protected Closeable openCompression() throws IOException {
+
+				CompressionCodec codec = getCompressionCodec();
 
 				// If a compression is not specified and if passed stream does have compression capabilities...
 				if (codec == null || CompressionOutputStream.class.isInstance(outputStream)) {
@@ -109,6 +185,13 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 					return outputStream;
 				}
 
+				if (isParallelCompression()) {
+					outputStream = new ParallelCompressionOutputStream(outputStream, codec,
+							getCompressionParallelism(), getCompressionBlockSize());
+
+					return outputStream;
+				}
+
 				// Eventually re-use Compressor from underlying CodecPool
 				final Compressor compressor = CodecPool.getCompressor(codec);
 
@@ -135,7 +218,7 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 					inputStream = source.getInputStream();
 
 					// Write source to HDFS destination
-					copyBytes(inputStream, outputStream, getConfiguration(), /* close */false);
+					copyBytes(inputStream, uncompressedStream, getConfiguration(), /* close */false);
 
 				} finally {
 					closeStream(inputStream);
@@ -159,7 +242,12 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 				resourceSeparatorInputStream.reset();
 
 				// Write resource separator to HDFS destination
-				copyBytes(resourceSeparatorInputStream, outputStream, getConfiguration(), /* close */false);
+				copyBytes(resourceSeparatorInputStream, uncompressedStream, getConfiguration(), /* close */false);
+			}
+
+			@Override
+			protected long getUncompressedBytes() {
+				return uncompressedStream != null ? uncompressedStream.getByteCount() : -1;
 			}
 		};
 	}
@@ -201,7 +289,7 @@ public class ResourceSerializationFormat extends SerializationFormatSupport<Reso
 	 */
 	@Override
 	protected String getDefaultExtension() {
-		CompressionCodec codec = CompressionUtils.getHadoopCompression(getConfiguration(), getCompressionAlias());
+		CompressionCodec codec = getCompressionCodec();
 
 		return codec != null ? codec.getDefaultExtension() : "";
 	}
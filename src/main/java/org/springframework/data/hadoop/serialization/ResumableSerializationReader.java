@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+
+/**
+ * A {@link SerializationReader} which could resume the read from a position it has reported, such as upon the restart
+ * of a Spring Batch step. The position is the one of the last sync point (an Avro block, a SequenceFile block or
+ * record) passed plus the number of objects read after it, so the objects preceding it are not decoded again.
+ *
+ * @author Alex Savov
+ */
+public interface ResumableSerializationReader<T> extends SerializationReader<T> {
+
+	/**
+	 * @return The byte position of the sync point preceding the next object to read; <code>-1</code> if no object has
+	 * been read yet.
+	 */
+	long getSyncPosition();
+
+	/**
+	 * @return The number of objects read after the {@link #getSyncPosition() sync position}.
+	 */
+	long getObjectsSinceSync();
+
+	/**
+	 * Seeks to passed sync position and skips passed number of objects, so the next read returns the object that
+	 * followed them. The reader should be of the same resource (and byte range) that reported the position.
+	 */
+	void resume(long syncPosition, long objectsSinceSync) throws IOException;
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.springframework.data.hadoop.fs.HdfsResource;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+import org.springframework.data.hadoop.util.PathUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link SerializationWriter} which spreads the objects written across multiple HDFS files. It rolls to a new file
+ * once the current one reaches a {@link #setMaxBytes(long) size}, {@link #setMaxRecords(long) record count} or
+ * {@link #setMaxTime(long) age} threshold - whichever comes first.
+ *
+ * <p>
+ * The files are placed in the directory generated by {@link PathUtils#format(String, Date)} from the
+ * {@link #setPathFormat(String) path format} (at the time a file is opened) and are named
+ * <code>&lt;baseName&gt;-&lt;sequence&gt;&lt;extension&gt;</code>, such as <code>part-00003.avro</code>. Every file is
+ * written under a temporary name (prefixed with <code>_</code> so it is ignored by MapReduce input formats) and renamed
+ * to its final name once closed, so downstream consumers never see partially written files.
+ *
+ * <p>
+ * Files are opened lazily on first write, so no empty files are created.
+ *
+ * @author Alex Savov
+ */
+public class RollingSerializationWriter<T> implements SerializationWriter<T> {
+
+	protected static final String IN_PROGRESS_PREFIX = "_";
+	protected static final String IN_PROGRESS_SUFFIX = ".tmp";
+
+	protected final HdfsResourceLoader hdfsResourceLoader;
+
+	protected final SerializationFormat<T> serializationFormat;
+
+	/* This property is publicly configurable. */
+	private String pathFormat;
+
+	/* This property is publicly configurable. */
+	private String baseName = "part";
+
+	/* This property is publicly configurable. */
+	private long maxBytes = Long.MAX_VALUE;
+
+	/* This property is publicly configurable. */
+	private long maxRecords = Long.MAX_VALUE;
+
+	/* This property is publicly configurable. */
+	private long maxTime = Long.MAX_VALUE;
+
+	/* The state of the file currently written. */
+	private SerializationWriter<T> writer;
+
+	private FSDataOutputStream output;
+
+	private String inProgressLocation;
+
+	private String location;
+
+	private long records;
+
+	private long openedAt;
+
+	private int sequence = 0;
+
+	private final List<String> rolledLocations = new ArrayList<String>();
+
+	/**
+	 * @param hdfsResourceLoader A non-null HDFS resource loader to use.
+	 * @param serializationFormat A non-null serialization format to write the files.
+	 */
+	public RollingSerializationWriter(HdfsResourceLoader hdfsResourceLoader, SerializationFormat<T> serializationFormat) {
+		Assert.notNull(hdfsResourceLoader, "A non-null HDFS resource loader is required.");
+		Assert.notNull(serializationFormat, "A non-null SerializationFormat is required.");
+
+		this.hdfsResourceLoader = hdfsResourceLoader;
+		this.serializationFormat = serializationFormat;
+	}
+
+	/**
+	 * Sets the {@link PathUtils} format of the directory the files are placed in, such as
+	 * <code>/data/events/%1$tY/%1$tm/%1$td</code>. Required.
+	 *
+	 * @param pathFormat The directory path format.
+	 */
+	public void setPathFormat(String pathFormat) {
+		this.pathFormat = pathFormat;
+	}
+
+	/**
+	 * Sets the name of the files (without the sequence number and the extension). Defaults to <code>part</code>.
+	 *
+	 * @param baseName The base name of the files.
+	 */
+	public void setBaseName(String baseName) {
+		this.baseName = baseName;
+	}
+
+	/**
+	 * Rolls to a new file once the current one reaches that number of bytes. As serialization formats buffer data
+	 * internally (such as Avro blocks) the actual file size is slightly bigger.
+	 *
+	 * @param maxBytes The max number of bytes per file.
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Rolls to a new file once the current one reaches that number of objects.
+	 *
+	 * @param maxRecords The max number of objects per file.
+	 */
+	public void setMaxRecords(long maxRecords) {
+		this.maxRecords = maxRecords;
+	}
+
+	/**
+	 * Rolls to a new file once the current one is older than that number of milliseconds. The age is checked on every
+	 * write, so an idle file is rolled on the next write (or close).
+	 *
+	 * @param maxTime The max age of a file in milliseconds.
+	 */
+	public void setMaxTime(long maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * @return The final locations of the files rolled so far, in the order they were written.
+	 */
+	public List<String> getRolledLocations() {
+		return Collections.unmodifiableList(rolledLocations);
+	}
+
+	@Override
+	public void write(T object) throws IOException {
+		if (writer == null) {
+			openFile();
+		}
+
+		writer.write(object);
+
+		records++;
+
+		if (records >= maxRecords || output.getPos() >= maxBytes
+				|| System.currentTimeMillis() - openedAt >= maxTime) {
+			rollFile();
+		}
+	}
+
+	/**
+	 * Closes and renames the file currently written, if any.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (writer != null) {
+			rollFile();
+		}
+	}
+
+	protected void openFile() throws IOException {
+		Assert.hasText(pathFormat, "A non-empty path format is required.");
+		Assert.hasText(baseName, "A non-empty base name is required.");
+
+		String directory = PathUtils.format(pathFormat, new Date());
+
+		FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+		// Never overwrite files rolled by a previous run.
+		do {
+			String fileName = baseName + "-" + String.format("%05d", sequence++) + serializationFormat.getExtension();
+
+			location = directory + fileName;
+			inProgressLocation = directory + IN_PROGRESS_PREFIX + fileName + IN_PROGRESS_SUFFIX;
+		} while (fs.exists(new Path(location)));
+
+		OutputStream outputStream = ((HdfsResource) hdfsResourceLoader.getResource(inProgressLocation))
+				.getOutputStream();
+
+		Assert.isInstanceOf(FSDataOutputStream.class, outputStream);
+
+		output = (FSDataOutputStream) outputStream;
+
+		// Sidecar files (if any) are named after the final location of the file.
+		if (serializationFormat instanceof LocationAwareSerializationFormat) {
+			writer = ((LocationAwareSerializationFormat<T>) serializationFormat).getWriter(output, location);
+		} else {
+			writer = serializationFormat.getWriter(output);
+		}
+
+		records = 0;
+		openedAt = System.currentTimeMillis();
+	}
+
+	protected void rollFile() throws IOException {
+		try {
+			writer.close();
+		} finally {
+			writer = null;
+			output = null;
+		}
+
+		FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+		if (!fs.rename(new Path(inProgressLocation), new Path(location))) {
+			throw new IOException("Cannot rename '" + inProgressLocation + "' to '" + location + "'.");
+		}
+
+		rolledLocations.add(location);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + StringUtils.quote(pathFormat) + ", " + rolledLocations.size()
+				+ " files rolled]";
+	}
+
+}
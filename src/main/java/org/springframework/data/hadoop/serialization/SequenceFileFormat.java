@@ -55,38 +55,46 @@ public class SequenceFileFormat<T> extends AbstractSequenceFileFormat<T> {
 	 */
 	@Override
 	protected SerializationWriterSupport createWriter(OutputStream output) {
+		return new SequenceFileWriter(output);
+	}
 
-		return new AbstractSequenceFileWriter(output) {
-
-			@Override
-			protected Class<?> getKeyClass() {
-				return getSerializationKeyProvider().getKeyClass(objectsClass);
-			}
-
-			@Override
-			protected Object getKey(T object) {
-				return getSerializationKeyProvider().getKey(object);
-			}
-
-			@Override
-			protected Class<?> getValueClass() {
-				return objectsClass;
-			}
-
-			@Override
-			protected Object getValue(T object) {
-				return object;
-			}
-		};
+	/**
+	 * Writes the objects as values and their keys (as provided by {@link SerializationKeyProvider}) as keys.
+	 */
+	protected class SequenceFileWriter extends AbstractSequenceFileWriter {
+
+		protected SequenceFileWriter(OutputStream output) {
+			super(output);
+		}
+
+		@Override
+		protected Class<?> getKeyClass() {
+			return getSerializationKeyProvider().getKeyClass(objectsClass);
+		}
+
+		@Override
+		protected Object getKey(T object) {
+			return getSerializationKeyProvider().getKey(object);
+		}
+
+		@Override
+		protected Class<?> getValueClass() {
+			return objectsClass;
+		}
+
+		@Override
+		protected Object getValue(T object) {
+			return object;
+		}
 	}
 
 	/**
 	 * Sequence file serialization format reader.
 	 */
 	@Override
-	protected SerializationReaderSupport createReader(String location) {
+	protected SerializationReaderSupport createReader(String location, long start, long end) {
 
-		return new AbstractSequenceFileReader(location) {
+		return new AbstractSequenceFileReader(location, start, end) {
 
 			@SuppressWarnings("unchecked")
 			@Override
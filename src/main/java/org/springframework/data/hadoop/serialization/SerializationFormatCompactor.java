@@ -0,0 +1,570 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import static org.apache.hadoop.io.IOUtils.closeStream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.ContextResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
+import org.springframework.util.Assert;
+
+/**
+ * Rewrites many small HDFS files (such as the output of a multi-resource item writer) into few large ones through the
+ * same {@link SerializationFormat}. The files matching the {@link #setLocationPattern(String) location pattern} which
+ * are smaller than the {@link #setTargetSize(long) target size} are compacted per directory; the compacted files are
+ * placed in the directory of their sources and are named
+ * <code>compacted-&lt;timestamp&gt;-&lt;group&gt;-&lt;sequence&gt;</code>.
+ *
+ * <p>
+ * The sources are read by a pool of {@link #setReaderThreads(int) reader threads}, each of them reading a whole file,
+ * while a single thread writes their objects (in the order of the files) to a staging directory under the
+ * {@link #setWorkDirectory(String) work directory}. Then a manifest listing the sources and the compacted files is
+ * written, which is the commit point of the compaction: the compacted files are moved to their directory and the
+ * sources are deleted. A compaction which crashed before its manifest is written is rolled back (its staging directory
+ * is deleted) and a compaction which crashed after that is rolled forward on the next {@link #compact()} run. Thus the
+ * objects are never lost nor duplicated, although a reader listing the directory in the middle of the swap might see
+ * both a compacted file and some of its sources.
+ *
+ * <p>
+ * The sidecar files written next to a source (such as its Bloom filter or index) are deleted along with it; they are
+ * never compacted themselves. The work directory must not overlap the directories matched by the location pattern.
+ *
+ * <p>
+ * The compactor must never run over files a writer is still writing to: compacting them loses the objects written
+ * after they were read. Files modified within the {@link #setMinimumAge(long) minimum age} are skipped, which guards
+ * against writers that have just been active but not against long-lived ones, as HDFS updates the modification time
+ * of a file being written only as its blocks complete. Writers should rather write under hidden names (such as the
+ * {@link RollingSerializationWriter}) or to directories the location pattern does not match until they are done.
+ *
+ * <p>
+ * Every source file is held in memory while read, so the files compacted should be small indeed. The format should
+ * not be in record-reuse mode.
+ *
+ * @author Alex Savov
+ */
+public class SerializationFormatCompactor<T> implements InitializingBean {
+
+	public static final long DEFAULT_TARGET_SIZE = 128 * 1024 * 1024;
+
+	public static final long DEFAULT_MINIMUM_AGE = 60 * 1000;
+
+	protected static final String BASE_NAME = "compacted";
+
+	protected static final String MANIFEST_SUFFIX = ".manifest";
+
+	protected static final String IN_PROGRESS_SUFFIX = ".tmp";
+
+	private static final String SOURCE_ENTRY = "source";
+
+	private static final String OUTPUT_ENTRY = "output";
+
+	/* The extensions of the sidecar files written by formats next to a file. */
+	private static final String[] SIDECAR_EXTENSIONS = { AbstractSequenceFileFormat.BLOOM_FILTER_EXTENSION,
+			MultiResourceSerializationFormat.INDEX_EXTENSION };
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/* This property is publicly configurable. */
+	private HdfsResourceLoader hdfsResourceLoader;
+
+	/* This property is publicly configurable. */
+	private SerializationFormat<T> serializationFormat;
+
+	/* This property is publicly configurable. */
+	private String locationPattern;
+
+	/* This property is publicly configurable. */
+	private String workDirectory;
+
+	/* This property is publicly configurable. */
+	private long targetSize = DEFAULT_TARGET_SIZE;
+
+	/* This property is publicly configurable. */
+	private int readerThreads = 4;
+
+	/* This property is publicly configurable. */
+	private long minimumAge = DEFAULT_MINIMUM_AGE;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(hdfsResourceLoader, "A non-null HdfsResourceLoader is required.");
+		Assert.notNull(serializationFormat, "A non-null SerializationFormat is required.");
+		Assert.hasText(locationPattern, "A non-empty location pattern is required.");
+		Assert.hasText(workDirectory, "A non-empty work directory is required.");
+		Assert.isTrue(targetSize > 0, "The target size must be positive.");
+		Assert.isTrue(readerThreads > 0, "The number of reader threads must be positive.");
+		Assert.isTrue(minimumAge >= 0, "The minimum age must not be negative.");
+
+		FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+		Path workPath = fs.makeQualified(new Path(workDirectory));
+		Path patternRoot = fs.makeQualified(new Path(getPatternRoot(locationPattern)));
+
+		// Otherwise the pattern might match the staged files, or recovery might delete files to compact.
+		Assert.isTrue(!isWithin(workPath, patternRoot) && !isWithin(patternRoot, workPath), "The work directory '"
+				+ workDirectory + "' must not overlap the location pattern '" + locationPattern + "'.");
+	}
+
+	/**
+	 * Completes the compactions interrupted by a crash, then compacts the small files matching the location pattern.
+	 *
+	 * @return The number of objects rewritten.
+	 */
+	public long compact() throws IOException {
+		FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+		Path workPath = new Path(workDirectory);
+
+		recover(fs, workPath);
+
+		long objects = 0;
+
+		String timestamp = String.valueOf(System.currentTimeMillis());
+
+		int index = 0;
+
+		for (Map.Entry<Path, List<Path>> group : listSources(fs).entrySet()) {
+			// A single small file is as good as it gets.
+			if (group.getValue().size() > 1) {
+				String id = BASE_NAME + "-" + timestamp + "-" + index++;
+
+				objects += compact(fs, workPath, id, group.getKey(), group.getValue());
+			}
+		}
+
+		return objects;
+	}
+
+	/**
+	 * @return The small files matching the location pattern, which have not been modified within the minimum age,
+	 * grouped by their directory.
+	 */
+	protected Map<Path, List<Path>> listSources(FileSystem fs) throws IOException {
+		Map<Path, List<Path>> groups = new LinkedHashMap<Path, List<Path>>();
+
+		long modifiedBefore = System.currentTimeMillis() - minimumAge;
+
+		for (Resource resource : hdfsResourceLoader.getResources(locationPattern)) {
+			Path source = fs.makeQualified(new Path(((ContextResource) resource).getPathWithinContext()));
+
+			FileStatus status = fs.getFileStatus(source);
+
+			// Skip files in progress (or otherwise hidden), sidecars and files large enough.
+			if (status.isDir() || isHidden(source) || isSidecar(source) || status.getLen() >= targetSize) {
+				continue;
+			}
+
+			// Skip files which might still be written.
+			if (status.getModificationTime() > modifiedBefore) {
+				continue;
+			}
+
+			List<Path> group = groups.get(source.getParent());
+
+			if (group == null) {
+				group = new ArrayList<Path>();
+				groups.put(source.getParent(), group);
+			}
+
+			group.add(source);
+		}
+
+		return groups;
+	}
+
+	protected long compact(FileSystem fs, Path workPath, String id, Path directory, List<Path> sources)
+			throws IOException {
+
+		Path stagingPath = new Path(workPath, id);
+
+		// Objects are written to the staging directory...
+		RollingSerializationWriter<T> writer = new RollingSerializationWriter<T>(hdfsResourceLoader,
+				serializationFormat);
+		writer.setPathFormat(stagingPath.toUri().getPath().replace("%", "%%"));
+		writer.setBaseName(id);
+		writer.setMaxBytes(targetSize);
+
+		long objects = copy(sources, writer);
+
+		// ...then the manifest commits the compaction...
+		List<String[]> outputs = new ArrayList<String[]>();
+
+		// No staging directory if all sources are empty.
+		FileStatus[] stagedFiles = fs.exists(stagingPath) ? fs.listStatus(stagingPath) : new FileStatus[0];
+
+		for (FileStatus staged : stagedFiles) {
+			outputs.add(new String[] { staged.getPath().getName(), new Path(directory, staged.getPath().getName())
+					.toString() });
+		}
+
+		Path manifestPath = new Path(workPath, id + MANIFEST_SUFFIX);
+
+		writeManifest(fs, manifestPath, sources, stagingPath, outputs);
+
+		// ...and the compacted files are swapped in.
+		commit(fs, manifestPath);
+
+		return objects;
+	}
+
+	/**
+	 * Reads the sources on the reader pool and writes their objects in order.
+	 */
+	protected long copy(List<Path> sources, SerializationWriter<T> writer) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(readerThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, SerializationFormatCompactor.class.getSimpleName() + "-"
+						+ THREAD_COUNTER.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		Queue<Future<List<T>>> pending = new LinkedList<Future<List<T>>>();
+
+		long objects = 0;
+
+		try {
+			int next = 0;
+
+			while (next < sources.size() || !pending.isEmpty()) {
+				// Keep every reader thread busy, but never hold more files than threads in memory.
+				while (next < sources.size() && pending.size() < readerThreads) {
+					pending.add(executor.submit(new SourceReader(sources.get(next++))));
+				}
+
+				for (T object : await(pending.poll())) {
+					writer.write(object);
+					objects++;
+				}
+			}
+
+			writer.close();
+		} finally {
+			for (Future<List<T>> future : pending) {
+				future.cancel(true);
+			}
+
+			executor.shutdownNow();
+
+			closeStream(writer);
+		}
+
+		return objects;
+	}
+
+	/**
+	 * Rolls forward the compactions which have their manifest written and rolls back the rest.
+	 */
+	protected void recover(FileSystem fs, Path workPath) throws IOException {
+		if (!fs.exists(workPath)) {
+			return;
+		}
+
+		for (FileStatus status : fs.listStatus(workPath)) {
+			String name = status.getPath().getName();
+
+			if (name.startsWith(BASE_NAME + "-") && name.endsWith(MANIFEST_SUFFIX)) {
+				commit(fs, status.getPath());
+			}
+		}
+
+		// Roll back the uncommitted compactions: delete their staging directories and manifests in progress, but
+		// nothing else which might be in the work directory.
+		for (FileStatus status : fs.listStatus(workPath)) {
+			String name = status.getPath().getName();
+
+			if (name.startsWith(BASE_NAME + "-")
+					&& (status.isDir() || name.endsWith(MANIFEST_SUFFIX + IN_PROGRESS_SUFFIX))) {
+				delete(fs, status.getPath(), true);
+			}
+		}
+	}
+
+	/**
+	 * Moves the compacted files listed by passed manifest to their directory, deletes the sources and the manifest.
+	 * Idempotent, so it could be re-run if interrupted.
+	 */
+	protected void commit(FileSystem fs, Path manifestPath) throws IOException {
+		List<Path> sources = new ArrayList<Path>();
+		List<String[]> outputs = new ArrayList<String[]>();
+
+		String manifestName = manifestPath.getName();
+
+		Path stagingPath = new Path(manifestPath.getParent(), manifestName.substring(0, manifestName.length()
+				- MANIFEST_SUFFIX.length()));
+
+		readManifest(fs, manifestPath, sources, outputs);
+
+		for (String[] output : outputs) {
+			Path staged = new Path(stagingPath, output[0]);
+
+			if (fs.exists(staged) && !fs.rename(staged, new Path(output[1]))) {
+				throw new IOException("Cannot rename '" + staged + "' to '" + output[1] + "'.");
+			}
+		}
+
+		for (Path source : sources) {
+			// Sidecars go first, so none is left without its source if interrupted.
+			for (String extension : SIDECAR_EXTENSIONS) {
+				delete(fs, source.suffix(extension), false);
+			}
+
+			delete(fs, source, false);
+		}
+
+		fs.delete(stagingPath, true);
+
+		if (!fs.delete(manifestPath, false)) {
+			throw new IOException("Cannot delete '" + manifestPath + "'.");
+		}
+	}
+
+	protected void writeManifest(FileSystem fs, Path manifestPath, List<Path> sources, Path stagingPath,
+			List<String[]> outputs) throws IOException {
+
+		Path inProgressPath = manifestPath.suffix(IN_PROGRESS_SUFFIX);
+
+		Writer writer = new OutputStreamWriter(fs.create(inProgressPath, true), "UTF-8");
+
+		try {
+			for (Path source : sources) {
+				writer.write(SOURCE_ENTRY + "\t" + source + "\n");
+			}
+			for (String[] output : outputs) {
+				writer.write(OUTPUT_ENTRY + "\t" + output[0] + "\t" + output[1] + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+
+		// The rename is atomic, so a manifest is either complete or missing.
+		if (!fs.rename(inProgressPath, manifestPath)) {
+			throw new IOException("Cannot rename '" + inProgressPath + "' to '" + manifestPath + "'.");
+		}
+	}
+
+	protected void readManifest(FileSystem fs, Path manifestPath, List<Path> sources, List<String[]> outputs)
+			throws IOException {
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(manifestPath), "UTF-8"));
+
+		try {
+			for (String line = null; (line = reader.readLine()) != null;) {
+				String[] entry = line.split("\t");
+
+				if (SOURCE_ENTRY.equals(entry[0]) && entry.length == 2) {
+					sources.add(new Path(entry[1]));
+				} else if (OUTPUT_ENTRY.equals(entry[0]) && entry.length == 3) {
+					outputs.add(new String[] { entry[1], entry[2] });
+				} else {
+					throw new IOException("Malformed compaction manifest '" + manifestPath + "': " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Deletes passed path if it exists.
+	 */
+	protected static void delete(FileSystem fs, Path path, boolean recursive) throws IOException {
+		if (fs.exists(path) && !fs.delete(path, recursive)) {
+			throw new IOException("Cannot delete '" + path + "'.");
+		}
+	}
+
+	protected static boolean isHidden(Path path) {
+		String name = path.getName();
+
+		return name.startsWith("_") || name.startsWith(".");
+	}
+
+	protected static boolean isSidecar(Path path) {
+		for (String extension : SIDECAR_EXTENSIONS) {
+			if (path.getName().endsWith(extension)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The directory of passed location pattern up to its first segment with wildcards.
+	 */
+	protected static String getPatternRoot(String locationPattern) {
+		StringBuilder root = new StringBuilder();
+
+		for (String segment : locationPattern.split("/", -1)) {
+			if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0
+					|| segment.indexOf('[') >= 0) {
+				break;
+			}
+			root.append(segment).append('/');
+		}
+
+		if (root.length() == 0) {
+			// A relative pattern starting with wildcards.
+			return ".";
+		}
+
+		return root.length() > 1 ? root.substring(0, root.length() - 1) : "/";
+	}
+
+	/**
+	 * @return <code>true</code> if passed path is the directory or one of its descendants.
+	 */
+	protected static boolean isWithin(Path path, Path directory) {
+		for (Path ancestor = path; ancestor != null; ancestor = ancestor.getParent()) {
+			if (ancestor.equals(directory)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	protected static <V> V await(Future<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the files to compact.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Failed to read the files to compact.", cause);
+		}
+	}
+
+	/**
+	 * @param hdfsResourceLoader The {@link HdfsResourceLoader} used to resolve the location pattern.
+	 */
+	public void setHdfsResourceLoader(HdfsResourceLoader hdfsResourceLoader) {
+		this.hdfsResourceLoader = hdfsResourceLoader;
+	}
+
+	/**
+	 * @param serializationFormat The format to read the small files and to write the compacted ones.
+	 */
+	public void setSerializationFormat(SerializationFormat<T> serializationFormat) {
+		this.serializationFormat = serializationFormat;
+	}
+
+	/**
+	 * @param locationPattern The HDFS location pattern of the files to compact, such as <code>/data/events/*</code>.
+	 */
+	public void setLocationPattern(String locationPattern) {
+		this.locationPattern = locationPattern;
+	}
+
+	/**
+	 * Sets the directory holding the staging directories and the manifests of the compactions in progress. It should
+	 * reside on the same file system as the files compacted and should not be shared with other compactors.
+	 *
+	 * @param workDirectory The work directory.
+	 */
+	public void setWorkDirectory(String workDirectory) {
+		this.workDirectory = workDirectory;
+	}
+
+	/**
+	 * Sets the size the compacted files are rolled at. Files of that size (or larger) are not compacted. Defaults to
+	 * {@link #DEFAULT_TARGET_SIZE}.
+	 *
+	 * @param targetSize The target size of the compacted files in bytes.
+	 */
+	public void setTargetSize(long targetSize) {
+		this.targetSize = targetSize;
+	}
+
+	/**
+	 * @param readerThreads The number of files read in parallel. Defaults to 4.
+	 */
+	public void setReaderThreads(int readerThreads) {
+		this.readerThreads = readerThreads;
+	}
+
+	/**
+	 * Sets the quiet period of the files compacted: files modified within it might still be written, so they are
+	 * skipped. The modification times are set by the file system, so the period should exceed the clock skew between
+	 * the compactor and the file system. Defaults to {@link #DEFAULT_MINIMUM_AGE}.
+	 *
+	 * @param minimumAge The minimum age of the files compacted in milliseconds.
+	 */
+	public void setMinimumAge(long minimumAge) {
+		this.minimumAge = minimumAge;
+	}
+
+	/**
+	 * Reads all objects of a source file.
+	 */
+	protected class SourceReader implements Callable<List<T>> {
+
+		private final Path source;
+
+		SourceReader(Path source) {
+			this.source = source;
+		}
+
+		@Override
+		public List<T> call() throws IOException {
+			List<T> objects = new ArrayList<T>();
+
+			SerializationReader<T> reader = serializationFormat.getReader(source.toUri().getPath());
+
+			try {
+				for (T object = null; (object = reader.read()) != null;) {
+					objects.add(object);
+				}
+			} finally {
+				closeStream(reader);
+			}
+
+			return objects;
+		}
+	}
+
+}
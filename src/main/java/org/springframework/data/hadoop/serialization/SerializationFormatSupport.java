@@ -19,8 +19,14 @@ import static org.apache.hadoop.io.IOUtils.closeStream;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Seekable;
 import org.springframework.data.hadoop.fs.HdfsResourceLoader;
 import org.springframework.util.Assert;
 
@@ -31,6 +37,8 @@ import org.springframework.util.Assert;
  * <li>compression configuration;</li>
  * <li>extension customization;</li>
  * <li>HDFS resource loader configuration;</li>
+ * <li>read-ahead of the input streams read by the readers;</li>
+ * <li>{@link SerializationListener instrumentation} of the readers and writers;</li>
  * <li>template classes for serialization format Writers and Readers.</li>
  * </ul>
  * 
@@ -57,6 +65,15 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 	/* This property is publicly configurable. */
 	protected boolean lazyOpenReader = false;
 
+	/* This property is publicly configurable. */
+	private int readAheadBuffers = 0;
+
+	/* This property is publicly configurable. */
+	private int readAheadBufferSize = ReadAheadInputStream.DEFAULT_BUFFER_SIZE;
+
+	/* This property is publicly configurable. */
+	private SerializationListener serializationListener;
+
 	/**
 	 * Sets the compression alias for the <code>SerializationFormat</code>s created by this class. It's up to the
 	 * implementation to resolve the alias to the actual compression algorithm.
@@ -97,6 +114,70 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 		this.lazyOpenReader = lazyOpenReader;
 	}
 
+	/**
+	 * Sets the number of buffers the readers read ahead on a background thread while decoding the current one. Pays
+	 * off when the latency of the reads (such as cross-rack reads) rather than the bandwidth limits the throughput.
+	 * 
+	 * <p>
+	 * Default value is <code>0</code> (no read-ahead).
+	 * 
+	 * @param readAheadBuffers the number of buffers to read ahead
+	 * @see ReadAheadInputStream
+	 */
+	public void setReadAheadBuffers(int readAheadBuffers) {
+		this.readAheadBuffers = readAheadBuffers;
+	}
+
+	protected int getReadAheadBuffers() {
+		return readAheadBuffers;
+	}
+
+	/**
+	 * Sets the size of the buffers read ahead.
+	 * 
+	 * <p>
+	 * Default value is 1 MB.
+	 * 
+	 * @param readAheadBufferSize the size of the buffers to read ahead
+	 */
+	public void setReadAheadBufferSize(int readAheadBufferSize) {
+		this.readAheadBufferSize = readAheadBufferSize;
+	}
+
+	protected int getReadAheadBufferSize() {
+		return readAheadBufferSize;
+	}
+
+	/**
+	 * Decorates passed input stream with {@link ReadAheadInputStream} if {@link #setReadAheadBuffers(int) read-ahead}
+	 * is enabled and the stream is {@link Seekable}. The decorated stream is a {@link FSDataInputStream}, so it's
+	 * still seekable.
+	 * 
+	 * @return the decorated stream or passed one.
+	 */
+	protected InputStream readAhead(InputStream input) throws IOException {
+		if (readAheadBuffers <= 0 || !(input instanceof Seekable)) {
+			return input;
+		}
+
+		return new FSDataInputStream(new ReadAheadInputStream(input, readAheadBufferSize, readAheadBuffers));
+	}
+
+	/**
+	 * Sets the listener notified upon open, close and every object written or read by the writers and readers of this
+	 * serialization format, such as {@link SerializationMetrics}. The latencies are measured only if a listener is
+	 * set.
+	 * 
+	 * @param serializationListener the serializationListener to set
+	 */
+	public void setSerializationListener(SerializationListener serializationListener) {
+		this.serializationListener = serializationListener;
+	}
+
+	protected SerializationListener getSerializationListener() {
+		return serializationListener;
+	}
+
 	/**
 	 * Specify custom extension used/recognized by this serialization format. If <code>null</code> is set
 	 * {@link #getDefaultExtension() default} extension is used.
@@ -141,7 +222,31 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 	@Override
 	public SerializationWriter<T> getWriter(OutputStream output) throws IOException {
 
-		SerializationWriterSupport writer = createWriter(output);
+		return openWriter(createWriter(output), output);
+	}
+
+	/**
+	 * Creates a serialization writer that is aware of the location it writes to. Descendants implementing
+	 * {@link LocationAwareSerializationFormat} should expose this method publicly.
+	 * 
+	 * @see {@link LocationAwareSerializationFormat#getWriter(OutputStream, String)}
+	 */
+	protected SerializationWriter<T> getWriter(OutputStream output, String location) throws IOException {
+
+		return openWriter(createWriter(output, location), output);
+	}
+
+	/**
+	 * Opens passed writer unless it should be {@link #setLazyOpenWriter(boolean) lazy-opened}.
+	 */
+	private SerializationWriter<T> openWriter(SerializationWriterSupport writer, OutputStream output)
+			throws IOException {
+
+		// Headers are written upon open, so the position is taken before.
+		if (output instanceof FSDataOutputStream) {
+			writer.output = (FSDataOutputStream) output;
+			writer.openPosition = writer.output.getPos();
+		}
 
 		if (!lazyOpenWriter) {
 			writer.open();
@@ -156,7 +261,57 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 		// TODO: Extract to utility class and do not couple to SerializationWriterObjectFactory!
 		location = SerializationWriterObjectFactory.canonicalSerializationDestination(this, location);
 
-		SerializationReaderSupport reader = createReader(location);
+		return openReader(createReader(location));
+	}
+
+	/**
+	 * Creates a serialization reader that reads the objects of the specified byte range. Descendants implementing
+	 * {@link SplittableSerializationFormat} should expose this method publicly.
+	 * 
+	 * @see {@link SplittableSerializationFormat#getReader(String, long, long)}
+	 */
+	protected SerializationReader<T> getReader(String location, long start, long end) throws IOException {
+
+		location = SerializationWriterObjectFactory.canonicalSerializationDestination(this, location);
+
+		return openReader(createReader(location, start, end));
+	}
+
+	/**
+	 * Cuts the file at specified location into byte ranges of equal length and creates a serialization reader for every
+	 * range. Descendants implementing {@link SplittableSerializationFormat} should expose this method publicly.
+	 * 
+	 * @see {@link SplittableSerializationFormat#getReaders(String, int)}
+	 */
+	protected List<SerializationReader<T>> getReaders(String location, int desiredSplits) throws IOException {
+
+		Assert.isTrue(desiredSplits > 0, "The desired number of splits must be positive.");
+
+		location = SerializationWriterObjectFactory.canonicalSerializationDestination(this, location);
+
+		long length = getHdfsResourceLoader().getResource(location).contentLength();
+
+		// Round up, so the last split is never shorter than a byte.
+		long splitLength = Math.max(1, (length + desiredSplits - 1) / desiredSplits);
+
+		List<SerializationReader<T>> readers = new ArrayList<SerializationReader<T>>(desiredSplits);
+
+		for (long start = 0; start < length; start += splitLength) {
+			readers.add(openReader(createReader(location, start, Math.min(start + splitLength, length))));
+		}
+
+		// An empty file is still 'readable' by a single reader.
+		if (readers.isEmpty()) {
+			readers.add(openReader(createReader(location)));
+		}
+
+		return readers;
+	}
+
+	/**
+	 * Opens passed reader unless it should be {@link #setLazyOpenReader(boolean) lazy-opened}.
+	 */
+	private SerializationReader<T> openReader(SerializationReaderSupport reader) throws IOException {
 
 		if (!lazyOpenReader) {
 			reader.open();
@@ -170,17 +325,40 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 	 */
 	protected abstract SerializationWriterSupport createWriter(OutputStream output);
 
+	/**
+	 * Should be overridden by descendant classes whose writers depend on their location. Used by core
+	 * {@link #getWriter(OutputStream, String)} method. Ignores the location by default.
+	 */
+	protected SerializationWriterSupport createWriter(OutputStream output, String location) {
+		return createWriter(output);
+	}
+
 	/**
 	 * Should be implemented by descendant classes. Used by core {@link #getReader(String)} method.
 	 */
 	protected abstract SerializationReaderSupport createReader(String location);
 
+	/**
+	 * Should be implemented by descendant classes supporting split reads. Used by core
+	 * {@link #getReader(String, long, long)} and {@link #getReaders(String, int)} methods.
+	 * 
+	 * @throws UnsupportedOperationException if this serialization format does not support split reads
+	 */
+	protected SerializationReaderSupport createReader(String location, long start, long end) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support split reads.");
+	}
+
 	/**
 	 * A template class to be extended by <code>SerializationFormatWriter</code> implementations. Descendants should
 	 * focus on {@link #doWrite(Object)} method.
 	 */
 	protected abstract class SerializationWriterSupport extends OpenCloseSupport implements SerializationWriter<T> {
 
+		/* The stream passed to the format (if seekable). Its position tells the number of bytes written. */
+		private FSDataOutputStream output;
+
+		private long openPosition;
+
 		/**
 		 * <ul>
 		 * <li>Lazy open the Writer upon first write (if not already opened).</li>
@@ -193,8 +371,19 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 			// Lazy open serialization writer upon first write (if not already opened)
 			open();
 
-			// Delegate to core serialization logic.
+			SerializationListener listener = getSerializationListener();
+
+			if (listener == null) {
+				// Delegate to core serialization logic.
+				doWrite(source);
+				return;
+			}
+
+			long start = System.nanoTime();
+
 			doWrite(source);
+
+			listener.objectWritten(System.nanoTime() - start);
 		}
 
 		/**
@@ -202,6 +391,83 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 		 * @param source The object to write.
 		 */
 		protected abstract void doWrite(T source) throws IOException;
+
+		/**
+		 * Syncs the stream passed to the format, so the bytes written so far survive a crash of the writer.
+		 * @return The position of the stream; <code>-1</code> if it's not a {@link FSDataOutputStream}.
+		 */
+		protected long syncOutput() throws IOException {
+			if (output == null) {
+				return -1;
+			}
+
+			// Local file systems buffer the stream and do not sync it.
+			output.flush();
+			output.sync();
+
+			return output.getPos();
+		}
+
+		/**
+		 * Should be overridden by descendants which compress the objects themselves and know their size.
+		 * @return The number of bytes written before compression; <code>-1</code> if unknown.
+		 */
+		protected long getUncompressedBytes() {
+			return -1;
+		}
+
+		@Override
+		protected boolean isTimed() {
+			return getSerializationListener() != null;
+		}
+
+		@Override
+		protected void afterOpen(long nanos) throws IOException {
+			if (getSerializationListener() != null) {
+				getSerializationListener().writerOpened(nanos);
+			}
+		}
+
+		@Override
+		protected void afterClose(long nanos) throws IOException {
+			if (getSerializationListener() != null) {
+				// The position of a closed FSDataOutputStream is still tracked.
+				long bytes = output != null ? output.getPos() - openPosition : -1;
+
+				getSerializationListener().writerClosed(nanos, bytes, getUncompressedBytes());
+			}
+		}
+	}
+
+	/**
+	 * A template class to be extended by {@link SyncableSerializationWriter} implementations. Descendants should focus on
+	 * {@link #doSync()} method.
+	 */
+	protected abstract class SyncableSerializationWriterSupport extends SerializationWriterSupport implements
+			SyncableSerializationWriter<T> {
+
+		/**
+		 * <ul>
+		 * <li>Lazy open the Writer (if not already opened).</li>
+		 * <li>Delegate to {@link #doSync() core} logic to push the buffered objects to the stream.</li>
+		 * <li>Sync the stream.</li>
+		 * </ul>
+		 */
+		@Override
+		public long sync() throws IOException {
+
+			open();
+
+			doSync();
+
+			return syncOutput();
+		}
+
+		/**
+		 * Here goes the logic pushing the buffered objects to the stream, so it ends at an object boundary. The Writer
+		 * is guaranteed to be open prior this call.
+		 */
+		protected abstract void doSync() throws IOException;
 	}
 
 	/**
@@ -223,11 +489,17 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 			// Lazy open serialization reader upon first read (if not already opened)
 			open();
 
+			SerializationListener listener = getSerializationListener();
+
+			long start = listener != null ? System.nanoTime() : 0;
+
 			// Delegate to core serialization
 			T object = doRead();
 
 			if (object == null) {
 				close();
+			} else if (listener != null) {
+				listener.objectRead(System.nanoTime() - start);
 			}
 
 			return object;
@@ -238,6 +510,90 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 		 * @return The object that's read.
 		 */
 		protected abstract T doRead() throws IOException;
+
+		@Override
+		protected boolean isTimed() {
+			return getSerializationListener() != null;
+		}
+
+		@Override
+		protected void afterOpen(long nanos) {
+			if (getSerializationListener() != null) {
+				getSerializationListener().readerOpened(nanos);
+			}
+		}
+
+		@Override
+		protected void afterClose(long nanos) {
+			if (getSerializationListener() != null) {
+				getSerializationListener().readerClosed(nanos);
+			}
+		}
+	}
+
+	/**
+	 * A template class to be extended by {@link ResumableSerializationReader} implementations. Descendants should
+	 * report every object read through {@link #objectRead(long)} and focus on {@link #doSeek(long)} method.
+	 */
+	protected abstract class ResumableSerializationReaderSupport extends SerializationReaderSupport implements
+			ResumableSerializationReader<T> {
+
+		/* The position of the last sync point passed and the number of objects read after it. */
+		protected long syncPosition = -1;
+		protected long objectsSinceSync;
+
+		@Override
+		public long getSyncPosition() {
+			return syncPosition;
+		}
+
+		@Override
+		public long getObjectsSinceSync() {
+			return objectsSinceSync;
+		}
+
+		/**
+		 * <ul>
+		 * <li>Lazy open the Reader (if not already opened).</li>
+		 * <li>Delegate to {@link #doSeek(long) core} logic to seek to the sync point.</li>
+		 * <li>Skip the objects read after the sync point.</li>
+		 * </ul>
+		 */
+		@Override
+		public void resume(long syncPosition, long objectsSinceSync) throws IOException {
+
+			open();
+
+			doSeek(syncPosition);
+
+			this.syncPosition = syncPosition;
+			this.objectsSinceSync = 0;
+
+			for (long skipped = 0; skipped < objectsSinceSync; skipped++) {
+				if (doRead() == null) {
+					throw new IOException("Only " + skipped + " of " + objectsSinceSync
+							+ " objects follow the sync point at " + syncPosition + ".");
+				}
+			}
+		}
+
+		/**
+		 * Records an object read after passed sync point.
+		 */
+		protected void objectRead(long syncPosition) {
+			if (syncPosition != this.syncPosition) {
+				this.syncPosition = syncPosition;
+				objectsSinceSync = 0;
+			}
+
+			objectsSinceSync++;
+		}
+
+		/**
+		 * Here goes the logic seeking to passed sync point, as reported through {@link #objectRead(long)}. The Reader
+		 * is guaranteed to be open prior this call.
+		 */
+		protected abstract void doSeek(long syncPosition) throws IOException;
 	}
 
 	/**
@@ -256,9 +612,15 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 		 */
 		protected void open() throws IOException {
 			if (!isOpen) {
+				boolean timed = isTimed();
+
+				long start = timed ? System.nanoTime() : 0;
+
 				nativeResource = doOpen();
 
 				isOpen = true;
+
+				afterOpen(timed ? System.nanoTime() - start : 0);
 			}
 		}
 
@@ -267,9 +629,42 @@ public abstract class SerializationFormatSupport<T> implements SerializationForm
 		 */
 		@Override
 		public void close() throws IOException {
+			boolean wasOpen = isOpen;
+
+			boolean timed = wasOpen && isTimed();
+
+			long start = timed ? System.nanoTime() : 0;
+
 			closeStream(nativeResource);
 			nativeResource = null;
 			isOpen = false;
+
+			if (wasOpen) {
+				afterClose(timed ? System.nanoTime() - start : 0);
+			}
+		}
+
+		/**
+		 * A hook method telling whether open and close should be timed, which is the case only if someone is
+		 * interested in their latency.
+		 * @return <code>false</code> by default.
+		 */
+		protected boolean isTimed() {
+			return false;
+		}
+
+		/**
+		 * A hook method called once opened.
+		 * @param nanos The time it took to open.
+		 */
+		protected void afterOpen(long nanos) throws IOException {
+		}
+
+		/**
+		 * A hook method called once closed (unless it was not open).
+		 * @param nanos The time it took to close.
+		 */
+		protected void afterClose(long nanos) throws IOException {
 		}
 
 		/**
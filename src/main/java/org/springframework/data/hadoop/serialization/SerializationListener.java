@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+/**
+ * Receives the events of the writers and readers created by a {@link SerializationFormatSupport serialization format}
+ * along with their latencies. Implementations are called by the thread writing or reading, so they should be cheap and
+ * thread-safe (the writers and readers of a format might be used by multiple threads).
+ *
+ * @see SerializationMetrics
+ *
+ * @author Alex Savov
+ */
+public interface SerializationListener {
+
+	/**
+	 * @param nanos The time it took to open the writer.
+	 */
+	void writerOpened(long nanos);
+
+	/**
+	 * @param nanos The time it took to encode and write the object.
+	 */
+	void objectWritten(long nanos);
+
+	/**
+	 * @param nanos The time it took to close (flush) the writer.
+	 * @param bytes The number of bytes written to the output stream; <code>-1</code> if unknown.
+	 * @param uncompressedBytes The number of bytes written before compression; <code>-1</code> if unknown.
+	 */
+	void writerClosed(long nanos, long bytes, long uncompressedBytes);
+
+	/**
+	 * @param nanos The time it took to open the reader.
+	 */
+	void readerOpened(long nanos);
+
+	/**
+	 * @param nanos The time it took to read and decode the object.
+	 */
+	void objectRead(long nanos);
+
+	/**
+	 * @param nanos The time it took to close the reader.
+	 */
+	void readerClosed(long nanos);
+
+}
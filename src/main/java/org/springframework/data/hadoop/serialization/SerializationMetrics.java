@@ -0,0 +1,503 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SerializationListener} aggregating the throughput, the bytes written and the latency histograms of the
+ * writers and readers of a serialization format. Share an instance between formats to aggregate all of them.
+ *
+ * <p>
+ * The metrics are exposable over JMX through the {@link SerializationMetricsMBean standard MBean interface}, such as
+ * by Spring's <code>MBeanExporter</code> or by registering an instance with the platform MBean server directly. The
+ * histograms use power-of-two buckets, so the percentiles are upper bounds within a factor of two.
+ *
+ * <p>
+ * The counts and the bytes are totals since the last {@link #reset() reset}, while the rates and the latencies cover a
+ * sliding window (one minute by default), so they reflect the current load rather than the lifetime averages. The
+ * window advances by a twelfth of its length at a time and is approximate under concurrent updates.
+ *
+ * @author Alex Savov
+ */
+public class SerializationMetrics implements SerializationListener, SerializationMetricsMBean {
+
+	public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000;
+
+	/* The number of intervals of the window; the oldest one is dropped as a new one starts. */
+	private static final int WINDOW_INTERVALS = 12;
+
+	/* The origin of the interval indexes. */
+	private static final long ORIGIN_NANOS = System.nanoTime();
+
+	private final LatencyHistogram writeLatency;
+
+	private final LatencyHistogram writerOpenLatency;
+
+	private final LatencyHistogram writerCloseLatency;
+
+	private final LatencyHistogram readLatency;
+
+	private final LatencyHistogram readerOpenLatency;
+
+	private final LatencyHistogram readerCloseLatency;
+
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	private final AtomicLong uncompressedBytesWritten = new AtomicLong();
+
+	/* The bytes of the writers reporting both compressed and uncompressed bytes. */
+	private final AtomicLong ratioBytes = new AtomicLong();
+
+	private final AtomicLong ratioUncompressedBytes = new AtomicLong();
+
+	/* Gauges - never reset. */
+	private final AtomicLong openWriters = new AtomicLong();
+
+	private final AtomicLong openReaders = new AtomicLong();
+
+	/**
+	 * Computes the rates and the latencies over the last {@link #DEFAULT_WINDOW_MILLIS}.
+	 */
+	public SerializationMetrics() {
+		this(DEFAULT_WINDOW_MILLIS);
+	}
+
+	/**
+	 * @param windowMillis The length of the sliding window the rates and the latencies are computed over.
+	 */
+	public SerializationMetrics(long windowMillis) {
+		Assert.isTrue(windowMillis >= WINDOW_INTERVALS, "The window must be at least " + WINDOW_INTERVALS + " ms.");
+
+		long intervalNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis) / WINDOW_INTERVALS;
+
+		writeLatency = new LatencyHistogram(intervalNanos);
+		writerOpenLatency = new LatencyHistogram(intervalNanos);
+		writerCloseLatency = new LatencyHistogram(intervalNanos);
+		readLatency = new LatencyHistogram(intervalNanos);
+		readerOpenLatency = new LatencyHistogram(intervalNanos);
+		readerCloseLatency = new LatencyHistogram(intervalNanos);
+	}
+
+	//
+	// SerializationListener {{
+	//
+
+	@Override
+	public void writerOpened(long nanos) {
+		openWriters.incrementAndGet();
+		writerOpenLatency.record(nanos);
+	}
+
+	@Override
+	public void objectWritten(long nanos) {
+		writeLatency.record(nanos);
+	}
+
+	@Override
+	public void writerClosed(long nanos, long bytes, long uncompressedBytes) {
+		openWriters.decrementAndGet();
+		writerCloseLatency.record(nanos);
+
+		if (bytes >= 0) {
+			bytesWritten.addAndGet(bytes);
+		}
+
+		if (uncompressedBytes >= 0) {
+			uncompressedBytesWritten.addAndGet(uncompressedBytes);
+		}
+
+		if (bytes >= 0 && uncompressedBytes >= 0) {
+			ratioBytes.addAndGet(bytes);
+			ratioUncompressedBytes.addAndGet(uncompressedBytes);
+		}
+	}
+
+	@Override
+	public void readerOpened(long nanos) {
+		openReaders.incrementAndGet();
+		readerOpenLatency.record(nanos);
+	}
+
+	@Override
+	public void objectRead(long nanos) {
+		readLatency.record(nanos);
+	}
+
+	@Override
+	public void readerClosed(long nanos) {
+		openReaders.decrementAndGet();
+		readerCloseLatency.record(nanos);
+	}
+
+	// }}
+
+	//
+	// SerializationMetricsMBean {{
+	//
+
+	@Override
+	public long getObjectsWritten() {
+		return writeLatency.getCount();
+	}
+
+	@Override
+	public double getWriteRate() {
+		return writeLatency.getRate();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	@Override
+	public long getUncompressedBytesWritten() {
+		return uncompressedBytesWritten.get();
+	}
+
+	@Override
+	public double getCompressionRatio() {
+		long bytes = ratioBytes.get();
+
+		return bytes > 0 ? (double) ratioUncompressedBytes.get() / bytes : Double.NaN;
+	}
+
+	@Override
+	public double getWriteLatencyMean() {
+		return writeLatency.getMean();
+	}
+
+	@Override
+	public double getWriteLatency50thPercentile() {
+		return writeLatency.getPercentile(0.5);
+	}
+
+	@Override
+	public double getWriteLatency99thPercentile() {
+		return writeLatency.getPercentile(0.99);
+	}
+
+	@Override
+	public double getWriteLatencyMax() {
+		return writeLatency.getMax();
+	}
+
+	@Override
+	public long getOpenWriters() {
+		return openWriters.get();
+	}
+
+	@Override
+	public double getWriterOpenLatencyMean() {
+		return writerOpenLatency.getMean();
+	}
+
+	@Override
+	public double getWriterOpenLatencyMax() {
+		return writerOpenLatency.getMax();
+	}
+
+	@Override
+	public double getWriterCloseLatencyMean() {
+		return writerCloseLatency.getMean();
+	}
+
+	@Override
+	public double getWriterCloseLatencyMax() {
+		return writerCloseLatency.getMax();
+	}
+
+	@Override
+	public long getObjectsRead() {
+		return readLatency.getCount();
+	}
+
+	@Override
+	public double getReadRate() {
+		return readLatency.getRate();
+	}
+
+	@Override
+	public double getReadLatencyMean() {
+		return readLatency.getMean();
+	}
+
+	@Override
+	public double getReadLatency50thPercentile() {
+		return readLatency.getPercentile(0.5);
+	}
+
+	@Override
+	public double getReadLatency99thPercentile() {
+		return readLatency.getPercentile(0.99);
+	}
+
+	@Override
+	public double getReadLatencyMax() {
+		return readLatency.getMax();
+	}
+
+	@Override
+	public long getOpenReaders() {
+		return openReaders.get();
+	}
+
+	@Override
+	public double getReaderOpenLatencyMean() {
+		return readerOpenLatency.getMean();
+	}
+
+	@Override
+	public double getReaderOpenLatencyMax() {
+		return readerOpenLatency.getMax();
+	}
+
+	@Override
+	public double getReaderCloseLatencyMean() {
+		return readerCloseLatency.getMean();
+	}
+
+	@Override
+	public double getReaderCloseLatencyMax() {
+		return readerCloseLatency.getMax();
+	}
+
+	@Override
+	public void reset() {
+		writeLatency.reset();
+		writerOpenLatency.reset();
+		writerCloseLatency.reset();
+		readLatency.reset();
+		readerOpenLatency.reset();
+		readerCloseLatency.reset();
+
+		bytesWritten.set(0);
+		uncompressedBytesWritten.set(0);
+		ratioBytes.set(0);
+		ratioUncompressedBytes.set(0);
+	}
+
+	// }}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[written=" + getObjectsWritten() + ", bytesWritten=" + getBytesWritten()
+				+ ", read=" + getObjectsRead() + "]";
+	}
+
+	/**
+	 * A lock-free histogram of latencies with a bucket per power of two nanoseconds, kept per interval of a sliding
+	 * window. Reports in microseconds.
+	 */
+	protected static class LatencyHistogram {
+
+		private final long intervalNanos;
+
+		private final Interval[] intervals = new Interval[WINDOW_INTERVALS];
+
+		/* Counted since the last reset rather than within the window. */
+		private final AtomicLong count = new AtomicLong();
+
+		private volatile long startNanos = System.nanoTime();
+
+		public LatencyHistogram(long intervalNanos) {
+			this.intervalNanos = intervalNanos;
+
+			for (int i = 0; i < intervals.length; i++) {
+				intervals[i] = new Interval();
+			}
+		}
+
+		public void record(long nanos) {
+			nanos = Math.max(0, nanos);
+
+			count.incrementAndGet();
+
+			long index = intervalIndex(System.nanoTime());
+
+			Interval interval = intervals[(int) (index % WINDOW_INTERVALS)];
+
+			if (interval.index < index) {
+				interval.restart(index);
+			}
+
+			interval.record(nanos);
+		}
+
+		/**
+		 * @return The number of latencies recorded since the last reset.
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return The number of latencies recorded per second within the window.
+		 */
+		public double getRate() {
+			long now = System.nanoTime();
+
+			long windowStart = ORIGIN_NANOS + (intervalIndex(now) - WINDOW_INTERVALS + 1) * intervalNanos;
+
+			long elapsedNanos = now - Math.max(windowStart, startNanos);
+
+			return elapsedNanos > 0 ? snapshot().count * 1e9 / elapsedNanos : 0;
+		}
+
+		public double getMean() {
+			Snapshot snapshot = snapshot();
+
+			return snapshot.count > 0 ? snapshot.sum / 1000.0 / snapshot.count : 0;
+		}
+
+		public double getMax() {
+			return snapshot().max / 1000.0;
+		}
+
+		/**
+		 * @return The upper bound of the bucket holding passed quantile.
+		 */
+		public double getPercentile(double quantile) {
+			Snapshot snapshot = snapshot();
+
+			long target = (long) Math.ceil(quantile * snapshot.count);
+
+			long cumulative = 0;
+
+			for (int i = 0; i < snapshot.buckets.length; i++) {
+				cumulative += snapshot.buckets[i];
+
+				if (cumulative >= target && cumulative > 0) {
+					long upperBound = i < Long.SIZE - 1 ? (1L << i) - 1 : Long.MAX_VALUE;
+
+					return Math.min(upperBound, snapshot.max) / 1000.0;
+				}
+			}
+
+			return snapshot.max / 1000.0;
+		}
+
+		public void reset() {
+			for (Interval interval : intervals) {
+				interval.clear();
+			}
+
+			count.set(0);
+
+			startNanos = System.nanoTime();
+		}
+
+		private long intervalIndex(long nanos) {
+			return (nanos - ORIGIN_NANOS) / intervalNanos;
+		}
+
+		/**
+		 * @return The sum of the intervals within the window.
+		 */
+		private Snapshot snapshot() {
+			long current = intervalIndex(System.nanoTime());
+
+			Snapshot snapshot = new Snapshot();
+
+			for (Interval interval : intervals) {
+				long index = interval.index;
+
+				if (index > current - WINDOW_INTERVALS && index <= current) {
+					interval.addTo(snapshot);
+				}
+			}
+
+			return snapshot;
+		}
+	}
+
+	/**
+	 * The latencies recorded within an interval of the window.
+	 */
+	private static class Interval {
+
+		private volatile long index = -1;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong sum = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long nanos) {
+			// Bucket i holds the latencies in [2^(i-1), 2^i) nanos.
+			buckets.incrementAndGet(Math.min(Long.SIZE - 1, Long.SIZE - Long.numberOfLeadingZeros(nanos)));
+			count.incrementAndGet();
+			sum.addAndGet(nanos);
+
+			for (long current = max.get(); nanos > current && !max.compareAndSet(current, nanos); current = max.get()) {
+				// Retry until the max is updated or a greater one is set.
+			}
+		}
+
+		/**
+		 * Clears the interval to reuse it for passed index, unless already reused for a later one.
+		 */
+		synchronized void restart(long index) {
+			if (this.index < index) {
+				clear();
+
+				this.index = index;
+			}
+		}
+
+		synchronized void clear() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+
+			count.set(0);
+			sum.set(0);
+			max.set(0);
+
+			index = -1;
+		}
+
+		void addTo(Snapshot snapshot) {
+			for (int i = 0; i < buckets.length(); i++) {
+				snapshot.buckets[i] += buckets.get(i);
+			}
+
+			snapshot.count += count.get();
+			snapshot.sum += sum.get();
+			snapshot.max = Math.max(snapshot.max, max.get());
+		}
+	}
+
+	private static class Snapshot {
+
+		final long[] buckets = new long[Long.SIZE];
+
+		long count;
+
+		long sum;
+
+		long max;
+	}
+
+}
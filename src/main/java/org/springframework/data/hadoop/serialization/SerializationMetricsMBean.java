@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+/**
+ * The JMX management interface of {@link SerializationMetrics}. Counts and bytes are totals since the last
+ * {@link #reset() reset}; rates (per second) and latencies (in microseconds) cover the sliding window of the metrics
+ * only.
+ *
+ * @author Alex Savov
+ */
+public interface SerializationMetricsMBean {
+
+	long getObjectsWritten();
+
+	double getWriteRate();
+
+	long getBytesWritten();
+
+	long getUncompressedBytesWritten();
+
+	/**
+	 * @return The uncompressed to compressed bytes ratio of the writers reporting both; <code>NaN</code> if none.
+	 */
+	double getCompressionRatio();
+
+	double getWriteLatencyMean();
+
+	double getWriteLatency50thPercentile();
+
+	double getWriteLatency99thPercentile();
+
+	double getWriteLatencyMax();
+
+	long getOpenWriters();
+
+	double getWriterOpenLatencyMean();
+
+	double getWriterOpenLatencyMax();
+
+	double getWriterCloseLatencyMean();
+
+	double getWriterCloseLatencyMax();
+
+	long getObjectsRead();
+
+	double getReadRate();
+
+	double getReadLatencyMean();
+
+	double getReadLatency50thPercentile();
+
+	double getReadLatency99thPercentile();
+
+	double getReadLatencyMax();
+
+	long getOpenReaders();
+
+	double getReaderOpenLatencyMean();
+
+	double getReaderOpenLatencyMax();
+
+	double getReaderCloseLatencyMean();
+
+	double getReaderCloseLatencyMax();
+
+	/**
+	 * Clears all counters and latencies.
+	 */
+	void reset();
+
+}
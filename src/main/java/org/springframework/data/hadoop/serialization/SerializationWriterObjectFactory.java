@@ -54,6 +54,8 @@ public class SerializationWriterObjectFactory implements ObjectFactory<Serializa
 
 	protected HdfsResource hdfsDestinationResource;
 
+	protected int asyncWriteCapacity = 0;
+
 	/**
 	 * Constructs a new <code>SerializationWriterObjectFactory</code> instance.
 	 * 
@@ -95,6 +97,49 @@ public class SerializationWriterObjectFactory implements ObjectFactory<Serializa
 		this.serializationFormat = serializationFormat;
 	}
 
+	/**
+	 * If positive the serialization writers returned by {@link #getObject()} are {@link AsyncSerializationWriter
+	 * asynchronous}: the objects are buffered (up to the specified number) and written by a dedicated thread. Defaults
+	 * to <code>0</code> - the objects are written by the calling thread.
+	 * 
+	 * @param asyncWriteCapacity The max number of objects buffered by asynchronous writers.
+	 */
+	public void setAsyncWriteCapacity(int asyncWriteCapacity) {
+		this.asyncWriteCapacity = asyncWriteCapacity;
+	}
+
+	/**
+	 * @return The <code>SerializationFormat</code> creating the serialization writers.
+	 */
+	public SerializationFormat<?> getSerializationFormat() {
+		return serializationFormat;
+	}
+
+	/**
+	 * @return The HDFS resource loader used to open the destinations.
+	 */
+	public HdfsResourceLoader getHdfsResourceLoader() {
+		return hdfsResourceLoader;
+	}
+
+	/**
+	 * @return The canonical HDFS destination file path the serialization writers returned by {@link #getObject()}
+	 * write to.
+	 */
+	public String getDestination() {
+
+		Assert.notNull(serializationFormat, "A non-null SerializationFormat is required.");
+
+		if (hdfsDestinationResource != null) {
+			return canonicalSerializationDestination(serializationFormat, hdfsDestinationResource)
+					.getPathWithinContext();
+		}
+
+		Assert.state(hasText(hdfsDestinationPath), "Set either 'destinationPath' or 'destinationResource' property.");
+
+		return canonicalSerializationDestination(serializationFormat, hdfsDestinationPath);
+	}
+
 	/**
 	 * Appends serialization format {@link SerializationFormat#getExtension() extension} to passed destination (if
 	 * needed), opens an output stream to it and delegates serialization format creation to
@@ -109,25 +154,58 @@ public class SerializationWriterObjectFactory implements ObjectFactory<Serializa
 
 		OutputStream outputStream = null;
 
+		// The canonical HDFS destination path.
+		String location = null;
+
 		if (hdfsDestinationResource != null) {
 
-			outputStream = openOutputStream(serializationFormat, hdfsDestinationResource);
+			HdfsResource destinationResource = canonicalSerializationDestination(serializationFormat,
+					hdfsDestinationResource);
+
+			location = destinationResource.getPathWithinContext();
+
+			outputStream = openOutputStream(serializationFormat, destinationResource);
 
 		} else if (hasText(hdfsDestinationPath)) {
 
-			outputStream = openOutputStream(serializationFormat, hdfsDestinationPath);
+			location = canonicalSerializationDestination(serializationFormat, hdfsDestinationPath);
+
+			outputStream = openOutputStream(serializationFormat, location);
 
 		} else {
 			Assert.state(false, "Set either 'destinationPath' or 'destinationResource' property.");
 		}
 
 		try {
-			return serializationFormat.getWriter(outputStream);
+			SerializationWriter<?> serializationWriter;
+
+			if (serializationFormat instanceof LocationAwareSerializationFormat) {
+				serializationWriter = ((LocationAwareSerializationFormat<?>) serializationFormat).getWriter(
+						outputStream, location);
+			} else {
+				serializationWriter = serializationFormat.getWriter(outputStream);
+			}
+
+			if (asyncWriteCapacity > 0) {
+				serializationWriter = newAsyncSerializationWriter(serializationWriter);
+			}
+
+			return serializationWriter;
 		} catch (IOException ioExc) {
 			throw new BeanCreationException("Unable to create SerializationWriter.", ioExc);
 		}
 	}
 
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private SerializationWriter<?> newAsyncSerializationWriter(SerializationWriter<?> serializationWriter) {
+		// Keep the writer syncable, so it could still be checkpointed.
+		if (serializationWriter instanceof SyncableSerializationWriter) {
+			return new SyncableAsyncSerializationWriter((SyncableSerializationWriter) serializationWriter,
+					asyncWriteCapacity);
+		}
+		return new AsyncSerializationWriter(serializationWriter, asyncWriteCapacity);
+	}
+
 	/**
 	 * @param serializationFormat
 	 * @param destination The HDFS destination file path to write to.
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link SerializationFormat} whose files can be cut into byte ranges that are read independently (and
+ * concurrently). The range boundaries are aligned to the synchronization points of the underlying format (such as Avro
+ * sync markers or SequenceFile sync points), so every object is read by exactly one of the readers.
+ *
+ * @param <T> The type of objects (de)serialized by this serialization format.
+ *
+ * @see {@link AvroFormat}
+ * @see {@link SequenceFileFormat}
+ * @see {@link AvroSequenceFileFormat}
+ *
+ * @author Alex Savov
+ */
+public interface SplittableSerializationFormat<T> extends SerializationFormat<T> {
+
+	/**
+	 * Creates a serialization reader that reads the objects of the specified byte range. The reader starts at the first
+	 * synchronization point after <code>start</code> and stops at the first synchronization point after
+	 * <code>end</code>.
+	 *
+	 * @param location The location to read from.
+	 * @param start The start (inclusive) of the byte range.
+	 * @param end The end (exclusive) of the byte range.
+	 *
+	 * @return A Reader that reads the objects of the specified byte range.
+	 */
+	SerializationReader<T> getReader(String location, long start, long end) throws IOException;
+
+	/**
+	 * Cuts the file at specified location into (at most) <code>desiredSplits</code> byte ranges of equal length and
+	 * creates a serialization reader for every range. The readers are independent of each other and can be drained
+	 * concurrently.
+	 *
+	 * @param location The location to read from.
+	 * @param desiredSplits The desired number of splits.
+	 *
+	 * @return Readers that read the file at specified location, ordered by their byte range.
+	 */
+	List<SerializationReader<T>> getReaders(String location, int desiredSplits) throws IOException;
+
+}
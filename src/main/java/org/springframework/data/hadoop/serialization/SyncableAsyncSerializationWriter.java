@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+
+/**
+ * An {@link AsyncSerializationWriter} of a {@link SyncableSerializationWriter}. {@link #sync()} waits for the objects
+ * buffered so far to be written and syncs the underlying writer from the writer thread, so the underlying writer is
+ * never accessed by two threads.
+ *
+ * @author Alex Savov
+ */
+public class SyncableAsyncSerializationWriter<T> extends AsyncSerializationWriter<T> implements
+		SyncableSerializationWriter<T> {
+
+	/**
+	 * @param writer The syncable writer to delegate to from a dedicated thread.
+	 */
+	public SyncableAsyncSerializationWriter(SyncableSerializationWriter<T> writer) {
+		super(writer);
+	}
+
+	/**
+	 * @param writer The syncable writer to delegate to from a dedicated thread.
+	 * @param capacity The max number of objects buffered.
+	 */
+	public SyncableAsyncSerializationWriter(SyncableSerializationWriter<T> writer, int capacity) {
+		super(writer, capacity);
+	}
+
+	@Override
+	public long sync() throws IOException {
+		return syncBuffered();
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.data.hadoop.serialization;
+
+import java.io.IOException;
+
+/**
+ * A {@link SerializationWriter} which could be synced in the middle of the write, such as upon the commit of a Spring
+ * Batch chunk.
+ *
+ * @author Alex Savov
+ */
+public interface SyncableSerializationWriter<T> extends SerializationWriter<T> {
+
+	/**
+	 * Pushes the objects written so far to the underlying stream and syncs it, so they survive a crash of the writer
+	 * and are visible to the readers. The file ends at an object boundary once synced.
+	 *
+	 * @return The number of bytes written to the underlying stream; <code>-1</code> if unknown.
+	 */
+	long sync() throws IOException;
+
+}
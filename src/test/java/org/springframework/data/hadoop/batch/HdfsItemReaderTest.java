@@ -15,13 +15,35 @@
  */
 package org.springframework.data.hadoop.batch;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
 import org.springframework.batch.item.file.MultiResourceItemReader;
 import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.item.file.mapping.PassThroughLineMapper;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -40,6 +62,8 @@ public class HdfsItemReaderTest {
 	ResourceAwareItemReaderItemStream reader;
 	@Autowired
 	MultiResourceItemReader multiReader;
+	@Autowired
+	HdfsResourceLoader loader;
 
 	@Test
 	public void testSingleReader() throws Exception {
@@ -61,4 +85,510 @@ public class HdfsItemReaderTest {
 			reader.close();
 		}
 	}
+
+	@Test
+	public void testBlockPartitionedReaders() throws Exception {
+		Path path = new Path("/batch-partitions/lines.txt");
+		List<String> lines = writeLines(path, 1000);
+
+		HdfsBlockPartitioner partitioner = new HdfsBlockPartitioner();
+		partitioner.setHdfsResourceLoader(loader);
+		partitioner.setLocationPattern("/batch-partitions/*.txt");
+		partitioner.afterPropertiesSet();
+
+		Map<String, ExecutionContext> partitions = partitioner.partition(4);
+		assertTrue(partitions.size() > 1);
+
+		List<String> read = new ArrayList<String>();
+
+		for (ExecutionContext partition : partitions.values()) {
+			assertEquals(path.toUri().getPath(), partition.getString(HdfsBlockPartitioner.LOCATION_KEY));
+
+			HdfsItemReader<String> rangeReader = createLineReader(path);
+			rangeReader.setStart(partition.getLong(HdfsBlockPartitioner.START_KEY));
+			rangeReader.setEnd(partition.getLong(HdfsBlockPartitioner.END_KEY));
+
+			try {
+				rangeReader.open(new ExecutionContext());
+				for (String line; (line = rangeReader.read()) != null;) {
+					read.add(line);
+				}
+			} finally {
+				rangeReader.close();
+			}
+		}
+
+		assertEquals(lines, read);
+	}
+
+	@Test
+	public void testRangeReadersSkipHeaderOnce() throws Exception {
+		Path path = new Path("/batch-header/lines.txt");
+		List<String> lines = writeLines(path, 100);
+		long length = loader.getFileSystem().getFileStatus(path).getLen();
+
+		List<String> read = new ArrayList<String>();
+
+		for (long[] range : new long[][] { { 0, length / 2 }, { length / 2, length } }) {
+			HdfsItemReader<String> rangeReader = createLineReader(path);
+			rangeReader.setLinesToSkip(1);
+			rangeReader.setStart(range[0]);
+			rangeReader.setEnd(range[1]);
+
+			try {
+				rangeReader.open(new ExecutionContext());
+				for (String line; (line = rangeReader.read()) != null;) {
+					read.add(line);
+				}
+			} finally {
+				rangeReader.close();
+			}
+		}
+
+		// only the first line of the file is skipped
+		assertEquals(lines.subList(1, lines.size()), read);
+	}
+
+	@Test
+	public void testOffsetRestart() throws Exception {
+		Path path = new Path("/batch-restart/lines.txt");
+		List<String> lines = writeLines(path, 100);
+
+		HdfsItemReader<String> failed = createLineReader(path);
+		ExecutionContext executionContext = new ExecutionContext();
+		List<String> read = new ArrayList<String>();
+
+		try {
+			failed.open(executionContext);
+			for (int i = 0; i < 40; i++) {
+				read.add(failed.read());
+			}
+			failed.update(executionContext);
+			// read, but never committed
+			failed.read();
+		} finally {
+			failed.close();
+		}
+
+		// the offset following the 40 committed lines, not the one read afterwards
+		long offset = 0;
+		for (String line : lines.subList(0, 40)) {
+			offset += (line + "\n").getBytes("UTF-8").length;
+		}
+		assertEquals(offset, executionContext.getLong("HdfsItemReader.read.offset"));
+
+		HdfsItemReader<String> restarted = createLineReader(path);
+		try {
+			restarted.open(executionContext);
+			for (String line; (line = restarted.read()) != null;) {
+				read.add(line);
+			}
+		} finally {
+			restarted.close();
+		}
+
+		assertEquals(lines, read);
+	}
+
+	@Test
+	public void testLineReaderCharacters() throws Exception {
+		Path path = new Path("/batch-chars/lines.txt");
+		List<String> lines = writeLines(path, 100);
+		FileSystem fs = loader.getFileSystem();
+		long length = fs.getFileStatus(path).getLen();
+
+		StringBuilder expected = new StringBuilder();
+		for (String line : lines) {
+			expected.append(line).append('\n');
+		}
+
+		HdfsItemReader.HdfsLineReader lineReader;
+		lineReader = new HdfsItemReader.HdfsLineReader(fs.open(path), Charset.forName("UTF-8"), 0, length);
+		StringBuilder read = new StringBuilder();
+		try {
+			assertEquals('l', lineReader.read());
+			assertEquals(4, lineReader.skip(4));
+			// the rest of the first line
+			assertEquals(lines.get(0).substring(5), lineReader.readLine());
+			read.append(lines.get(0)).append('\n');
+
+			char[] chars = new char[7];
+			for (int count; (count = lineReader.read(chars, 0, chars.length)) != -1;) {
+				read.append(chars, 0, count);
+			}
+			assertEquals(-1, lineReader.read());
+			assertNull(lineReader.readLine());
+		} finally {
+			lineReader.close();
+		}
+
+		assertEquals(expected.toString(), read.toString());
+
+		try {
+			lineReader.read();
+			fail("reading a closed reader should fail");
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPrefetchingMultiReader() throws Exception {
+		List<String> lines = writePrefetchedLines();
+
+		for (boolean ordered : new boolean[] { true, false }) {
+			HdfsPrefetchingMultiResourceItemReader<String> prefetching;
+			prefetching = createPrefetchingReader(new LineReaderFactory());
+			prefetching.setOrdered(ordered);
+			prefetching.afterPropertiesSet();
+
+			List<String> read = new ArrayList<String>();
+			try {
+				prefetching.open(new ExecutionContext());
+				for (String line; (line = prefetching.read()) != null;) {
+					read.add(line);
+				}
+			} finally {
+				prefetching.close();
+			}
+
+			if (ordered) {
+				assertEquals(lines, read);
+			}
+			else {
+				List<String> sortedLines = new ArrayList<String>(lines);
+				Collections.sort(sortedLines);
+				Collections.sort(read);
+				assertEquals(sortedLines, read);
+			}
+		}
+	}
+
+	@Test
+	public void testPrefetchingMultiReaderRestart() throws Exception {
+		List<String> lines = writePrefetchedLines();
+
+		ExecutionContext executionContext = new ExecutionContext();
+		List<String> read = new ArrayList<String>();
+
+		HdfsPrefetchingMultiResourceItemReader<String> failed = createPrefetchingReader(new LineReaderFactory());
+		failed.afterPropertiesSet();
+		try {
+			failed.open(executionContext);
+			for (int i = 0; i < 25; i++) {
+				read.add(failed.read());
+			}
+			failed.update(executionContext);
+			// read, but never committed
+			failed.read();
+		} finally {
+			failed.close();
+		}
+
+		// the files hold 10, 11, 12... lines: 4 lines of the third one are committed
+		assertEquals(2, executionContext.getInt("HdfsPrefetchingMultiResourceItemReader.resourceIndex"));
+		assertEquals(4, executionContext.getLong("HdfsPrefetchingMultiResourceItemReader.itemIndex"));
+
+		HdfsPrefetchingMultiResourceItemReader<String> restarted = createPrefetchingReader(new LineReaderFactory());
+		restarted.afterPropertiesSet();
+		try {
+			restarted.open(executionContext);
+			for (String line; (line = restarted.read()) != null;) {
+				read.add(line);
+			}
+		} finally {
+			restarted.close();
+		}
+
+		assertEquals(lines, read);
+	}
+
+	@Test
+	public void testPrefetchingMultiReaderDelegateFailure() throws Exception {
+		List<String> lines = writePrefetchedLines();
+
+		LineReaderFactory delegateFactory = new LineReaderFactory();
+		delegateFactory.lineMapper = new LineMapper<String>() {
+			public String mapLine(String line, int lineNumber) throws Exception {
+				if (lineNumber == 6) {
+					throw new IllegalArgumentException("Cannot map line " + lineNumber + ".");
+				}
+				return line;
+			}
+		};
+
+		HdfsPrefetchingMultiResourceItemReader<String> prefetching = createPrefetchingReader(delegateFactory);
+		prefetching.afterPropertiesSet();
+
+		List<String> read = new ArrayList<String>();
+		int failures = 0;
+
+		try {
+			prefetching.open(new ExecutionContext());
+			for (;;) {
+				try {
+					String line = prefetching.read();
+					if (line == null) {
+						break;
+					}
+					read.add(line);
+				} catch (FlatFileParseException ex) {
+					failures++;
+
+					if (failures == 1) {
+						// the failure neither ends the resource nor counts as read
+						ExecutionContext context = new ExecutionContext();
+						prefetching.update(context);
+						assertEquals(0, context.getInt("HdfsPrefetchingMultiResourceItemReader.resourceIndex"));
+						assertEquals(5, context.getLong("HdfsPrefetchingMultiResourceItemReader.itemIndex"));
+					}
+				}
+			}
+		} finally {
+			prefetching.close();
+		}
+
+		// every file but its 6th line is read
+		assertEquals(10, failures);
+
+		List<String> expected = new ArrayList<String>(lines);
+		expected.removeAll(Collections.singleton("line 5"));
+		assertEquals(expected, read);
+	}
+
+	@Test
+	public void testPrefetchingMultiReaderCloseWhileReading() throws Exception {
+		writePrefetchedLines();
+
+		LineReaderFactory delegateFactory = new LineReaderFactory();
+
+		HdfsPrefetchingMultiResourceItemReader<String> prefetching = createPrefetchingReader(delegateFactory);
+		prefetching.afterPropertiesSet();
+
+		prefetching.open(new ExecutionContext());
+		assertNotNull(prefetching.read());
+		prefetching.close();
+
+		// the reads blocked on their full buffers stop and close their delegates
+		long deadline = System.currentTimeMillis() + 10000;
+		while (delegateFactory.closed.get() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(3, delegateFactory.created.get());
+		assertEquals(3, delegateFactory.closed.get());
+	}
+
+	@Test
+	public void testPrefetchingMultiReaderRejectedRead() throws Exception {
+		List<String> lines = writePrefetchedLines();
+
+		final AtomicInteger rejected = new AtomicInteger();
+
+		HdfsPrefetchingMultiResourceItemReader<String> prefetching = createPrefetchingReader(new LineReaderFactory());
+		prefetching.setTaskExecutor(new TaskExecutor() {
+			private final AtomicInteger submitted = new AtomicInteger();
+
+			public void execute(Runnable task) {
+				// the reads of the first resources are submitted by open(), the following ones by read()
+				int submit = submitted.incrementAndGet();
+				if (submit == 4 || submit == 5 || submit == 8) {
+					rejected.incrementAndGet();
+					throw new TaskRejectedException("Rejected submit " + submit + ".");
+				}
+				new Thread(task).start();
+			}
+		});
+		prefetching.afterPropertiesSet();
+
+		List<String> read = new ArrayList<String>();
+		try {
+			prefetching.open(new ExecutionContext());
+
+			// the rejected reads are submitted again while the ones in flight are consumed
+			for (String line; (line = prefetching.read()) != null;) {
+				read.add(line);
+			}
+		} finally {
+			prefetching.close();
+		}
+
+		assertEquals(3, rejected.get());
+		assertEquals(lines, read);
+	}
+
+	@Test
+	public void testPrefetchingMultiReaderRejectedOpen() throws Exception {
+		writePrefetchedLines();
+
+		HdfsPrefetchingMultiResourceItemReader<String> prefetching = createPrefetchingReader(new LineReaderFactory());
+		prefetching.setTaskExecutor(new TaskExecutor() {
+			public void execute(Runnable task) {
+				throw new TaskRejectedException("Rejected.");
+			}
+		});
+		prefetching.afterPropertiesSet();
+
+		try {
+			// no read in flight to wait for
+			prefetching.open(new ExecutionContext());
+			fail("the rejection should be re-thrown if no read is in flight");
+		} catch (TaskRejectedException ex) {
+			// expected
+		} finally {
+			prefetching.close();
+		}
+	}
+
+	@Test
+	public void testPrefetchingMultiReaderOpenFailure() throws Exception {
+		List<String> lines = writePrefetchedLines();
+
+		LineReaderFactory delegateFactory = new LineReaderFactory();
+		delegateFactory.unopenable = "lines-2.txt";
+
+		HdfsPrefetchingMultiResourceItemReader<String> failed = createPrefetchingReader(delegateFactory);
+		failed.afterPropertiesSet();
+
+		List<String> read = new ArrayList<String>();
+		ExecutionContext executionContext = new ExecutionContext();
+
+		failed.open(executionContext);
+		try {
+			try {
+				for (String line; (line = failed.read()) != null;) {
+					read.add(line);
+				}
+				fail("the failure to open a delegate should fail the read");
+			} catch (ItemStreamException ex) {
+				// expected
+			}
+
+			// the failed resource is neither skipped nor counted as read
+			try {
+				failed.read();
+				fail("the failure to open a delegate should fail every read");
+			} catch (ItemStreamException ex) {
+				// expected
+			}
+
+			failed.update(executionContext);
+		} finally {
+			failed.close();
+		}
+
+		assertEquals(2, executionContext.getInt("HdfsPrefetchingMultiResourceItemReader.resourceIndex"));
+		assertEquals(0, executionContext.getLong("HdfsPrefetchingMultiResourceItemReader.itemIndex"));
+		assertEquals(lines.subList(0, 10 + 11), read);
+
+		// the restart opens the failed resource again
+		HdfsPrefetchingMultiResourceItemReader<String> restarted = createPrefetchingReader(new LineReaderFactory());
+		restarted.afterPropertiesSet();
+
+		restarted.open(executionContext);
+		try {
+			for (String line; (line = restarted.read()) != null;) {
+				read.add(line);
+			}
+		} finally {
+			restarted.close();
+		}
+
+		assertEquals(lines, read);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPrefetchingMultiReaderSyncExecutor() throws Exception {
+		HdfsPrefetchingMultiResourceItemReader<String> prefetching = createPrefetchingReader(new LineReaderFactory());
+		prefetching.setTaskExecutor(new SyncTaskExecutor());
+		prefetching.afterPropertiesSet();
+	}
+
+	private HdfsPrefetchingMultiResourceItemReader<String> createPrefetchingReader(LineReaderFactory delegateFactory) {
+		HdfsPrefetchingMultiResourceItemReader<String> prefetching;
+		prefetching = new HdfsPrefetchingMultiResourceItemReader<String>();
+		prefetching.setHdfsResourceLoader(loader);
+		prefetching.setLocationPattern("/batch-prefetch/*.txt");
+		prefetching.setDelegateFactory(delegateFactory);
+		prefetching.setPrefetchResources(3);
+		// small buffers so the reads block on them
+		prefetching.setBufferSize(2);
+		return prefetching;
+	}
+
+	private List<String> writePrefetchedLines() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			lines.addAll(writeLines(new Path("/batch-prefetch/lines-" + i + ".txt"), 10 + i));
+		}
+		return lines;
+	}
+
+	private HdfsItemReader<String> createLineReader(Path path) {
+		HdfsItemReader<String> lineReader = new HdfsItemReader<String>(loader);
+		lineReader.setLineMapper(new PassThroughLineMapper());
+		lineReader.setLocation(path.toUri().getPath());
+		return lineReader;
+	}
+
+	private List<String> writeLines(Path path, int count) throws Exception {
+		List<String> lines = new ArrayList<String>();
+		// small blocks so the file spans several of them
+		OutputStream out = loader.getFileSystem().create(path, true, 4096, (short) 1, 1024);
+		try {
+			for (int i = 0; i < count; i++) {
+				String line = "line " + i + (i % 3 == 0 ? " of a file split by block boundaries" : "");
+				lines.add(line);
+				out.write((line + "\n").getBytes("UTF-8"));
+			}
+		} finally {
+			out.close();
+		}
+		return lines;
+	}
+
+	/**
+	 * Creates the line reading delegates and counts the ones created and closed.
+	 */
+	static class LineReaderFactory implements ObjectFactory<FlatFileItemReader<String>> {
+
+		final AtomicInteger created = new AtomicInteger();
+
+		final AtomicInteger closed = new AtomicInteger();
+
+		LineMapper<String> lineMapper = new PassThroughLineMapper();
+
+		/* The name of a file whose delegates fail to open. */
+		volatile String unopenable;
+
+		public FlatFileItemReader<String> getObject() {
+			created.incrementAndGet();
+
+			FlatFileItemReader<String> delegate = new FlatFileItemReader<String>() {
+				private Resource resource;
+
+				@Override
+				public void setResource(Resource resource) {
+					super.setResource(resource);
+					this.resource = resource;
+				}
+
+				@Override
+				public void open(ExecutionContext executionContext) throws ItemStreamException {
+					if (resource.getFilename().equals(unopenable)) {
+						throw new ItemStreamException("Cannot open " + resource + ".");
+					}
+					super.open(executionContext);
+				}
+
+				@Override
+				public void close() throws ItemStreamException {
+					super.close();
+					closed.incrementAndGet();
+				}
+			};
+			delegate.setLineMapper(lineMapper);
+			return delegate;
+		}
+	}
 }
@@ -16,10 +16,20 @@
 package org.springframework.data.hadoop.batch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.batch.core.Job;
@@ -38,8 +48,15 @@ import org.springframework.batch.item.UnexpectedInputException;
 import org.springframework.batch.item.support.IteratorItemReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.hadoop.fs.HdfsResourceLoader;
 import org.springframework.data.hadoop.serialization.HdfsWriterTest;
 import org.springframework.data.hadoop.serialization.HdfsWriterTest.PojoWritable;
+import org.springframework.data.hadoop.serialization.ReflectiveSerializationKeyProvider;
+import org.springframework.data.hadoop.serialization.SequenceFileFormat;
+import org.springframework.data.hadoop.serialization.SerializationFormat;
+import org.springframework.data.hadoop.serialization.SerializationReader;
+import org.springframework.data.hadoop.serialization.SerializationWriterObjectFactory;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -70,6 +87,16 @@ public class HdfsSerializationFormatWriteReadTest {
 	@Qualifier("hdfsMultiResourceItemWriterJob")
 	private Job hdfsMultiResourceItemWriterJob;
 
+	@Autowired
+	private SerializationWriterObjectFactory swObjectFactory;
+
+	@Autowired
+	@Qualifier("serializationFormatRef")
+	private SerializationFormat<PojoWritable> serializationFormat;
+
+	@Value("${hdfs.item.writer.output.dir}")
+	private String outputDir;
+
 	@Test
 	public void hdfsItemWriterJob() throws Exception {
 
@@ -88,6 +115,324 @@ public class HdfsSerializationFormatWriteReadTest {
 		writeReadTest(hdfsMultiResourceItemWriterJob);
 	}
 
+	@Test
+	public void hdfsItemStreamWriterRestart() throws Exception {
+
+		List<PojoWritable> objects = HdfsWriterTest.createPojoList(PojoWritable.class, 100);
+
+		ExecutionContext executionContext = new ExecutionContext();
+
+		// Commit 50 objects, then fail in the middle of the next chunk.
+		HdfsSerializationFormatItemStreamWriter<PojoWritable> writer;
+
+		writer = createItemStreamWriter("hdfsItemStreamWriterRestart");
+		writer.open(executionContext);
+		writer.write(objects.subList(0, 25));
+		writer.update(executionContext);
+		writer.write(objects.subList(25, 50));
+		writer.update(executionContext);
+		writer.write(objects.subList(50, 60));
+
+		// Restart
+		writer = createItemStreamWriter("hdfsItemStreamWriterRestart");
+		writer.open(executionContext);
+		writer.write(objects.subList(50, 100));
+		writer.update(executionContext);
+		writer.close();
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		SerializationReader<PojoWritable> reader = serializationFormat.getReader(outputDir
+				+ "hdfsItemStreamWriterRestart");
+
+		for (PojoWritable object = null; (object = reader.read()) != null;) {
+			readObjects.add(object);
+		}
+
+		assertEquals(objects, readObjects);
+	}
+
+	@Test
+	public void hdfsItemStreamWriterRestartOfAsyncBloomFilterWriter() throws Exception {
+
+		List<PojoWritable> objects = HdfsWriterTest.createPojoList(PojoWritable.class, 100);
+
+		HdfsResourceLoader hdfsResourceLoader = swObjectFactory.getHdfsResourceLoader();
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = new SequenceFileFormat<PojoWritable>(PojoWritable.class);
+		seqFileFormat.setConfiguration(hdfsResourceLoader.getFileSystem().getConf());
+		seqFileFormat.setHdfsResourceLoader(hdfsResourceLoader);
+		seqFileFormat.setSerializationKeyProvider(new ReflectiveSerializationKeyProvider(PojoWritable.class, "name"));
+		seqFileFormat.setBloomFilterFalsePositiveRate(0.01);
+		seqFileFormat.afterPropertiesSet();
+
+		// The writers are wrapped twice: for the Bloom filter and for the asynchronous write.
+		SerializationWriterObjectFactory sfObjectFactory = new SerializationWriterObjectFactory(hdfsResourceLoader);
+		sfObjectFactory.setSerializationFormat(seqFileFormat);
+		sfObjectFactory.setAsyncWriteCapacity(10);
+
+		ExecutionContext executionContext = new ExecutionContext();
+
+		// Commit 50 objects, then fail in the middle of the next chunk.
+		HdfsSerializationFormatItemStreamWriter<PojoWritable> writer;
+
+		writer = createItemStreamWriter(sfObjectFactory, "hdfsItemStreamWriterRestartOfAsyncBloomFilterWriter");
+		writer.open(executionContext);
+		writer.write(objects.subList(0, 25));
+		writer.update(executionContext);
+		writer.write(objects.subList(25, 50));
+		writer.update(executionContext);
+		writer.write(objects.subList(50, 60));
+
+		assertEquals(50, executionContext.getLong("HdfsSerializationFormatItemStreamWriter.committed.objects"));
+
+		// Restart
+		writer = createItemStreamWriter(sfObjectFactory, "hdfsItemStreamWriterRestartOfAsyncBloomFilterWriter");
+		writer.open(executionContext);
+		writer.write(objects.subList(50, 100));
+		writer.update(executionContext);
+		writer.close();
+
+		String destination = sfObjectFactory.getDestination();
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		SerializationReader<PojoWritable> reader = seqFileFormat.getReader(destination);
+
+		for (PojoWritable object = null; (object = reader.read()) != null;) {
+			readObjects.add(object);
+		}
+
+		assertEquals(objects, readObjects);
+
+		// The Bloom filter covers the objects committed before the restart too.
+		for (PojoWritable object : objects) {
+			assertTrue(seqFileFormat.mightContain(destination, object.getName()));
+		}
+	}
+
+	@Test
+	public void hdfsItemReaderRestart() throws Exception {
+
+		List<PojoWritable> objects = HdfsWriterTest.createPojoList(PojoWritable.class, 1000);
+
+		String location = write(serializationFormat, "hdfsItemReaderRestart", objects);
+
+		itemReaderRestartTest(serializationFormat, location, objects);
+	}
+
+	@Test
+	public void hdfsItemReaderRestartOfSeqFile() throws Exception {
+
+		List<PojoWritable> objects = HdfsWriterTest.createPojoList(PojoWritable.class, 1000);
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = createSeqFileFormat(getConfiguration());
+
+		String location = write(seqFileFormat, "hdfsItemReaderRestartOfSeqFile", objects);
+
+		long syncPosition = itemReaderRestartTest(seqFileFormat, location, objects);
+
+		// Every record of an uncompressed SeqFile is a sync point.
+		assertEquals(getSeqFileSyncPosition(location, 899), syncPosition);
+	}
+
+	@Test
+	public void hdfsItemReaderRestartOfRecordCompressedSeqFile() throws Exception {
+
+		List<PojoWritable> objects = HdfsWriterTest.createPojoList(PojoWritable.class, 1000);
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = createSeqFileFormat(getConfiguration());
+
+		// The format writes block-compressed files only.
+		String location = outputDir + "hdfsItemReaderRestartOfRecordCompressedSeqFile" + seqFileFormat.getExtension();
+
+		FileSystem fs = swObjectFactory.getHdfsResourceLoader().getFileSystem();
+
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, getConfiguration(), new Path(location),
+				NullWritable.class, PojoWritable.class, CompressionType.RECORD,
+				ReflectionUtils.newInstance(DefaultCodec.class, getConfiguration()));
+		try {
+			for (PojoWritable object : objects) {
+				writer.append(NullWritable.get(), object);
+			}
+		} finally {
+			writer.close();
+		}
+
+		long syncPosition = itemReaderRestartTest(seqFileFormat, location, objects);
+
+		// Every record of a record-compressed SeqFile is a sync point.
+		assertEquals(getSeqFileSyncPosition(location, 899), syncPosition);
+	}
+
+	@Test
+	public void hdfsItemReaderRestartOfBlockCompressedSeqFile() throws Exception {
+
+		List<PojoWritable> objects = HdfsWriterTest.createPojoList(PojoWritable.class, 1000);
+
+		// Small blocks so the objects span many of them.
+		Configuration configuration = new Configuration(getConfiguration());
+		configuration.setInt("io.seqfile.compress.blocksize", 1024);
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = createSeqFileFormat(configuration);
+		seqFileFormat.setCompressionAlias(DefaultCodec.class.getName());
+
+		String location = write(seqFileFormat, "hdfsItemReaderRestartOfBlockCompressedSeqFile", objects);
+
+		long syncPosition = itemReaderRestartTest(seqFileFormat, location, objects);
+
+		// The sync marker preceding the block holding the last committed object.
+		assertEquals(getSeqFileSyncPosition(location, 899), syncPosition);
+	}
+
+	/**
+	 * Commits the first 900 objects read, fails after reading the next one and restarts the read.
+	 * 
+	 * @return The sync position stored upon the commit.
+	 */
+	private long itemReaderRestartTest(SerializationFormat<PojoWritable> format, String location,
+			List<PojoWritable> objects) throws Exception {
+
+		String syncPositionKey = "HdfsSerializationFormatItemReader.read.sync.position";
+
+		// The sync position of the first object.
+		ExecutionContext executionContext = new ExecutionContext();
+
+		HdfsSerializationFormatItemReader<PojoWritable> reader = createItemReader(format, location);
+		reader.open(executionContext);
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+
+		long firstSyncPosition = executionContext.getLong(syncPositionKey);
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		executionContext = new ExecutionContext();
+
+		// Commit 900 objects, then fail after reading the next one.
+		reader = createItemReader(format, location);
+		reader.open(executionContext);
+		for (int i = 0; i < 900; i++) {
+			readObjects.add(reader.read());
+		}
+		reader.update(executionContext);
+		reader.read();
+		reader.close();
+
+		long syncPosition = executionContext.getLong(syncPositionKey);
+
+		// The restart point is past a later sync marker.
+		assertTrue(syncPosition > firstSyncPosition);
+
+		// Restart
+		reader = createItemReader(format, location);
+		reader.open(executionContext);
+		for (PojoWritable object = null; (object = reader.read()) != null;) {
+			readObjects.add(object);
+		}
+		reader.close();
+
+		assertEquals(objects, readObjects);
+
+		return syncPosition;
+	}
+
+	/**
+	 * @return The position preceding the record of passed index (or the block holding it if block-compressed).
+	 */
+	private long getSeqFileSyncPosition(String location, int index) throws Exception {
+
+		FileSystem fs = swObjectFactory.getHdfsResourceLoader().getFileSystem();
+
+		SequenceFile.Reader reader = new SequenceFile.Reader(fs, new Path(location), getConfiguration());
+
+		try {
+			long syncPosition = -1;
+
+			for (int i = 0; i <= index; i++) {
+				long position = reader.getPosition();
+
+				// The values of a block are read along with its first record.
+				assertTrue(reader.next(NullWritable.get(), new PojoWritable()));
+
+				// The position moves upon every record, but once per block if block-compressed.
+				if (reader.getPosition() != position) {
+					syncPosition = position;
+				}
+			}
+
+			return syncPosition;
+
+		} finally {
+			reader.close();
+		}
+	}
+
+	private SequenceFileFormat<PojoWritable> createSeqFileFormat(Configuration configuration) throws Exception {
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = new SequenceFileFormat<PojoWritable>(PojoWritable.class);
+		seqFileFormat.setConfiguration(configuration);
+		seqFileFormat.setHdfsResourceLoader(swObjectFactory.getHdfsResourceLoader());
+		seqFileFormat.afterPropertiesSet();
+
+		return seqFileFormat;
+	}
+
+	private Configuration getConfiguration() {
+		return swObjectFactory.getHdfsResourceLoader().getFileSystem().getConf();
+	}
+
+	/**
+	 * @return The canonical HDFS destination the objects are written to.
+	 */
+	private String write(SerializationFormat<PojoWritable> format, String name, List<PojoWritable> objects)
+			throws Exception {
+
+		SerializationWriterObjectFactory sfObjectFactory;
+
+		sfObjectFactory = new SerializationWriterObjectFactory(swObjectFactory.getHdfsResourceLoader());
+		sfObjectFactory.setSerializationFormat(format);
+
+		HdfsSerializationFormatItemStreamWriter<PojoWritable> writer = createItemStreamWriter(sfObjectFactory, name);
+		writer.open(new ExecutionContext());
+		writer.write(objects);
+		writer.close();
+
+		return sfObjectFactory.getDestination();
+	}
+
+	private HdfsSerializationFormatItemReader<PojoWritable> createItemReader(SerializationFormat<PojoWritable> format,
+			String location) throws Exception {
+
+		HdfsSerializationFormatItemReader<PojoWritable> reader;
+
+		reader = new HdfsSerializationFormatItemReader<PojoWritable>();
+		reader.setSerializationFormat(format);
+		reader.setLocation(location);
+		reader.afterPropertiesSet();
+
+		return reader;
+	}
+
+	private HdfsSerializationFormatItemStreamWriter<PojoWritable> createItemStreamWriter(String name) throws Exception {
+
+		return createItemStreamWriter(swObjectFactory, name);
+	}
+
+	private HdfsSerializationFormatItemStreamWriter<PojoWritable> createItemStreamWriter(
+			SerializationWriterObjectFactory sfObjectFactory, String name) throws Exception {
+
+		HdfsSerializationFormatItemStreamWriter<PojoWritable> writer;
+
+		writer = new HdfsSerializationFormatItemStreamWriter<PojoWritable>();
+		writer.setSerializationFormat(sfObjectFactory);
+		writer.setLocation(outputDir + name);
+		writer.afterPropertiesSet();
+
+		return writer;
+	}
+
 	protected void writeReadTest(Job writeReadJob) throws Exception {
 
 		// Run "write-read" job.
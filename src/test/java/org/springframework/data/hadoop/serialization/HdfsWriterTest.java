@@ -17,31 +17,58 @@ package org.springframework.data.hadoop.serialization;
 
 import static org.apache.hadoop.io.IOUtils.closeStream;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.avro.io.DatumWriter;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.serializer.JavaSerialization;
+import org.apache.hadoop.io.serializer.Serialization;
+import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ContextResource;
 import org.springframework.core.io.Resource;
 import org.springframework.data.hadoop.fs.HdfsResourceLoader;
 import org.springframework.data.hadoop.serialization.SerializationFormatOperations.SerializationWriterCallback;
@@ -49,6 +76,7 @@ import org.springframework.expression.AccessException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
 
 /**
  * Integration test for {@link SerializationFormat} testing simple and compressed writes of a file and objects to HDFS.
@@ -86,6 +114,8 @@ public class HdfsWriterTest {
 
 	private SequenceFileFormat<PojoWritable> SEQUENCE_FILE_WRITABLE;
 
+	private FastSequenceFileFormat<PojoSerializable> SEQUENCE_FILE_FAST;
+
 	private AvroSequenceFileFormat<PojoSerializable> SEQUENCE_FILE_AVRO;
 
 	@Before
@@ -130,6 +160,10 @@ public class HdfsWriterTest {
 		SEQUENCE_FILE_JAVA.setConfiguration(configuration);
 		SEQUENCE_FILE_JAVA.afterPropertiesSet();
 
+		SEQUENCE_FILE_FAST = new FastSequenceFileFormat<PojoSerializable>(PojoSerializable.class);
+		SEQUENCE_FILE_FAST.setConfiguration(configuration);
+		SEQUENCE_FILE_FAST.afterPropertiesSet();
+
 		SEQUENCE_FILE_AVRO = new AvroSequenceFileFormat<PojoSerializable>(PojoSerializable.class);
 		SEQUENCE_FILE_AVRO.setConfiguration(configuration);
 		SEQUENCE_FILE_AVRO.afterPropertiesSet();
@@ -146,131 +180,1188 @@ public class HdfsWriterTest {
 		testResourceWrite(RESOURCE_FORMAT, 1, /* no compression */null, /* doesnt matter */false);
 	}
 
-	/*
-	 * Test write from multiple source files (in our case the same one) to single HDFS destination.
-	 */
-	@Test
-	public void testWriteOfMultipleResources() throws Exception {
-		testResourceWrite(RESOURCE_FORMAT, 5, /* no compression */null, /* doesnt matter */false);
+	/*
+	 * Test write from multiple source files (in our case the same one) to single HDFS destination.
+	 */
+	@Test
+	public void testWriteOfMultipleResources() throws Exception {
+		testResourceWrite(RESOURCE_FORMAT, 5, /* no compression */null, /* doesnt matter */false);
+	}
+
+	/*
+	 * Test write from multiple source files (in our case the same one) to single Avro container.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testWriteOfMultipleResourcesToAvroContainer() throws Exception {
+
+		for (SerializationFormatSupport<Resource> resourceFormat : new SerializationFormatSupport[] {
+				MULTI_RESOURCE_FORMAT, MULTI_RESOURCE_FORMAT2 }) {
+
+			int numberOfResources = 5;
+
+			String avroContainer = testResourceWrite(resourceFormat, numberOfResources, /* no compression */null,
+			/* doesnt matter */false);
+
+			SerializationReader<Resource> reader = resourceFormat.getReader(avroContainer);
+
+			for (Resource resource; (resource = reader.read()) != null; numberOfResources--) {
+
+				InputStream originalIS = sourceResource.getInputStream();
+				InputStream readIS = resource.getInputStream();
+
+				assertEquals(sourceResource.getDescription(), resource.getDescription());
+
+				try {
+					assertTrue(IOUtils.contentEquals(originalIS, readIS));
+				} finally {
+					IOUtils.closeQuietly(originalIS);
+					IOUtils.closeQuietly(readIS);
+				}
+			}
+
+			assertEquals(0, numberOfResources);
+		}
+	}
+
+	/*
+	 * Test write from multiple source files to single Avro container splitting every resource across multiple chunks.
+	 */
+	@Test
+	public void testChunkedWriteOfMultipleResourcesToAvroContainer() throws Exception {
+
+		MULTI_RESOURCE_FORMAT.setChunkSize(64);
+		MULTI_RESOURCE_FORMAT.setExtension(".chunked.avro");
+
+		int numberOfResources = 5;
+
+		String avroContainer = testResourceWrite(MULTI_RESOURCE_FORMAT, numberOfResources, /* no compression */null,
+		/* doesnt matter */false);
+
+		SerializationReader<Resource> reader = MULTI_RESOURCE_FORMAT.getReader(avroContainer);
+
+		for (Resource resource; (resource = reader.read()) != null; numberOfResources--) {
+
+			InputStream originalIS = sourceResource.getInputStream();
+			InputStream readIS = resource.getInputStream();
+
+			assertEquals(sourceResource.getDescription(), resource.getDescription());
+
+			try {
+				assertTrue(IOUtils.contentEquals(originalIS, readIS));
+			} finally {
+				IOUtils.closeQuietly(originalIS);
+				IOUtils.closeQuietly(readIS);
+			}
+		}
+
+		closeStream(reader);
+
+		assertEquals(0, numberOfResources);
+	}
+
+	/*
+	 * Test lookup of resources by key using the index of an Avro container.
+	 */
+	@Test
+	public void testIndexedLookupOfResourceInAvroContainer() throws Exception {
+
+		List<Resource> resources = new ArrayList<Resource>();
+		List<String> contents = new ArrayList<String>();
+
+		// About 1MB of resources stored in chunks, so they spread over many Avro blocks and some span two blocks.
+		for (int i = 0; i < 300; i++) {
+			StringBuilder content = new StringBuilder();
+			while (content.length() < 1000 + (i * 37) % 5000) {
+				content.append("content of resource ").append(i).append(' ');
+			}
+			contents.add(content.toString());
+			resources.add(new ByteArrayResource(content.toString().getBytes(), "resource-" + i));
+		}
+
+		MULTI_RESOURCE_FORMAT.setIndexed(true);
+		MULTI_RESOURCE_FORMAT.setChunkSize(1024);
+
+		String destination = hdfsOutputDir + "indexed/resources" + MULTI_RESOURCE_FORMAT.getExtension();
+
+		hdfsWrite(MULTI_RESOURCE_FORMAT, resources, destination);
+
+		// The index covers many blocks, resources following others within a block and resources spanning blocks.
+		Map<String, long[]> entries = MULTI_RESOURCE_FORMAT.getResourceIndex(destination).entries;
+
+		Set<Long> blocks = new HashSet<Long>();
+		boolean skipped = false;
+		boolean spanning = false;
+
+		for (int i = 0; i < resources.size(); i++) {
+			long[] entry = entries.get("resource-" + i);
+
+			blocks.add(entry[0]);
+			skipped |= i > 0 && entry[1] > 0 && entry[0] != entries.get("resource-0")[0];
+
+			// A resource starting a block after the records of another one means the other one spans two blocks.
+			spanning |= i > 0 && entry[0] != entries.get("resource-" + (i - 1))[0] && entry[1] > 0;
+		}
+
+		assertTrue(blocks.size() >= 10);
+		assertTrue(skipped);
+		assertTrue(spanning);
+
+		// Every resource, from the first block to the last one.
+		for (int i = 0; i < resources.size(); i++) {
+			Resource resource = MULTI_RESOURCE_FORMAT.getResource(destination, "resource-" + i);
+
+			assertEquals("resource-" + i, resource.getDescription());
+
+			InputStream readIS = resource.getInputStream();
+			try {
+				assertEquals(contents.get(i), IOUtils.toString(readIS));
+			} finally {
+				IOUtils.closeQuietly(readIS);
+			}
+		}
+
+		assertNull(MULTI_RESOURCE_FORMAT.getResource(destination, "missing"));
+
+		// A truncated container file fails the lookup of the resources it lost.
+		String truncated = hdfsOutputDir + "indexed/truncated" + MULTI_RESOURCE_FORMAT.getExtension();
+		{
+			FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+			byte[] firstHalf = new byte[(int) fs.getFileStatus(new Path(destination)).getLen() / 2];
+
+			FSDataInputStream in = fs.open(new Path(destination));
+			OutputStream out = fs.create(new Path(truncated), true);
+			try {
+				in.readFully(firstHalf);
+				out.write(firstHalf);
+			} finally {
+				closeStream(in);
+				closeStream(out);
+			}
+
+			FileUtil.copy(fs, new Path(destination + ".index"), fs, new Path(truncated + ".index"), false,
+					configuration);
+		}
+
+		try {
+			MULTI_RESOURCE_FORMAT.getResource(truncated, "resource-" + (resources.size() - 1));
+			fail("The lookup of a resource lost by truncation should fail.");
+		} catch (IOException exc) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test write of pojos collection using Writable serialization.
+	 */
+	@Test
+	public void testWriteOfWritableToSeqFile() throws Exception {
+
+		testSerializationWrite(PojoWritable.class, SEQUENCE_FILE_WRITABLE, /* compress */false);
+	}
+
+	/**
+	 * Test compression write of pojos collection using Writable serialization.
+	 */
+	@Test
+	public void testCompressedWriteOfWritableToSeqFile() throws Exception {
+
+		testSerializationWrite(PojoWritable.class, SEQUENCE_FILE_WRITABLE, /* compress */true);
+	}
+
+	/**
+	 * Test write of pojos collection using Java serialization.
+	 */
+	@Test
+	public void testWriteOfSerializableToSeqFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_JAVA, /* compress */false);
+	}
+
+	/**
+	 * Test compressed write of pojos collection using Java serialization.
+	 */
+	@Test
+	public void testCompressedWriteOfSerializableToSeqFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_JAVA, /* compress */true);
+	}
+
+	/**
+	 * Test write of pojos collection using reflective binary serialization.
+	 */
+	@Test
+	public void testWriteOfSerializableToFastSeqFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_FAST, /* compress */false);
+	}
+
+	/**
+	 * Test compressed write of pojos collection using reflective binary serialization.
+	 */
+	@Test
+	public void testCompressedWriteOfSerializableToFastSeqFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_FAST, /* compress */true);
+	}
+
+	/**
+	 * Test the reflective binary serialization is registered with a copy of the shared configuration only, so a
+	 * plain SeqFile format sharing it still writes the same class with Java serialization.
+	 */
+	@Test
+	public void testFastSeqFileLeavesSharedConfigurationUnchanged() throws Exception {
+
+		assertFalse(configuration.getStringCollection(ReflectiveBinarySerialization.CLASSES).contains(
+				PojoSerializable.class.getName()));
+
+		Serialization<?> serialization = new SerializationFactory(configuration).getSerialization(PojoSerializable.class);
+		assertTrue(serialization instanceof JavaSerialization);
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_JAVA, /* compress */false);
+	}
+
+	/**
+	 * Test round-trip of enum constants with a body (instances of an anonymous subclass of their enum) and of
+	 * non-ASCII strings using reflective binary serialization.
+	 */
+	@Test
+	public void testWriteOfEnumsAndStringsToFastSeqFile() throws Exception {
+
+		FastSequenceFileFormat<PojoEnum> format = new FastSequenceFileFormat<PojoEnum>(PojoEnum.class);
+		format.setConfiguration(configuration);
+		format.setHdfsResourceLoader(hdfsResourceLoader);
+		format.afterPropertiesSet();
+
+		List<PojoEnum> objects = new ArrayList<PojoEnum>();
+		for (int i = 0; i < 1000; i++) {
+			objects.add(new PojoEnum(i));
+		}
+
+		String destination = hdfsOutputDir + "fast/" + PojoEnum.class.getSimpleName() + format.getExtension();
+
+		hdfsWrite(format, objects, destination);
+
+		SerializationReader<PojoEnum> reader = format.getReader(destination);
+
+		List<PojoEnum> readObjects = new ArrayList<PojoEnum>();
+		for (PojoEnum readObject = reader.read(); readObject != null; readObject = reader.read()) {
+			readObjects.add(readObject);
+		}
+
+		closeStream(reader);
+
+		assertEquals(objects.size(), readObjects.size());
+
+		for (int i = 0; i < objects.size(); i++) {
+			assertSame(objects.get(i).level, readObjects.get(i).level);
+			assertSame(objects.get(i).levels.get(1), readObjects.get(i).levels.get(1));
+			assertSame(objects.get(i).any, readObjects.get(i).any);
+			assertEquals(objects.get(i).name, readObjects.get(i).name);
+		}
+	}
+
+	/**
+	 * Test write of pojos collection using Avro serialization.
+	 */
+	@Test
+	public void testWriteOfAvroToSeqFile() throws Exception {
+
+		SEQUENCE_FILE_AVRO.setSerializationKeyProvider(new SerializationKeyProvider() {
+
+			public Void getKey(Object object) {
+				return (Void) null;
+			}
+
+			public Class<Void> getKeyClass(Class<?> objectClass) {
+				return Void.class;
+			}
+		});
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_AVRO, /* compress */false);
+	}
+
+	/**
+	 * Test compressed write of pojos collection using Avro serialization.
+	 */
+	@Test
+	public void testCompressedWriteOfAvroToSeqFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_AVRO, /* compress */true);
+	}
+
+	/**
+	 * Test write of pojos collection using Avro serialization.
+	 */
+	@Test
+	public void testWriteOfPojoToAvroFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, AVRO, /* compress */false);
+	}
+
+	/**
+	 * Test compression write of pojos collection using Avro serialization.
+	 */
+	@Test
+	public void testCompressedtestWriteOfPojoToAvroFile() throws Exception {
+
+		testSerializationWrite(PojoSerializable.class, AVRO, /* compress */true);
+	}
+
+	/**
+	 * Test read of pojos collection using Avro serialization with projected reader schema.
+	 */
+	@Test
+	public void testProjectedReadOfPojoFromAvroFile() throws Exception {
+
+		List<PojoSerializable> objects = createPojoList(PojoSerializable.class, 5000);
+
+		// Every object gets its own description, so reading it back unprojected could not go unnoticed.
+		for (int i = 0; i < objects.size(); i++) {
+			objects.get(i).setDescription("Description of pojo #" + i);
+		}
+
+		String destination = hdfsOutputDir + "projection/" + PojoSerializable.class.getSimpleName() + "_"
+				+ objects.size() + AVRO.getExtension();
+
+		hdfsWrite(AVRO, objects, destination);
+
+		AVRO.setHdfsResourceLoader(hdfsResourceLoader);
+		AVRO.setProjection("id", "name");
+
+		List<PojoSerializable> readObjects = new ArrayList<PojoSerializable>();
+		{
+			SerializationReader<PojoSerializable> reader = AVRO.getReader(destination);
+
+			for (PojoSerializable readObject = reader.read(); readObject != null; readObject = reader.read()) {
+				readObjects.add(readObject);
+			}
+
+			closeStream(reader);
+		}
+
+		assertEquals(objects.size(), readObjects.size());
+
+		for (int i = 0; i < objects.size(); i++) {
+			assertEquals(objects.get(i).id, readObjects.get(i).id);
+			assertEquals(objects.get(i).getName(), readObjects.get(i).getName());
+			// Not projected fields are left as initialized by the default constructor.
+			assertFalse(objects.get(i).getDescription().equals(readObjects.get(i).getDescription()));
+			assertEquals(new PojoSerializable().getDescription(), readObjects.get(i).getDescription());
+		}
+	}
+
+	/**
+	 * Test asynchronous write of pojos collection using Avro serialization.
+	 */
+	@Test
+	public void testAsyncWriteOfPojoToAvroFile() throws Exception {
+
+		sfObjectFactory.setAsyncWriteCapacity(100);
+
+		testSerializationWrite(PojoSerializable.class, AVRO, /* compress */false);
+	}
+
+	/**
+	 * Test asynchronous write re-throws the error of the underlying writer and releases it.
+	 */
+	@Test(timeout = 10000)
+	public void testAsyncWriteFailureOfUnderlyingWriter() throws Exception {
+
+		ListSerializationWriter<PojoSerializable> delegate = new ListSerializationWriter<PojoSerializable>();
+		delegate.failAt = 3;
+
+		AsyncSerializationWriter<PojoSerializable> writer = new AsyncSerializationWriter<PojoSerializable>(delegate, 2);
+
+		IOException error = null;
+		try {
+			for (PojoSerializable object : createPojoList(PojoSerializable.class, 100)) {
+				writer.write(object);
+			}
+		} catch (IOException exc) {
+			error = exc;
+		}
+		try {
+			writer.close();
+		} catch (IOException exc) {
+			error = (error != null ? error : exc);
+		}
+
+		assertSame(delegate.failure, error);
+		assertEquals(2, delegate.written.size());
+		assertTrue(delegate.closed);
+	}
+
+	/**
+	 * Test asynchronous write blocks the calling thread while the buffer is full.
+	 */
+	@Test(timeout = 10000)
+	public void testAsyncWriteBackpressure() throws Exception {
+
+		final int capacity = 2;
+
+		final ListSerializationWriter<PojoSerializable> delegate = new ListSerializationWriter<PojoSerializable>();
+		delegate.blocked = new CountDownLatch(1);
+
+		final AsyncSerializationWriter<PojoSerializable> writer = new AsyncSerializationWriter<PojoSerializable>(
+				delegate, capacity);
+
+		final List<PojoSerializable> objects = createPojoList(PojoSerializable.class, 20);
+		final AtomicInteger buffered = new AtomicInteger();
+
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (PojoSerializable object : objects) {
+						writer.write(object);
+						buffered.incrementAndGet();
+					}
+					writer.close();
+				} catch (IOException exc) {
+					throw new IllegalStateException(exc);
+				}
+			}
+		};
+		producer.start();
+
+		Thread.sleep(500);
+
+		// The writer thread holds at most the object taken and a buffer full of objects drained along with it,
+		// while the buffer fills up again.
+		assertTrue(producer.isAlive());
+		assertTrue(buffered.get() <= 2 * capacity + 1);
+		assertTrue(delegate.written.isEmpty());
+
+		delegate.blocked.countDown();
+		producer.join();
+
+		assertEquals(objects, delegate.written);
+		assertTrue(delegate.closed);
+	}
+
+	/**
+	 * Test asynchronous write fails rather than blocks once the writer thread has terminated.
+	 */
+	@Test(timeout = 10000)
+	public void testAsyncWriteAfterWriterThreadTerminated() throws Exception {
+
+		ListSerializationWriter<PojoSerializable> delegate = new ListSerializationWriter<PojoSerializable>();
+
+		AsyncSerializationWriter<PojoSerializable> writer = new AsyncSerializationWriter<PojoSerializable>(delegate, 1);
+
+		writer.writerThread.interrupt();
+		writer.writerThread.join();
+
+		try {
+			writer.write(new PojoSerializable());
+			fail("The write should fail once the writer thread has terminated.");
+		} catch (InterruptedIOException exc) {
+			// expected
+		}
+
+		// An object buffered right before the writer thread terminated leaves no space for the end of writes.
+		writer.buffer.add(new PojoSerializable());
+
+		try {
+			writer.close();
+			fail("The close should fail once the writer thread has terminated.");
+		} catch (InterruptedIOException exc) {
+			// expected
+		}
+
+		assertTrue(delegate.written.isEmpty());
+		assertTrue(delegate.closed);
+	}
+
+	/**
+	 * Test write of pojos collection rolling over multiple Avro files.
+	 */
+	@Test
+	public void testRollingWriteOfPojoToAvroFiles() throws Exception {
+
+		List<PojoSerializable> objects = createPojoList(PojoSerializable.class, 5000);
+
+		RollingSerializationWriter<PojoSerializable> writer = new RollingSerializationWriter<PojoSerializable>(
+				hdfsResourceLoader, AVRO);
+		writer.setPathFormat(hdfsOutputDir + "rolling/%1$tY");
+		writer.setMaxRecords(1000);
+
+		for (PojoSerializable object : objects) {
+			writer.write(object);
+		}
+
+		// A failing close (final roll or rename) fails the test.
+		writer.close();
+
+		assertEquals(5, writer.getRolledLocations().size());
+
+		AVRO.setHdfsResourceLoader(hdfsResourceLoader);
+
+		List<PojoSerializable> readObjects = new ArrayList<PojoSerializable>();
+
+		for (String location : writer.getRolledLocations()) {
+			assertHdfsFileExists(location);
+
+			SerializationReader<PojoSerializable> reader = AVRO.getReader(location);
+
+			for (PojoSerializable readObject = reader.read(); readObject != null; readObject = reader.read()) {
+				readObjects.add(readObject);
+			}
+
+			closeStream(reader);
+		}
+
+		assertEquals(objects, readObjects);
+	}
+
+	/**
+	 * Test split read of pojos collection written using Avro serialization.
+	 */
+	@Test
+	public void testSplitReadOfPojoFromAvroFile() throws Exception {
+
+		testSplitRead(PojoSerializable.class, AVRO);
+	}
+
+	/**
+	 * Test split read of pojos collection written using Writable serialization.
+	 */
+	@Test
+	public void testSplitReadOfWritableFromSeqFile() throws Exception {
+
+		testSplitRead(PojoWritable.class, SEQUENCE_FILE_WRITABLE);
+	}
+
+	/**
+	 * Test split read (seeks included) of pojos collection written using Avro serialization with read-ahead.
+	 */
+	@Test
+	public void testReadAheadSplitReadOfPojoFromAvroFile() throws Exception {
+
+		// Small buffers, so the reads span many of them.
+		AVRO.setReadAheadBuffers(3);
+		AVRO.setReadAheadBufferSize(4096);
+
+		testSplitRead(PojoSerializable.class, AVRO);
+	}
+
+	/**
+	 * Test split read (seeks included) of pojos collection written using Writable serialization with read-ahead.
+	 */
+	@Test
+	public void testReadAheadSplitReadOfWritableFromSeqFile() throws Exception {
+
+		SEQUENCE_FILE_WRITABLE.setReadAheadBuffers(3);
+		SEQUENCE_FILE_WRITABLE.setReadAheadBufferSize(4096);
+
+		testSplitRead(PojoWritable.class, SEQUENCE_FILE_WRITABLE);
+	}
+
+	/**
+	 * Test record-reuse read of pojos collection written using Writable serialization.
+	 */
+	@Test
+	public void testReuseReadOfWritableFromSeqFile() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 5000);
+
+		String destination = hdfsOutputDir + "reuse/" + PojoWritable.class.getSimpleName() + "_" + objects.size()
+				+ SEQUENCE_FILE_WRITABLE.getExtension();
+
+		hdfsWrite(SEQUENCE_FILE_WRITABLE, objects, destination);
+
+		SEQUENCE_FILE_WRITABLE.setHdfsResourceLoader(hdfsResourceLoader);
+		SEQUENCE_FILE_WRITABLE.setReuseRecords(true);
+
+		SerializationReader<PojoWritable> reader = SEQUENCE_FILE_WRITABLE.getReader(destination);
+
+		PojoWritable firstObject = reader.read();
+
+		int count = 0;
+
+		for (PojoWritable readObject = firstObject; readObject != null; readObject = reader.read()) {
+			// The same instance is re-populated on every read.
+			assertSame(firstObject, readObject);
+			assertEquals(objects.get(count++), readObject);
+		}
+
+		closeStream(reader);
+
+		assertEquals(objects.size(), count);
+	}
+
+	/**
+	 * Test point and range lookups of sorted Writable pojos in a MapFile.
+	 */
+	@Test
+	public void testLookupOfWritableFromMapFile() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 5000);
+
+		Collections.sort(objects, new Comparator<PojoWritable>() {
+			@Override
+			public int compare(PojoWritable pojo, PojoWritable other) {
+				return pojo.getName().compareTo(other.getName());
+			}
+		});
+
+		MapFileFormat<PojoWritable> mapFileFormat = new MapFileFormat<PojoWritable>(PojoWritable.class);
+		mapFileFormat.setConfiguration(configuration);
+		mapFileFormat.setHdfsResourceLoader(hdfsResourceLoader);
+		mapFileFormat.setSerializationKeyProvider(new ReflectiveSerializationKeyProvider(PojoWritable.class, "name"));
+		mapFileFormat.setIndexInterval(64);
+		mapFileFormat.afterPropertiesSet();
+
+		String destination = hdfsOutputDir + PojoWritable.class.getSimpleName() + "_" + objects.size()
+				+ mapFileFormat.getExtension();
+
+		hdfsWrite(mapFileFormat, objects, destination);
+
+		assertHdfsFileExists(destination);
+
+		for (int i : new int[] { 0, 63, 64, 1000, objects.size() - 1 }) {
+			assertEquals(objects.get(i), mapFileFormat.get(destination, objects.get(i).getName()));
+		}
+
+		assertNull(mapFileFormat.get(destination, "[not-present]"));
+
+		SerializationReader<PojoWritable> reader = mapFileFormat.range(destination, objects.get(100).getName(),
+				objects.get(300).getName());
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		for (PojoWritable readObject = reader.read(); readObject != null; readObject = reader.read()) {
+			readObjects.add(readObject);
+		}
+
+		closeStream(reader);
+
+		assertEquals(objects.subList(100, 300), readObjects);
+	}
+
+	/**
+	 * Test key membership checks of a SeqFile using the Bloom filter written next to it.
+	 */
+	@Test
+	public void testBloomFilterOfWritableSeqFile() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 5000);
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = new SequenceFileFormat<PojoWritable>(PojoWritable.class);
+		seqFileFormat.setConfiguration(configuration);
+		seqFileFormat.setHdfsResourceLoader(hdfsResourceLoader);
+		seqFileFormat.setSerializationKeyProvider(new ReflectiveSerializationKeyProvider(PojoWritable.class, "name"));
+		seqFileFormat.setBloomFilterFalsePositiveRate(0.01);
+		seqFileFormat.afterPropertiesSet();
+
+		String destination = hdfsOutputDir + "bloom/" + PojoWritable.class.getSimpleName() + "_" + objects.size()
+				+ seqFileFormat.getExtension();
+
+		hdfsWrite(seqFileFormat, objects, destination);
+
+		assertHdfsFileExists(destination + ".bloom");
+
+		// No false negatives.
+		for (PojoWritable pojo : objects) {
+			assertTrue(seqFileFormat.mightContain(destination, pojo.getName()));
+		}
+
+		int falsePositives = 0;
+
+		for (int i = 0; i < 10000; i++) {
+			if (seqFileFormat.mightContain(destination, "[not-present-" + i + "]")) {
+				falsePositives++;
+			}
+		}
+
+		assertTrue("Too many false positives: " + falsePositives, falsePositives < 300);
+
+		// A key of another type would be digested differently, so it is rejected rather than reported as absent.
+		try {
+			seqFileFormat.mightContain(destination, new Text(objects.get(0).getName()));
+			fail("A key not of the provided key class must be rejected.");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	/**
+	 * Test merged read of several SeqFiles sorted by the same key, with and without collapsing of equal keys.
+	 */
+	@Test
+	public void testMergedReadOfSortedWritableSeqFiles() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 3000);
+
+		SequenceFileFormat<PojoWritable> seqFileFormat = new SequenceFileFormat<PojoWritable>(PojoWritable.class);
+		seqFileFormat.setConfiguration(configuration);
+		seqFileFormat.setHdfsResourceLoader(hdfsResourceLoader);
+		seqFileFormat.afterPropertiesSet();
+
+		String destination = hdfsOutputDir + "merge/" + PojoWritable.class.getSimpleName() + "_part-";
+
+		// Every part is sorted by id; the last one duplicates every 10th object.
+		for (int part = 0; part < 4; part++) {
+			List<PojoWritable> partObjects = new ArrayList<PojoWritable>();
+
+			for (int i = part < 3 ? part : 0; i < objects.size(); i += part < 3 ? 3 : 10) {
+				partObjects.add(objects.get(i));
+			}
+
+			hdfsWrite(seqFileFormat, partObjects, destination + part + seqFileFormat.getExtension());
+		}
+
+		SerializationKeyProvider keyProvider = new ReflectiveSerializationKeyProvider(PojoSerializable.class, "id");
+
+		// Plain merge keeps the duplicates next to each other.
+		List<PojoWritable> mergedObjects = new ArrayList<PojoWritable>();
+
+		for (int i = 0; i < objects.size(); i++) {
+			mergedObjects.add(objects.get(i));
+			if (i % 10 == 0) {
+				mergedObjects.add(objects.get(i));
+			}
+		}
+
+		MergingSerializationReader<PojoWritable> reader = MergingSerializationReader.open(seqFileFormat,
+				hdfsResourceLoader, destination + "*", keyProvider);
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		for (PojoWritable readObject = null; (readObject = reader.read()) != null;) {
+			readObjects.add(readObject);
+		}
+
+		assertEquals(mergedObjects, readObjects);
+
+		// Combined merge collapses them.
+		reader = MergingSerializationReader.open(seqFileFormat, hdfsResourceLoader, destination + "*", keyProvider);
+
+		final int[] combined = { 0 };
+
+		reader.setCombiner(new MergingSerializationReader.Combiner<PojoWritable>() {
+			@Override
+			public PojoWritable combine(PojoWritable accumulated, PojoWritable object) {
+				combined[0]++;
+				return accumulated;
+			}
+		});
+
+		readObjects.clear();
+
+		for (PojoWritable readObject = null; (readObject = reader.read()) != null;) {
+			readObjects.add(readObject);
+		}
+
+		assertEquals(objects, readObjects);
+		assertEquals(objects.size() / 10, combined[0]);
+	}
+
+	/**
+	 * Test compaction of small SeqFiles into files of the target size.
+	 */
+	@Test
+	public void testCompactionOfSmallWritableSeqFiles() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 5000);
+
+		String directory = hdfsOutputDir + "compaction/" + System.currentTimeMillis() + "/";
+
+		for (int i = 0; i < 25; i++) {
+			hdfsWrite(SEQUENCE_FILE_WRITABLE, objects.subList(i * 200, i * 200 + 200), directory + "data/part-"
+					+ (100 + i));
+		}
+
+		SEQUENCE_FILE_WRITABLE.setHdfsResourceLoader(hdfsResourceLoader);
+
+		SerializationFormatCompactor<PojoWritable> compactor = new SerializationFormatCompactor<PojoWritable>();
+		compactor.setHdfsResourceLoader(hdfsResourceLoader);
+		compactor.setSerializationFormat(SEQUENCE_FILE_WRITABLE);
+		compactor.setLocationPattern(directory + "data/part-*");
+		compactor.setWorkDirectory(directory + "work");
+		compactor.setTargetSize(100000);
+		compactor.setMinimumAge(0);
+		compactor.afterPropertiesSet();
+
+		assertEquals(objects.size(), compactor.compact());
+
+		Resource[] compacted = hdfsResourceLoader.getResources(directory + "data/*");
+
+		assertTrue("Too many compacted files: " + compacted.length, compacted.length > 1 && compacted.length < 25);
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		for (Resource resource : compacted) {
+			SerializationReader<PojoWritable> reader = SEQUENCE_FILE_WRITABLE.getReader(((ContextResource) resource)
+					.getPathWithinContext());
+
+			for (PojoWritable readObject = null; (readObject = reader.read()) != null;) {
+				readObjects.add(readObject);
+			}
+
+			closeStream(reader);
+		}
+
+		assertEquals(new HashSet<PojoWritable>(objects), new HashSet<PojoWritable>(readObjects));
+		assertEquals(objects.size(), readObjects.size());
+	}
+
+	/**
+	 * Test compaction recovery touches only the files of the compactor and cleans up the sidecars of the sources.
+	 */
+	@Test
+	public void testCompactionRecoveryOfSmallWritableSeqFiles() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 600);
+
+		String directory = hdfsOutputDir + "compaction-recovery/" + System.currentTimeMillis() + "/";
+
+		FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+		String extension = SEQUENCE_FILE_WRITABLE.getExtension();
+
+		for (int i = 0; i < 3; i++) {
+			String source = directory + "data/part-" + (100 + i) + extension;
+
+			hdfsWrite(SEQUENCE_FILE_WRITABLE, objects.subList(i * 200, i * 200 + 200), source);
+			// Sidecars are deleted along with their source rather than compacted.
+			fs.create(new Path(source + ".bloom")).close();
+		}
+
+		// A compaction interrupted after deleting a source but not its sidecar...
+		fs.create(new Path(directory + "data/part-099" + extension + ".index")).close();
+
+		Writer manifest = new OutputStreamWriter(fs.create(new Path(directory + "work/compacted-1-0.manifest")));
+		try {
+			manifest.write("source\t" + fs.makeQualified(new Path(directory + "data/part-099" + extension)) + "\n");
+		} finally {
+			manifest.close();
+		}
+
+		// ...another one interrupted before its manifest was committed...
+		fs.create(new Path(directory + "work/compacted-1-1/compacted-1-1-0")).close();
+		fs.create(new Path(directory + "work/compacted-1-1.manifest.tmp")).close();
+
+		// ...and files which do not belong to the compactor.
+		fs.create(new Path(directory + "work/notes.txt")).close();
+		fs.create(new Path(directory + "work/other/file")).close();
+
+		SEQUENCE_FILE_WRITABLE.setHdfsResourceLoader(hdfsResourceLoader);
+
+		SerializationFormatCompactor<PojoWritable> compactor = new SerializationFormatCompactor<PojoWritable>();
+		compactor.setHdfsResourceLoader(hdfsResourceLoader);
+		compactor.setSerializationFormat(SEQUENCE_FILE_WRITABLE);
+		compactor.setLocationPattern(directory + "data/part-*");
+		compactor.setWorkDirectory(directory + "data/work");
+
+		try {
+			compactor.afterPropertiesSet();
+			fail("A work directory within the compacted directories should be rejected.");
+		} catch (IllegalArgumentException exc) {
+			// expected
+		}
+
+		compactor.setWorkDirectory(directory + "work");
+		compactor.setMinimumAge(0);
+		compactor.afterPropertiesSet();
+
+		assertEquals(objects.size(), compactor.compact());
+
+		FileStatus[] data = fs.listStatus(new Path(directory + "data"));
+
+		assertEquals(1, data.length);
+		assertTrue(data[0].getPath().getName().startsWith("compacted-"));
+
+		List<String> work = new ArrayList<String>();
+
+		for (FileStatus status : fs.listStatus(new Path(directory + "work"))) {
+			work.add(status.getPath().getName());
+		}
+
+		Collections.sort(work);
+
+		assertEquals(Arrays.asList("notes.txt", "other"), work);
+	}
+
+	/**
+	 * Test compaction skips the files modified within the minimum age, such as a file whose writer is still open.
+	 */
+	@Test
+	public void testCompactionSkipsFilesStillWritten() throws Exception {
+
+		List<PojoWritable> objects = createPojoList(PojoWritable.class, 800);
+
+		String directory = hdfsOutputDir + "compaction-quiet/" + System.currentTimeMillis() + "/";
+
+		FileSystem fs = hdfsResourceLoader.getFileSystem();
+
+		for (int i = 0; i < 3; i++) {
+			String source = directory + "data/part-" + (100 + i) + SEQUENCE_FILE_WRITABLE.getExtension();
+
+			hdfsWrite(SEQUENCE_FILE_WRITABLE, objects.subList(i * 200, i * 200 + 200), source);
+		}
+
+		// Let the closed files get older than the minimum age.
+		Thread.sleep(3000);
+
+		// A writer still writing to a file matched by the location pattern.
+		String active = directory + "data/part-103" + SEQUENCE_FILE_WRITABLE.getExtension();
+
+		SerializationWriter<PojoWritable> writer = SEQUENCE_FILE_WRITABLE.getWriter(fs.create(new Path(active)),
+				active);
+
+		try {
+			for (PojoWritable object : objects.subList(600, 700)) {
+				writer.write(object);
+			}
+
+			SEQUENCE_FILE_WRITABLE.setHdfsResourceLoader(hdfsResourceLoader);
+
+			SerializationFormatCompactor<PojoWritable> compactor = new SerializationFormatCompactor<PojoWritable>();
+			compactor.setHdfsResourceLoader(hdfsResourceLoader);
+			compactor.setSerializationFormat(SEQUENCE_FILE_WRITABLE);
+			compactor.setLocationPattern(directory + "data/part-*");
+			compactor.setWorkDirectory(directory + "work");
+			compactor.setMinimumAge(2000);
+			compactor.afterPropertiesSet();
+
+			assertEquals(600, compactor.compact());
+
+			for (PojoWritable object : objects.subList(700, 800)) {
+				writer.write(object);
+			}
+		} finally {
+			writer.close();
+		}
+
+		List<PojoWritable> readObjects = new ArrayList<PojoWritable>();
+
+		SerializationReader<PojoWritable> reader = SEQUENCE_FILE_WRITABLE.getReader(active);
+
+		for (PojoWritable readObject = null; (readObject = reader.read()) != null;) {
+			readObjects.add(readObject);
+		}
+
+		closeStream(reader);
+
+		// The file written meanwhile is left in place with all its objects.
+		assertEquals(objects.subList(600, 800), readObjects);
+		assertEquals(2, fs.listStatus(new Path(directory + "data")).length);
+	}
+
+	/**
+	 * Test the metrics collected while writing and reading compressed delimited text.
+	 */
+	@Test
+	public void testSerializationMetricsOfCompressedDelimitedTextFile() throws Exception {
+
+		List<PojoColumnar> objects = createPojoList(PojoColumnar.class, 5000);
+
+		SerializationMetrics metrics = new SerializationMetrics();
+
+		DelimitedTextFormat<PojoColumnar> format = createDelimitedTextFormat();
+		format.setHdfsResourceLoader(hdfsResourceLoader);
+		format.setCompressionAlias("gzip");
+		format.setSerializationListener(metrics);
+
+		String destination = hdfsOutputDir + "metrics/" + PojoColumnar.class.getSimpleName() + "_" + objects.size()
+				+ format.getExtension();
+
+		hdfsWrite(format, objects, destination);
+
+		assertEquals(objects.size(), metrics.getObjectsWritten());
+		assertEquals(0, metrics.getOpenWriters());
+		assertEquals(hdfsResourceLoader.getResource(destination).contentLength(), metrics.getBytesWritten());
+		assertTrue(metrics.getCompressionRatio() > 1);
+		assertTrue(metrics.getWriteLatency99thPercentile() <= metrics.getWriteLatencyMax());
+
+		SerializationReader<PojoColumnar> reader = format.getReader(destination);
+
+		while (reader.read() != null) {
+		}
+
+		assertEquals(objects.size(), metrics.getObjectsRead());
+		assertEquals(0, metrics.getOpenReaders());
+		assertTrue(metrics.getReaderCloseLatencyMax() > 0);
 	}
 
-	/*
-	 * Test write from multiple source files (in our case the same one) to single Avro container.
+	/**
+	 * Test the bytes written before compression are reported by the formats compressing the output themselves.
 	 */
-	@SuppressWarnings("unchecked")
 	@Test
-	public void testWriteOfMultipleResourcesToAvroContainer() throws Exception {
+	public void testSerializationMetricsOfCompressedResourceAndColumnarFiles() throws Exception {
 
-		for (SerializationFormatSupport<Resource> resourceFormat : new SerializationFormatSupport[] {
-				MULTI_RESOURCE_FORMAT, MULTI_RESOURCE_FORMAT2 }) {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			content.append("line ").append(i).append('\n');
+		}
 
-			int numberOfResources = 5;
+		byte[] bytes = content.toString().getBytes("UTF-8");
 
-			String avroContainer = testResourceWrite(resourceFormat, numberOfResources, /* no compression */null,
-			/* doesnt matter */false);
+		List<Resource> resources = new ArrayList<Resource>();
+		for (int i = 0; i < 3; i++) {
+			resources.add(new ByteArrayResource(bytes));
+		}
 
-			SerializationReader<Resource> reader = resourceFormat.getReader(avroContainer);
+		SerializationMetrics metrics = new SerializationMetrics();
 
-			for (Resource resource; (resource = reader.read()) != null; numberOfResources--) {
+		ResourceSerializationFormat resourceFormat = new ResourceSerializationFormat();
+		resourceFormat.setConfiguration(configuration);
+		resourceFormat.setResourceSeparator("\n");
+		resourceFormat.setCompressionAlias("gzip");
+		resourceFormat.setSerializationListener(metrics);
+		resourceFormat.afterPropertiesSet();
 
-				InputStream originalIS = sourceResource.getInputStream();
-				InputStream readIS = resource.getInputStream();
+		hdfsWrite(resourceFormat, resources, hdfsOutputDir + "metrics/resources" + resourceFormat.getExtension());
 
-				assertEquals(sourceResource.getDescription(), resource.getDescription());
+		// The separator goes between the resources.
+		assertEquals(3 * bytes.length + 2, metrics.getUncompressedBytesWritten());
+		assertTrue(metrics.getCompressionRatio() > 1);
 
-				try {
-					assertTrue(IOUtils.contentEquals(originalIS, readIS));
-				} finally {
-					IOUtils.closeQuietly(originalIS);
-					IOUtils.closeQuietly(readIS);
-				}
-			}
+		for (String compressionAlias : new String[] { null, "gzip" }) {
+			metrics.reset();
 
-			assertEquals(0, numberOfResources);
+			ColumnarFormat<PojoColumnar> columnarFormat = createColumnarFormat();
+			columnarFormat.setCompressionAlias(compressionAlias);
+			columnarFormat.setSerializationListener(metrics);
+
+			String destination = hdfsOutputDir + "metrics/columnar-" + compressionAlias + columnarFormat.getExtension();
+
+			hdfsWrite(columnarFormat, createPojoList(PojoColumnar.class, 5000), destination);
+
+			long fileBytes = hdfsResourceLoader.getResource(destination).contentLength();
+
+			assertEquals(fileBytes, metrics.getBytesWritten());
+
+			if (compressionAlias == null) {
+				assertEquals(fileBytes, metrics.getUncompressedBytesWritten());
+			} else {
+				assertTrue(metrics.getCompressionRatio() > 1);
+			}
 		}
 	}
 
 	/**
-	 * Test write of pojos collection using Writable serialization.
+	 * Test the rates and the latencies cover the window of the metrics only, unlike the counts.
 	 */
 	@Test
-	public void testWriteOfWritableToSeqFile() throws Exception {
+	public void testSerializationMetricsWindow() throws Exception {
 
-		testSerializationWrite(PojoWritable.class, SEQUENCE_FILE_WRITABLE, /* compress */false);
+		SerializationMetrics metrics = new SerializationMetrics(240);
+
+		for (int i = 0; i < 10; i++) {
+			metrics.objectWritten(10 * 1000 * 1000);
+		}
+
+		assertEquals(10 * 1000, metrics.getWriteLatencyMax(), 0);
+
+		Thread.sleep(300);
+
+		for (int i = 0; i < 10; i++) {
+			metrics.objectWritten(1000);
+		}
+
+		// The slow writes left the window.
+		assertEquals(1, metrics.getWriteLatencyMax(), 0);
+		assertTrue(metrics.getWriteLatency99thPercentile() <= 1);
+		assertEquals(1, metrics.getWriteLatencyMean(), 0);
+		assertTrue(metrics.getWriteRate() > 0);
+		assertEquals(20, metrics.getObjectsWritten());
+
+		Thread.sleep(300);
+
+		assertEquals(0, metrics.getWriteRate(), 0);
+		assertEquals(0, metrics.getWriteLatencyMax(), 0);
+		assertEquals(20, metrics.getObjectsWritten());
+
+		metrics.reset();
+
+		assertEquals(0, metrics.getObjectsWritten());
 	}
 
 	/**
-	 * Test compression write of pojos collection using Writable serialization.
+	 * Test compressed write of flat pojos collection using columnar serialization.
 	 */
 	@Test
-	public void testCompressedWriteOfWritableToSeqFile() throws Exception {
+	public void testCompressedWriteOfPojoToColumnarFile() throws Exception {
 
-		testSerializationWrite(PojoWritable.class, SEQUENCE_FILE_WRITABLE, /* compress */true);
+		testSerializationWrite(PojoColumnar.class, createColumnarFormat(), /* compress */true);
 	}
 
 	/**
-	 * Test write of pojos collection using Java serialization.
+	 * Test compressed write of flat pojos collection as delimited text.
 	 */
 	@Test
-	public void testWriteOfSerializableToSeqFile() throws Exception {
+	public void testCompressedWriteOfPojoToDelimitedTextFile() throws Exception {
 
-		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_JAVA, /* compress */false);
+		testSerializationWrite(PojoColumnar.class, createDelimitedTextFormat(), /* compress */true);
 	}
 
 	/**
-	 * Test compressed write of pojos collection using Java serialization.
+	 * Test split read of flat pojos collection written as delimited text.
 	 */
 	@Test
-	public void testCompressedWriteOfSerializableToSeqFile() throws Exception {
+	public void testSplitReadOfPojoFromDelimitedTextFile() throws Exception {
 
-		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_JAVA, /* compress */true);
+		testSplitRead(PojoColumnar.class, createDelimitedTextFormat());
 	}
 
 	/**
-	 * Test write of pojos collection using Avro serialization.
+	 * Test projected read of columnar file skipping the row groups that do not satisfy the predicate.
 	 */
 	@Test
-	public void testWriteOfAvroToSeqFile() throws Exception {
+	public void testProjectedReadOfPojoFromColumnarFile() throws Exception {
 
-		SEQUENCE_FILE_AVRO.setSerializationKeyProvider(new SerializationKeyProvider() {
+		// A POJO without field initializers, so the fields left unprojected stay at their defaults.
+		ColumnarFormat<PojoColumnarFields> format = new ColumnarFormat<PojoColumnarFields>(PojoColumnarFields.class);
+		format.setConfiguration(configuration);
+		format.setRowGroupSize(1000);
+		format.afterPropertiesSet();
 
-			public Void getKey(Object object) {
-				return (Void) null;
-			}
+		List<PojoColumnarFields> objects = new ArrayList<PojoColumnarFields>();
 
-			public Class<Void> getKeyClass(Class<?> objectClass) {
-				return Void.class;
-			}
-		});
+		for (int i = 0; i < 5000; i++) {
+			objects.add(new PojoColumnarFields(i));
+		}
 
-		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_AVRO, /* compress */false);
-	}
+		String destination = hdfsOutputDir + "projection/" + PojoColumnarFields.class.getSimpleName() + "_"
+				+ objects.size() + format.getExtension();
 
-	/**
-	 * Test compressed write of pojos collection using Avro serialization.
-	 */
-	@Test
-	public void testCompressedWriteOfAvroToSeqFile() throws Exception {
+		hdfsWrite(format, objects, destination);
 
-		testSerializationWrite(PojoSerializable.class, SEQUENCE_FILE_AVRO, /* compress */true);
-	}
+		int from = 1200;
 
-	/**
-	 * Test write of pojos collection using Avro serialization.
-	 */
-	@Test
-	public void testWriteOfPojoToAvroFile() throws Exception {
+		format.setHdfsResourceLoader(hdfsResourceLoader);
+		format.setProjection("id", "name");
+		format.setPredicate(new ColumnarFormat.RangePredicate("id", from, from + 99));
+		format.afterPropertiesSet();
 
-		testSerializationWrite(PojoSerializable.class, AVRO, /* compress */false);
-	}
+		List<PojoColumnarFields> readObjects = new ArrayList<PojoColumnarFields>();
+		{
+			SerializationReader<PojoColumnarFields> reader = format.getReader(destination);
 
-	/**
-	 * Test compression write of pojos collection using Avro serialization.
-	 */
-	@Test
-	public void testCompressedtestWriteOfPojoToAvroFile() throws Exception {
+			for (PojoColumnarFields readObject = reader.read(); readObject != null; readObject = reader.read()) {
+				readObjects.add(readObject);
+			}
 
-		testSerializationWrite(PojoSerializable.class, AVRO, /* compress */true);
+			closeStream(reader);
+		}
+
+		assertEquals(100, readObjects.size());
+
+		for (int i = 0; i < readObjects.size(); i++) {
+			PojoColumnarFields readObject = readObjects.get(i);
+
+			assertEquals(from + i, readObject.id);
+			assertEquals(objects.get(from + i).name, readObject.name);
+
+			// Not projected fields are not decoded.
+			assertNull(readObject.category);
+			assertNull(readObject.score);
+			assertFalse(readObject.active);
+			assertEquals(0L, readObject.size);
+		}
 	}
 
 	/**
@@ -337,6 +1428,41 @@ public class HdfsWriterTest {
 		assertTrue(exceptions.toString(), exceptions.length() == 0);
 	}
 
+	/**
+	 * Test parallel compressed write from multiple source files to HDFS destination read by standard Hadoop codec.
+	 */
+	@Test
+	public void testParallelCompressedWriteOfMultipleResources() throws Exception {
+
+		RESOURCE_FORMAT.setCompressionAlias(ResourceSerializationFormat.PARALLEL_COMPRESSION_PREFIX + "gzip");
+		RESOURCE_FORMAT.setCompressionParallelism(4);
+		// Several compressed blocks per resource
+		RESOURCE_FORMAT.setCompressionBlockSize(1024);
+
+		int resourceCopies = 5;
+
+		String destination = testResourceWrite(RESOURCE_FORMAT, resourceCopies, /* alias is set */null, false);
+
+		assertEquals(new GzipCodec().getDefaultExtension(), RESOURCE_FORMAT.getExtension());
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < resourceCopies; i++) {
+			if (i > 0) {
+				expected.append(System.getProperty("line.separator"));
+			}
+			expected.append(IOUtils.toString(sourceResource.getInputStream(), "UTF-8"));
+		}
+
+		// HdfsResource decompresses the content by means of GzipCodec
+		InputStream compressedIS = hdfsResourceLoader.getResource(destination + RESOURCE_FORMAT.getExtension())
+				.getInputStream();
+		try {
+			assertEquals(expected.toString(), IOUtils.toString(compressedIS, "UTF-8"));
+		} finally {
+			closeStream(compressedIS);
+		}
+	}
+
 	/**
 	 * Test {@link ReflectiveSerializationKeyProvider}.
 	 */
@@ -365,6 +1491,46 @@ public class HdfsWriterTest {
 
 			assertEquals(pojo.getName(), keyProvider.getKey(pojo));
 		}
+
+		// Test field key of a subclass
+		{
+			SerializationKeyProvider keyProvider = new ReflectiveSerializationKeyProvider(PojoSerializable.class, "id");
+
+			assertSame(Integer.class, keyProvider.getKeyClass(PojoWritable.class));
+
+			PojoWritable pojo = new PojoWritable();
+
+			assertEquals((Integer) pojo.id, keyProvider.getKey(pojo));
+		}
+	}
+
+	/**
+	 * Test {@link AvroSchemaCache}.
+	 */
+	@Test
+	public void testAvroSchemaCache() {
+
+		AvroSchemaCache schemaCache = new AvroSchemaCache(2);
+
+		schemaCache.register(PojoSerializable.class, PojoWritable.class);
+
+		assertSame(schemaCache.getSchema(PojoSerializable.class), schemaCache.getSchema(PojoSerializable.class));
+		assertSame(schemaCache.getDatumWriter(PojoSerializable.class),
+				schemaCache.getDatumWriter(PojoSerializable.class));
+
+		DatumWriter<PojoSerializable> recentlyUsed = schemaCache.getDatumWriter(PojoSerializable.class);
+		DatumWriter<PojoWritable> leastRecentlyUsed = schemaCache.getDatumWriter(PojoWritable.class);
+
+		// Access the first registered class, so the second one becomes the least recently used.
+		schemaCache.getSchema(PojoSerializable.class);
+
+		schemaCache.register(PojoColumnar.class);
+
+		assertEquals(2, schemaCache.size());
+
+		// The recently used class is still cached, while the least recently used one is created anew.
+		assertSame(recentlyUsed, schemaCache.getDatumWriter(PojoSerializable.class));
+		assertNotSame(leastRecentlyUsed, schemaCache.getDatumWriter(PojoWritable.class));
 	}
 
 	/**
@@ -454,6 +1620,59 @@ public class HdfsWriterTest {
 		assertEquals(objects, readObjects);
 	}
 
+	/**
+	 * Test core split-read-of-objects logic.
+	 */
+	private <T> void testSplitRead(Class<T> objectClass, SplittableSerializationFormat<T> serializationFormat)
+			throws Exception {
+
+		List<T> objects = createPojoList(objectClass, 50000);
+
+		String destination = hdfsOutputDir + "split/" + objectClass.getSimpleName() + "_" + objects.size()
+				+ serializationFormat.getExtension();
+
+		hdfsWrite(serializationFormat, objects, destination);
+
+		((SerializationFormatSupport<T>) serializationFormat).setHdfsResourceLoader(hdfsResourceLoader);
+
+		List<SerializationReader<T>> readers = serializationFormat.getReaders(destination, 4);
+
+		assertEquals(4, readers.size());
+
+		// Splits are ordered by their byte range, so draining them one after another preserves the original order.
+		List<T> readObjects = new ArrayList<T>();
+
+		for (SerializationReader<T> reader : readers) {
+			for (T readObject = reader.read(); readObject != null; readObject = reader.read()) {
+				readObjects.add(readObject);
+			}
+
+			closeStream(reader);
+		}
+
+		assertEquals(objects, readObjects);
+	}
+
+	private DelimitedTextFormat<PojoColumnar> createDelimitedTextFormat() throws Exception {
+
+		DelimitedTextFormat<PojoColumnar> format = new DelimitedTextFormat<PojoColumnar>();
+		format.setConfiguration(configuration);
+		format.setRecordMapper(new PojoColumnarRecordMapper());
+		format.afterPropertiesSet();
+
+		return format;
+	}
+
+	private ColumnarFormat<PojoColumnar> createColumnarFormat() throws Exception {
+
+		ColumnarFormat<PojoColumnar> format = new ColumnarFormat<PojoColumnar>(PojoColumnar.class);
+		format.setConfiguration(configuration);
+		format.setRowGroupSize(1000);
+		format.afterPropertiesSet();
+
+		return format;
+	}
+
 	private <T> void hdfsWrite(SerializationFormat<T> serializationCreator, final Iterable<T> sources,
 			String destination) throws Exception {
 
@@ -493,6 +1712,42 @@ public class HdfsWriterTest {
 		return objects;
 	}
 
+	/**
+	 * Collects the objects written; optionally blocks each write until released or fails at the n-th object.
+	 */
+	static class ListSerializationWriter<T> implements SerializationWriter<T> {
+
+		final List<T> written = Collections.synchronizedList(new ArrayList<T>());
+
+		final IOException failure = new IOException("Failed to write.");
+
+		volatile CountDownLatch blocked;
+
+		volatile int failAt = -1;
+
+		volatile boolean closed;
+
+		@Override
+		public void write(T object) throws IOException {
+			if (blocked != null) {
+				try {
+					blocked.await();
+				} catch (InterruptedException exc) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (written.size() + 1 == failAt) {
+				throw failure;
+			}
+			written.add(object);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
 	public static class PojoSerializable implements Serializable {
 
 		private static final long serialVersionUID = 4225081912489347353L;
@@ -574,6 +1829,150 @@ public class HdfsWriterTest {
 		}
 	}
 
+	public static class PojoColumnar {
+
+		private static int COUNTER = 0;
+
+		protected int id = COUNTER++;
+
+		protected String name = "[" + id + "]";
+
+		private String category = "category-" + id % 7;
+
+		private Double score = id % 10 == 0 ? null : id / 10.0;
+
+		private boolean active = id % 2 == 0;
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + ":" + name;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			PojoColumnar other = (PojoColumnar) obj;
+			return id == other.id && active == other.active && ObjectUtils.nullSafeEquals(name, other.name)
+					&& ObjectUtils.nullSafeEquals(category, other.category)
+					&& ObjectUtils.nullSafeEquals(score, other.score);
+		}
+	}
+
+	/**
+	 * Columnar POJO without field initializers: its fields are set by the constructor only.
+	 */
+	public static class PojoColumnarFields {
+
+		protected int id;
+
+		protected String name;
+
+		protected String category;
+
+		protected Double score;
+
+		protected boolean active;
+
+		protected long size;
+
+		public PojoColumnarFields() {
+		}
+
+		public PojoColumnarFields(int id) {
+			this.id = id;
+			this.name = "[" + id + "]";
+			this.category = "category-" + id % 7;
+			this.score = id / 10.0;
+			this.active = true;
+			this.size = 1000L + id;
+		}
+	}
+
+	public enum Level {
+		LOW {
+			@Override
+			int weight() {
+				return 1;
+			}
+		},
+		HIGH {
+			@Override
+			int weight() {
+				return 10;
+			}
+		};
+
+		abstract int weight();
+	}
+
+	public static class PojoEnum {
+
+		protected Level level;
+
+		protected List<Level> levels;
+
+		protected Object any;
+
+		protected String name;
+
+		public PojoEnum() {
+		}
+
+		public PojoEnum(int id) {
+			this.level = id % 2 == 0 ? Level.LOW : Level.HIGH;
+			this.levels = new ArrayList<Level>(Arrays.asList(Level.HIGH, level));
+			this.any = level;
+			this.name = "na\u00efve-\u20ac-\ud83d\ude00-" + id;
+		}
+	}
+
+	public static class PojoColumnarRecordMapper implements DelimitedRecordMapper<PojoColumnar> {
+
+		public PojoColumnar createObject() {
+			return new PojoColumnar();
+		}
+
+		public void setField(PojoColumnar object, int index, DelimitedTextFormat.Field field) {
+			switch (index) {
+			case 0:
+				object.id = field.intValue();
+				break;
+			case 1:
+				object.name = field.toString();
+				break;
+			case 2:
+				object.category = field.toString();
+				break;
+			case 3:
+				object.score = field.isEmpty() ? null : field.doubleValue();
+				break;
+			case 4:
+				object.active = field.booleanValue();
+				break;
+			}
+		}
+
+		public void writeFields(PojoColumnar object, DelimitedTextFormat.FieldWriter writer) {
+			writer.write(object.id).write(object.name).write(object.category);
+
+			if (object.score != null) {
+				writer.write(object.score);
+			} else {
+				writer.write((CharSequence) null);
+			}
+
+			writer.write(object.active);
+		}
+	}
+
 	public static class PojoWritable extends PojoSerializable implements Writable {
 
 		private static final long serialVersionUID = -1196188141912933846L;